@@ -0,0 +1,113 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.benchmark;
+
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.util.CompositeClassProvider;
+import org.cadixdev.bombe.provider.ClassProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ClassProvider class} lookups through a
+ * {@link CompositeClassProvider} of many jars.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassProviderBenchmark {
+
+    @Param({ "1", "10", "50" })
+    public int jars;
+
+    @Param({ "500" })
+    public int classes;
+
+    private TemporaryDirectory directory;
+    private List<JarFile> files;
+    private List<ClassProvider> providers;
+    private CompositeClassProvider provider;
+    private String[] hits;
+    private String[] misses;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = new TemporaryDirectory();
+        this.files = new ArrayList<>(this.jars);
+        this.providers = new ArrayList<>(this.jars);
+        final SyntheticJar[] synthetics = new SyntheticJar[this.jars];
+        for (int i = 0; i < this.jars; i++) {
+            synthetics[i] = new SyntheticJar()
+                    .prefix("synthetic" + i)
+                    .classes(this.classes)
+                    .resources(0);
+            final JarFile jar = new JarFile(synthetics[i].write(this.directory.resolve(i + ".jar")));
+            this.files.add(jar);
+            this.providers.add(jar);
+        }
+        this.provider = new CompositeClassProvider(this.providers);
+
+        // Look up classes spread across every jar, and classes in none of them
+        final SyntheticJar missing = new SyntheticJar().prefix("missing");
+        this.hits = new String[this.classes];
+        this.misses = new String[this.classes];
+        for (int i = 0; i < this.classes; i++) {
+            this.hits[i] = synthetics[i % this.jars].className(i);
+            this.misses[i] = missing.className(i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (final JarFile jar : this.files) {
+            jar.close();
+        }
+        this.directory.close();
+    }
+
+    @Benchmark
+    public CompositeClassProvider index() {
+        return new CompositeClassProvider(this.providers);
+    }
+
+    @Benchmark
+    public void hit(final Blackhole blackhole) {
+        for (final String klass : this.hits) {
+            blackhole.consume(this.provider.get(klass));
+        }
+    }
+
+    @Benchmark
+    public void miss(final Blackhole blackhole) {
+        for (final String klass : this.misses) {
+            blackhole.consume(this.provider.get(klass));
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.benchmark;
+
+import org.cadixdev.atlas.jar.ClassCachePolicy;
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.jar.JarPath;
+import org.cadixdev.atlas.jar.JarPathFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks reading a {@link JarFile jar}, by walking it and getting each
+ * of its entries.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JarFileBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int classes;
+
+    @Param({ "1024", "65536" })
+    public int resourceSize;
+
+    @Param({ "STORED", "DEFLATED" })
+    public String compression;
+
+    private TemporaryDirectory directory;
+    private JarFile jar;
+    private List<JarPath> paths;
+    private JarPathFilter filter;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = new TemporaryDirectory();
+        final SyntheticJar synthetic = new SyntheticJar()
+                .classes(this.classes)
+                .resources(this.classes / 10)
+                .resourceSize(this.resourceSize)
+                .compression(this.compression);
+
+        // Nothing is cached, so every get reads from the jar
+        this.jar = new JarFile(synthetic.write(this.directory.resolve("input.jar")), ClassCachePolicy.leastRecentlyUsed(0));
+        try (final Stream<JarPath> paths = this.jar.walk()) {
+            this.paths = paths.collect(Collectors.toList());
+        }
+
+        // Roughly a tenth of the classes, as an analysis of a single package would
+        this.filter = JarPathFilter.glob(synthetic.className(1) + "*.class");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.jar.close();
+        this.directory.close();
+    }
+
+    @Benchmark
+    public long walk() throws IOException {
+        try (final Stream<JarPath> paths = this.jar.walk()) {
+            return paths.count();
+        }
+    }
+
+    @Benchmark
+    public long walkFiltered() throws IOException {
+        try (final Stream<JarPath> paths = this.jar.walk(this.filter)) {
+            return paths.count();
+        }
+    }
+
+    @Benchmark
+    public void get(final Blackhole blackhole) throws IOException {
+        for (final JarPath path : this.paths) {
+            blackhole.consume(this.jar.get(path));
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.benchmark;
+
+import org.cadixdev.atlas.util.JarRepacker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link JarRepacker#verifyJarManifest(Path)}, both for jars that
+ * only need verifying and those that need repacking.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepackBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int classes;
+
+    private TemporaryDirectory directory;
+    private Path verified;
+    private Path misplaced;
+    private Path repacked;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = new TemporaryDirectory();
+        final SyntheticJar synthetic = new SyntheticJar()
+                .classes(this.classes)
+                .resources(this.classes / 10);
+        this.verified = synthetic.manifestFirst(true).write(this.directory.resolve("verified.jar"));
+        this.misplaced = synthetic.manifestFirst(false).write(this.directory.resolve("misplaced.jar"));
+        this.repacked = this.directory.resolve("repacked.jar");
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws IOException {
+        // Repacking fixes the jar in place, so start from the misplaced jar
+        // every time
+        Files.copy(this.misplaced, this.repacked, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.directory.close();
+    }
+
+    @Benchmark
+    public void verify() throws IOException {
+        JarRepacker.verifyJarManifest(this.verified);
+    }
+
+    @Benchmark
+    public void repack() throws IOException {
+        JarRepacker.verifyJarManifest(this.repacked);
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.benchmark;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A generator of synthetic jars, for benchmarking.
+ * <p>
+ * Classes are generated in chains of inheritance, so that the jars exercise
+ * inheritance lookups as real jars would. Resources are filled with seeded,
+ * somewhat compressible, data - so the same configuration always produces
+ * the same jar.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class SyntheticJar {
+
+    private static final String MANIFEST = "Manifest-Version: 1.0\r\nCreated-By: Atlas Benchmarks\r\n\r\n";
+    private static final int CHAIN_LENGTH = 8;
+
+    private String prefix = "synthetic";
+    private int classes = 100;
+    private int resources = 10;
+    private int resourceSize = 1024;
+    private int method = ZipEntry.DEFLATED;
+    private boolean manifestFirst = true;
+
+    /**
+     * Sets the package the jar's classes and resources are placed within.
+     *
+     * @param prefix The package, in internal form
+     * @return {@code this}, for chaining
+     */
+    public SyntheticJar prefix(final String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * Sets the number of classes within the jar.
+     *
+     * @param classes The number of classes
+     * @return {@code this}, for chaining
+     */
+    public SyntheticJar classes(final int classes) {
+        this.classes = classes;
+        return this;
+    }
+
+    /**
+     * Sets the number of resources within the jar.
+     *
+     * @param resources The number of resources
+     * @return {@code this}, for chaining
+     */
+    public SyntheticJar resources(final int resources) {
+        this.resources = resources;
+        return this;
+    }
+
+    /**
+     * Sets the size of each resource within the jar.
+     *
+     * @param resourceSize The size of a resource, in bytes
+     * @return {@code this}, for chaining
+     */
+    public SyntheticJar resourceSize(final int resourceSize) {
+        this.resourceSize = resourceSize;
+        return this;
+    }
+
+    /**
+     * Sets the compression method of the jar's entries, either
+     * {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+     *
+     * @param method The compression method
+     * @return {@code this}, for chaining
+     */
+    public SyntheticJar method(final int method) {
+        this.method = method;
+        return this;
+    }
+
+    /**
+     * Sets the compression method of the jar's entries, by name.
+     *
+     * @param compression Either {@code STORED} or {@code DEFLATED}
+     * @return {@code this}, for chaining
+     */
+    public SyntheticJar compression(final String compression) {
+        switch (compression) {
+            case "STORED":
+                return this.method(ZipEntry.STORED);
+            case "DEFLATED":
+                return this.method(ZipEntry.DEFLATED);
+            default:
+                throw new IllegalArgumentException("Unknown compression: " + compression);
+        }
+    }
+
+    /**
+     * Sets whether the manifest is the first entry of the jar, or the last.
+     *
+     * @param manifestFirst {@code true} to write the manifest first
+     * @return {@code this}, for chaining
+     */
+    public SyntheticJar manifestFirst(final boolean manifestFirst) {
+        this.manifestFirst = manifestFirst;
+        return this;
+    }
+
+    /**
+     * Gets the internal name of the class of the given index.
+     *
+     * @param index The index of the class
+     * @return The class name
+     */
+    public String className(final int index) {
+        return this.prefix + "/Class" + index;
+    }
+
+    /**
+     * Writes the jar to the given path.
+     *
+     * @param path The path to write to
+     * @return The path
+     * @throws IOException Should an issue occur writing the jar
+     */
+    public Path write(final Path path) throws IOException {
+        final Random random = new Random(this.prefix.hashCode() ^ this.classes ^ this.resourceSize);
+
+        try (final OutputStream os = Files.newOutputStream(path);
+             final ZipOutputStream out = new ZipOutputStream(os)) {
+            if (this.manifestFirst) this.put(out, "META-INF/MANIFEST.MF", MANIFEST.getBytes(StandardCharsets.UTF_8));
+
+            for (int i = 0; i < this.classes; i++) {
+                this.put(out, this.className(i) + ".class", this.generateClass(i));
+            }
+
+            for (int i = 0; i < this.resources; i++) {
+                this.put(out, this.prefix + "/resource" + i + ".dat", _resource(random, this.resourceSize));
+            }
+
+            if (!this.manifestFirst) this.put(out, "META-INF/MANIFEST.MF", MANIFEST.getBytes(StandardCharsets.UTF_8));
+        }
+        return path;
+    }
+
+    private void put(final ZipOutputStream out, final String name, final byte[] contents) throws IOException {
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(this.method);
+        if (this.method == ZipEntry.STORED) {
+            final CRC32 crc = new CRC32();
+            crc.update(contents);
+            entry.setSize(contents.length);
+            entry.setCompressedSize(contents.length);
+            entry.setCrc(crc.getValue());
+        }
+
+        out.putNextEntry(entry);
+        out.write(contents);
+        out.closeEntry();
+    }
+
+    private byte[] generateClass(final int index) {
+        // Each class extends the previous, until the chain is long enough
+        final String superName = index % CHAIN_LENGTH == 0 ? "java/lang/Object" : this.className(index - 1);
+        final String[] interfaces = index % 2 == 0 ? new String[]{ "java/lang/Runnable" } : null;
+
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, this.className(index), null, superName, interfaces);
+        writer.visitField(Opcodes.ACC_PRIVATE, "field" + index, "I", null, null).visitEnd();
+
+        final MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        final MethodVisitor run = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        run.visitCode();
+        run.visitVarInsn(Opcodes.ALOAD, 0);
+        run.visitInsn(Opcodes.DUP);
+        run.visitFieldInsn(Opcodes.GETFIELD, this.className(index), "field" + index, "I");
+        run.visitInsn(Opcodes.ICONST_1);
+        run.visitInsn(Opcodes.IADD);
+        run.visitFieldInsn(Opcodes.PUTFIELD, this.className(index), "field" + index, "I");
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] _resource(final Random random, final int size) {
+        // A small alphabet, so the data compresses - but not trivially
+        final byte[] contents = new byte[size];
+        for (int i = 0; i < size; i++) {
+            contents[i] = (byte) ('a' + random.nextInt(16));
+        }
+        return contents;
+    }
+
+}
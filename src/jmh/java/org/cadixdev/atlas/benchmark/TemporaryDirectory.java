@@ -0,0 +1,44 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A temporary directory for a benchmark's jars, deleted along with its
+ * contents once closed.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class TemporaryDirectory implements Closeable {
+
+    private final Path path;
+
+    TemporaryDirectory() throws IOException {
+        this.path = Files.createTempDirectory("atlas-benchmark");
+    }
+
+    Path resolve(final String name) {
+        return this.path.resolve(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (final Stream<Path> paths = Files.walk(this.path)) {
+            for (final Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+}
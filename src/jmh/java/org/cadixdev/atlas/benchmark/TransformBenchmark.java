@@ -0,0 +1,97 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.benchmark;
+
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.jar.TransformOptions;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link JarFile#transform(Path, ExecutorService, JarEntryTransformer...) transforming}
+ * a jar, at several levels of parallelism.
+ * <p>
+ * The transformer applies to every entry, so each is read, decompressed and
+ * compressed again.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransformBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int classes;
+
+    @Param({ "1024", "65536" })
+    public int resourceSize;
+
+    @Param({ "STORED", "DEFLATED" })
+    public String compression;
+
+    @Param({ "1", "2", "4", "8" })
+    public int parallelism;
+
+    @Param({ "false", "true" })
+    public boolean largestFirst;
+
+    private TemporaryDirectory directory;
+    private ExecutorService executorService;
+    private JarFile jar;
+    private Path output;
+    private TransformOptions options;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = new TemporaryDirectory();
+        this.executorService = Executors.newFixedThreadPool(this.parallelism);
+        this.jar = new JarFile(new SyntheticJar()
+                .classes(this.classes)
+                .resources(this.classes / 10)
+                .resourceSize(this.resourceSize)
+                .compression(this.compression)
+                .write(this.directory.resolve("input.jar")));
+        this.output = this.directory.resolve("output.jar");
+        this.options = new TransformOptions().setLargestFirst(this.largestFirst);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.executorService.shutdown();
+        this.jar.close();
+        this.directory.close();
+    }
+
+    @Benchmark
+    public void transform() throws IOException {
+        this.jar.transform(this.output, this.executorService, this.options, new JarEntryTransformer() {
+        });
+    }
+
+}
@@ -6,22 +6,40 @@
 
 package org.cadixdev.atlas;
 
+import org.cadixdev.atlas.jar.ClassCachePolicy;
+import org.cadixdev.atlas.jar.InheritanceIndex;
 import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.jar.JarPath;
+import org.cadixdev.atlas.jar.JarPathFilter;
+import org.cadixdev.atlas.jar.JarStream;
+import org.cadixdev.atlas.jar.MemoryBudget;
+import org.cadixdev.atlas.jar.TransformOptions;
 import org.cadixdev.atlas.util.CompositeClassProvider;
-import org.cadixdev.atlas.util.JarRepacker;
+import org.cadixdev.atlas.util.ConcurrentCachingInheritanceProvider;
+import org.cadixdev.atlas.util.FutureHelper;
+import org.cadixdev.bombe.analysis.CompositeInheritanceProvider;
 import org.cadixdev.bombe.analysis.InheritanceProvider;
 import org.cadixdev.bombe.analysis.asm.ClassProviderInheritanceProvider;
-import org.cadixdev.bombe.provider.ClassProvider;
 import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.provider.ClassProvider;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * An Atlas describes {@link JarEntryTransformer transformations}, and an environment
@@ -37,10 +55,18 @@ public class Atlas implements Closeable {
 
     private final List<Function<AtlasTransformerContext, JarEntryTransformer>> transformers = new ArrayList<>();
     private final List<Path> classpath = new ArrayList<>();
+    private final List<JarFile> classpathJars = new ArrayList<>();
+    private final TransformOptions options;
 
     private final ExecutorService executorService;
     private final boolean manageExecutor;
 
+    private ClasspathSession session;
+    private List<JarFile> indexedJars;
+    private InheritanceProvider classpathJarsProvider;
+    private Path indexDirectory;
+    private boolean nestedJarsOnClasspath;
+
     /**
      * Creates an Atlas with an associated executor service.
      *
@@ -51,6 +77,20 @@ public class Atlas implements Closeable {
     private Atlas(final ExecutorService executorService, final boolean manageExecutor) {
         this.executorService = executorService;
         this.manageExecutor = manageExecutor;
+        this.options = new TransformOptions();
+    }
+
+    /**
+     * Creates an Atlas with an associated executor service, that isn't shutdown
+     * when closing the atlas, and a copy of the given transform options.
+     *
+     * @param executorService The executor service
+     * @param options The transform options to copy
+     */
+    Atlas(final ExecutorService executorService, final TransformOptions options) {
+        this.executorService = executorService;
+        this.manageExecutor = false;
+        this.options = new TransformOptions(options);
     }
 
     /**
@@ -92,6 +132,124 @@ public List<Path> getClasspath() {
         return this.classpath;
     }
 
+    /**
+     * Gets the opened {@link JarFile jars} available to the {@link InheritanceProvider
+     * inheritance provider}, alongside those of the {@link #getClasspath() classpath}.
+     * <p>
+     * Unlike the classpath, these jars are neither opened nor closed by the Atlas -
+     * allowing jars {@link JarFile#JarFile(String, java.nio.ByteBuffer) held in memory}
+     * to be used. They are indexed once, and again only should the list change
+     * between runs.
+     *
+     * @return The classpath jars
+     * @since 0.3.0
+     */
+    public List<JarFile> getClasspathJars() {
+        return this.classpathJars;
+    }
+
+    /**
+     * Gets the {@link TransformOptions options} used when transforming binaries
+     * with the Atlas.
+     * <p>
+     * A {@link TransformOptions#setMemoryBudget(MemoryBudget) memory budget} set
+     * here is also drawn from by the classes cached by the jars the Atlas opens.
+     *
+     * @return The transform options
+     * @since 0.3.0
+     */
+    public TransformOptions getTransformOptions() {
+        return this.options;
+    }
+
+    /**
+     * Gets the {@link ClasspathSession classpath session} attached to the Atlas.
+     *
+     * @return The classpath session, or {@code null} if none is attached
+     * @since 0.3.0
+     */
+    public ClasspathSession getClasspathSession() {
+        return this.session;
+    }
+
+    /**
+     * Attaches a {@link ClasspathSession classpath session} to the Atlas, making its
+     * classes available to the {@link InheritanceProvider inheritance provider}
+     * alongside those of the {@link #getClasspath() classpath}.
+     * <p>
+     * Unlike the classpath, the session isn't reopened for each run - nor is it
+     * closed with the Atlas. Each run {@link ClasspathSession#refresh() refreshes}
+     * the session, and holds onto the jars it started with until it completes -
+     * so the session may be shared by many atlases at once.
+     *
+     * @param session The classpath session, or {@code null} to detach the
+     *                current session
+     * @return {@code this}, for chaining
+     * @since 0.3.0
+     */
+    public Atlas attach(final ClasspathSession session) {
+        this.session = session;
+        return this;
+    }
+
+    /**
+     * Gets the directory that {@link InheritanceIndex inheritance indexes} of
+     * the classpath's jars are kept in.
+     *
+     * @return The directory of indexes, or {@code null} if the classpath
+     *         isn't indexed
+     * @since 0.3.0
+     */
+    public Path getInheritanceIndexDirectory() {
+        return this.indexDirectory;
+    }
+
+    /**
+     * Sets the directory that {@link InheritanceIndex inheritance indexes} of
+     * the classpath's jars are kept in - so inheritance queries against the
+     * classpath needn't read any classes.
+     * <p>
+     * The index of each jar is built the first time the jar is seen, and
+     * reused by later runs for as long as the jar is unchanged.
+     *
+     * @param indexDirectory The directory of indexes, or {@code null} to not
+     *                       index the classpath
+     * @return {@code this}, for chaining
+     * @since 0.3.0
+     */
+    public Atlas setInheritanceIndexDirectory(final Path indexDirectory) {
+        this.indexDirectory = indexDirectory;
+        return this;
+    }
+
+    /**
+     * Gets whether the classes of {@link TransformOptions#getNestedJars() nested jars}
+     * are made available to the {@link InheritanceProvider inheritance provider}.
+     *
+     * @return {@code true} if nested jars are on the classpath
+     * @since 0.3.0
+     */
+    public boolean isNestedJarsOnClasspath() {
+        return this.nestedJarsOnClasspath;
+    }
+
+    /**
+     * Sets whether the classes of {@link TransformOptions#getNestedJars() nested jars}
+     * are made available to the {@link InheritanceProvider inheritance provider},
+     * after those of the jar being transformed.
+     * <p>
+     * This only applies to jars transformed by path, or as a {@link JarFile} -
+     * the jars nested within a {@link JarStream} haven't arrived ahead of time.
+     *
+     * @param nestedJarsOnClasspath Whether nested jars are on the classpath
+     * @return {@code this}, for chaining
+     * @since 0.3.0
+     */
+    public Atlas setNestedJarsOnClasspath(final boolean nestedJarsOnClasspath) {
+        this.nestedJarsOnClasspath = nestedJarsOnClasspath;
+        return this;
+    }
+
     /**
      * Installs a {@link JarEntryTransformer transformer} to the Atlas, noting that
      * each installed transformer will be constructed once for each binary processed.
@@ -114,7 +272,7 @@ public Atlas install(final Function<AtlasTransformerContext, JarEntryTransformer
      * @see #run(JarFile, Path)
      */
     public void run(final Path input, final Path output) throws IOException {
-        try (final JarFile jar = new JarFile(input)) {
+        try (final JarFile jar = new JarFile(input, this.cachePolicy())) {
             this.run(jar, output);
         }
     }
@@ -129,35 +287,241 @@ public void run(final Path input, final Path output) throws IOException {
      *                     reading the output JAR
      */
     public void run(final JarFile jar, final Path output) throws IOException {
-        // Create a classpath for the current JAR file
-        final List<ClassProvider> classpath = new ArrayList<>();
-        classpath.add(jar);
-        for (final Path jarPath : this.classpath) {
-            classpath.add(new JarFile(jarPath));
+        try (final ClasspathSession classpath = this.openClasspath();
+             final ClasspathSession.Lease attached = this.leaseSession()) {
+            final InheritanceProvider inheritanceProvider = this.inheritanceProvider(classpath, attached);
+            // The classpath is only closed once the entries in flight have
+            // stopped, should the run be interrupted
+            FutureHelper.await(this.runAsync(jar, output, inheritanceProvider, this.options(classpath, attached)),
+                    jar::drained);
+        }
+    }
+
+    /**
+     * Runs the Atlas on the given input {@link JarFile jar}, writing the result to
+     * the given output stream.
+     * <p>
+     * Along with a {@link JarFile#JarFile(String, java.nio.ByteBuffer) jar held in memory},
+     * and an in-memory output stream, the binary never touches the disk.
+     *
+     * @param jar The input jar
+     * @param output The output binary, which will not be closed
+     * @throws IOException Should an issue occur reading the input JAR, or
+     *                     writing the output JAR
+     * @since 0.3.0
+     */
+    public void run(final JarFile jar, final OutputStream output) throws IOException {
+        try (final ClasspathSession classpath = this.openClasspath();
+             final ClasspathSession.Lease attached = this.leaseSession()) {
+            final InheritanceProvider inheritanceProvider = this.inheritanceProvider(classpath, attached);
+            final JarEntryTransformer[] transformers = this.transformers(this.jarProvider(jar), inheritanceProvider);
+            FutureHelper.await(jar.transformAsync(output, this.executorService, this.options(classpath, attached), transformers),
+                    jar::drained);
+        }
+    }
+
+    /**
+     * Runs the Atlas on the binary read from the given input stream, writing the
+     * result to the given output stream - without either touching the disk.
+     * <p>
+     * The output is written as the input arrives, see {@link JarStream}. As such,
+     * the {@link InheritanceProvider inheritance provider} only knows of the
+     * binary's own classes once they have been read - the classpath should hold
+     * anything transformers need to know of ahead of time.
+     *
+     * @param input The input binary, which will not be closed
+     * @param output The output binary, which will not be closed
+     * @throws IOException Should an issue occur reading the input JAR, or
+     *                     writing the output JAR
+     * @since 0.3.0
+     */
+    public void run(final InputStream input, final OutputStream output) throws IOException {
+        final JarStream jar = new JarStream(input);
+        try (final ClasspathSession classpath = this.openClasspath();
+             final ClasspathSession.Lease attached = this.leaseSession()) {
+            final InheritanceProvider inheritanceProvider = this.inheritanceProvider(classpath, attached);
+            final JarEntryTransformer[] transformers = this.transformers(jar, inheritanceProvider);
+            FutureHelper.await(jar.transformAsync(output, this.executorService, this.options(classpath, attached), transformers),
+                    jar::drained);
+        }
+    }
+
+    /**
+     * Runs the Atlas on each of the given input binaries, saving the results to
+     * their associated output paths.
+     * <p>
+     * The binaries are transformed concurrently, on the Atlas' executor service,
+     * and share a single classpath - which is opened once for the whole batch.
+     *
+     * @param jars The input binaries, mapped to their output binaries
+     * @throws IOException Should an issue occur reading the input JARs, or
+     *                     reading the output JARs
+     * @since 0.3.0
+     */
+    public void run(final Map<Path, Path> jars) throws IOException {
+        try (final ClasspathSession classpath = this.openClasspath();
+             final ClasspathSession.Lease attached = this.leaseSession()) {
+            final InheritanceProvider inheritanceProvider = this.inheritanceProvider(classpath, attached);
+            final TransformOptions options = this.options(classpath, attached);
+
+            // Open all of the jars up front, so nothing is left running should
+            // one of them fail to open
+            final Map<JarFile, Path> inputs = new LinkedHashMap<>();
+            try {
+                for (final Map.Entry<Path, Path> entry : jars.entrySet()) {
+                    inputs.put(new JarFile(entry.getKey(), this.cachePolicy()), entry.getValue());
+                }
+            }
+            catch (final IOException ex) {
+                for (final JarFile jar : inputs.keySet()) {
+                    jar.close();
+                }
+                throw ex;
+            }
+
+            final CompletableFuture<?>[] runs = new CompletableFuture<?>[inputs.size()];
+            final CompletableFuture<?>[] closed = new CompletableFuture<?>[inputs.size()];
+            final CompletableFuture<?>[] futures = new CompletableFuture<?>[inputs.size()];
+            int i = 0;
+            for (final Map.Entry<JarFile, Path> entry : inputs.entrySet()) {
+                final JarFile jar = entry.getKey();
+                final CompletableFuture<Void> run = this.runAsync(jar, entry.getValue(), inheritanceProvider, options);
+                runs[i] = run;
+                // A cancelled run completes straight away, so the jar is only
+                // closed once the entries it had in flight have stopped
+                closed[i] = run.handle((v, ex) -> null).thenCompose(v -> jar.closeAsync());
+                futures[i] = CompletableFuture.allOf(run, closed[i]);
+                i++;
+            }
+
+            // Should one jar fail, the others are cancelled rather than left to
+            // run to completion - and the first failure reported
+            final CompletableFuture<Void> failure = new CompletableFuture<>();
+            for (final CompletableFuture<?> run : runs) {
+                run.whenComplete((v, ex) -> {
+                    if (ex == null || ex instanceof CancellationException) return;
+                    failure.completeExceptionally(ex);
+                    for (final CompletableFuture<?> other : runs) {
+                        other.cancel(true);
+                    }
+                });
+            }
+            try {
+                // Should this be interrupted, the runs themselves are cancelled
+                // - and the classpath only closed once their jars have been
+                FutureHelper.await(CompletableFuture.allOf(futures), () -> {
+                    for (final CompletableFuture<?> run : runs) {
+                        run.cancel(true);
+                    }
+                    return CompletableFuture.allOf(closed);
+                });
+            }
+            catch (final IOException | RuntimeException ex) {
+                if (failure.isCompletedExceptionally()) FutureHelper.await(failure);
+                throw ex;
+            }
         }
+    }
+
+    private CompletableFuture<Void> runAsync(final JarFile jar, final Path output, final InheritanceProvider classpath,
+                                             final TransformOptions options) throws IOException {
+        // Transform the JAR, and save to the output path
+        return jar.transformAsync(output, this.executorService, options,
+                this.transformers(this.jarProvider(jar), classpath));
+    }
 
-        // Create the context for the JAR file
-        final AtlasTransformerContext context = new AtlasTransformerContext(
-                new ClassProviderInheritanceProvider(new CompositeClassProvider(classpath))
-        );
+    private InheritanceProvider jarProvider(final JarFile jar) throws IOException {
+        final JarPathFilter nested = this.options.getNestedJars();
+        if (!this.nestedJarsOnClasspath || nested == null) return new ClassProviderInheritanceProvider(jar);
+
+        final List<ClassProvider> providers = new ArrayList<>();
+        _collectNested(jar, nested, providers);
+        return new ClassProviderInheritanceProvider(new CompositeClassProvider(providers));
+    }
+
+    private JarEntryTransformer[] transformers(final InheritanceProvider jar, final InheritanceProvider classpath) {
+        // Create the context for the JAR file, the jar's own classes taking
+        // precedence over the classpath
+        final AtlasTransformerContext context = new AtlasTransformerContext(new CompositeInheritanceProvider(
+                Arrays.asList(jar, classpath)
+        ));
 
         // Construct the transformers
         final JarEntryTransformer[] transformers = new JarEntryTransformer[this.transformers.size()];
         for (int i = 0; i < this.transformers.size(); i++) {
             transformers[i] = this.transformers.get(i).apply(context);
         }
+        return transformers;
+    }
 
-        // Transform the JAR, and save to the output path
-        jar.transform(output, transformers);
+    private ClasspathSession.Lease leaseSession() throws IOException {
+        // The attached session may be shared with other runs, so its jars are
+        // leased for the run - rather than closed beneath it, should another
+        // run pick up changes to them
+        return this.session == null ? null : this.session.lease();
+    }
+
+    private InheritanceProvider inheritanceProvider(final ClasspathSession classpath,
+                                                    final ClasspathSession.Lease attached) {
+        final List<InheritanceProvider> providers = new ArrayList<>(3);
+        if (attached != null) {
+            providers.add(attached.inheritanceProvider());
+        }
+        if (!classpath.getPaths().isEmpty() || providers.isEmpty()) {
+            providers.add(classpath.inheritanceProvider());
+        }
+        if (!this.classpathJars.isEmpty()) {
+            providers.add(this.classpathJarsProvider());
+        }
+
+        return providers.size() == 1 ? providers.get(0) : new CompositeInheritanceProvider(providers);
+    }
+
+    private synchronized InheritanceProvider classpathJarsProvider() {
+        // The jars are only indexed again should they have changed since the
+        // last run
+        if (!this.classpathJars.equals(this.indexedJars)) {
+            this.indexedJars = new ArrayList<>(this.classpathJars);
+            this.classpathJarsProvider = new ConcurrentCachingInheritanceProvider(new ClassProviderInheritanceProvider(
+                    new CompositeClassProvider(new ArrayList<>(this.indexedJars))
+            ));
+        }
+        return this.classpathJarsProvider;
+    }
 
-        JarRepacker.verifyJarManifest(output);
+    private ClasspathSession openClasspath() throws IOException {
+        // The classpath is only held open for the run, so is mapped
+        return new ClasspathSession(this.classpath, this.cachePolicy(), this.indexDirectory, true);
+    }
 
-        // Close the JarFiles we made earlier
-        for (final ClassProvider classProvider : classpath) {
-            if (classProvider == jar) continue;
-            if (!(classProvider instanceof Closeable)) continue;
+    private ClassCachePolicy cachePolicy() {
+        // The jars opened by the Atlas cache their classes within the memory
+        // budget, should there be one
+        final MemoryBudget budget = this.options.getMemoryBudget();
+        return budget == null ? ClassCachePolicy.unbounded() : ClassCachePolicy.unbounded().withBudget(budget);
+    }
 
-            ((Closeable) classProvider).close();
+    private TransformOptions options(final ClasspathSession classpath, final ClasspathSession.Lease attached) {
+        // Cached results are only valid for the classpath they were made
+        // against - that of the attached session, the Atlas, and its jars
+        final StringBuilder fingerprint = new StringBuilder();
+        if (attached != null) fingerprint.append(attached.fingerprint()).append(':');
+        fingerprint.append(classpath.fingerprint());
+        for (final JarFile jar : this.classpathJars) {
+            fingerprint.append(':').append(jar.fingerprint());
+        }
+        return new TransformOptions(this.options).setClasspathFingerprint(fingerprint.toString());
+    }
+
+    private static void _collectNested(final JarFile jar, final JarPathFilter nested, final List<ClassProvider> providers)
+            throws IOException {
+        providers.add(jar);
+        final List<JarPath> paths;
+        try (final Stream<JarPath> stream = jar.walk(nested)) {
+            paths = stream.collect(Collectors.toList());
+        }
+        for (final JarPath path : paths) {
+            _collectNested(jar.getNestedJar(path), nested, providers);
         }
     }
 
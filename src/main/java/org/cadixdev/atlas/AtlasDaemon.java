@@ -0,0 +1,728 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas;
+
+import org.cadixdev.atlas.jar.ClassCachePolicy;
+import org.cadixdev.atlas.jar.InheritanceIndex;
+import org.cadixdev.atlas.jar.MemoryBudget;
+import org.cadixdev.atlas.jar.TransformOptions;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A long-lived process that runs transform jobs, keeping the classpaths they
+ * use open - along with their cached classes and inheritance information -
+ * between jobs.
+ * <p>
+ * For the many small jobs of a build, starting a JVM and opening the
+ * classpath can cost more than the transformation itself. A daemon pays for
+ * both once, and each job against a classpath it has already seen runs warm.
+ * <p>
+ * Jobs name their transformers, which are {@link #register(String, Function) registered}
+ * with the daemon ahead of time - or by a {@link Plugin plugin}, should the
+ * daemon be started through {@link #main(String[])}.
+ * <p>
+ * Jobs are {@link #serve(InputStream, OutputStream) served} from a line
+ * protocol, of tab-separated fields. Each request is an identifier of the
+ * client's choosing, a command, and its arguments:
+ * <pre>
+ * 1    transform    in=input.jar    out=output.jar    cp=a.jar:b.jar    with=remap,strip
+ * 2    ping
+ * 3    evict
+ * 4    shutdown
+ * </pre>
+ * The classpath is separated by the platform's {@link File#pathSeparator path separator},
+ * and may be omitted - as may the transformers. Each request is answered by
+ * its identifier, followed by either {@code ok} and any result, or {@code error}
+ * and a message:
+ * <pre>
+ * 1    ok    153ms
+ * 2    ok
+ * 3    ok    2
+ * 4    ok
+ * </pre>
+ * Transform jobs run in the background, so their responses may arrive out of
+ * order - a shutdown is only answered once every job has completed.
+ * <p>
+ * A classpath is closed once it has been idle for the {@link #setIdleTimeout(Duration) idle timeout},
+ * once more than the {@link #setMaxClasspaths(int) maximum number} of classpaths
+ * are open, or should the heap be under pressure - see {@link #setMemoryThreshold(double)}.
+ * Those checks are made as jobs complete, and classpaths in use by a job are
+ * never closed.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class AtlasDaemon implements Closeable {
+
+    /**
+     * Starts a daemon serving jobs from standard input, answering them on
+     * standard output, with the transformers registered by any {@link Plugin plugins}
+     * on the classpath.
+     * <p>
+     * Anything else written to standard output, while the daemon runs, is
+     * redirected to standard error - so as to not corrupt the responses.
+     *
+     * @param args The arguments, which are ignored
+     * @throws IOException Should an issue occur reading requests, or writing
+     *                     responses
+     */
+    public static void main(final String[] args) throws IOException {
+        final PrintStream out = System.out;
+        System.setOut(System.err);
+        try (final AtlasDaemon daemon = new AtlasDaemon()) {
+            for (final Plugin plugin : ServiceLoader.load(Plugin.class)) {
+                plugin.register(daemon);
+            }
+            daemon.serve(System.in, out);
+        }
+        finally {
+            System.setOut(out);
+        }
+    }
+
+    private final Map<String, Function<AtlasTransformerContext, JarEntryTransformer>> transformers =
+            new ConcurrentHashMap<>();
+    private final LinkedHashMap<List<Path>, WarmClasspath> classpaths = new LinkedHashMap<>(16, 0.75f, true);
+    private final TransformOptions options = new TransformOptions();
+
+    private final ExecutorService executorService;
+    private final boolean manageExecutor;
+
+    private ClassCachePolicy cachePolicy = ClassCachePolicy.unbounded();
+    private Path indexDirectory;
+    private Duration idleTimeout = Duration.ofMinutes(10);
+    private int maxClasspaths = 8;
+    private double memoryThreshold = 0.75;
+    private int maxConcurrentJobs = 1;
+
+    private AtlasDaemon(final ExecutorService executorService, final boolean manageExecutor) {
+        this.executorService = executorService;
+        this.manageExecutor = manageExecutor;
+    }
+
+    /**
+     * Creates a daemon, transforming entries on the given executor service.
+     *
+     * @param executorService The executor service
+     */
+    public AtlasDaemon(final ExecutorService executorService) {
+        this(executorService, false);
+    }
+
+    /**
+     * Creates a daemon, transforming entries on a default executor service,
+     * {@link Executors#newWorkStealingPool()}.
+     */
+    public AtlasDaemon() {
+        this(Executors.newWorkStealingPool(), true);
+    }
+
+    /**
+     * Registers a {@link JarEntryTransformer transformer} under the given name,
+     * so jobs may use it. As with {@link Atlas#install(Function)}, the transformer
+     * is constructed once for each job using it.
+     *
+     * @param name The name of the transformer
+     * @param transformer The transformer constructor
+     * @return {@code this}, for chaining
+     */
+    public AtlasDaemon register(final String name,
+                                final Function<AtlasTransformerContext, JarEntryTransformer> transformer) {
+        this.transformers.put(Objects.requireNonNull(name, "name"), Objects.requireNonNull(transformer, "transformer"));
+        return this;
+    }
+
+    /**
+     * Gets the {@link TransformOptions options} each job is run with, which may
+     * be modified between jobs.
+     * <p>
+     * A {@link TransformOptions#setTransformCache(org.cadixdev.atlas.jar.TransformCache) transform cache}
+     * set here is shared by every job.
+     *
+     * @return The transform options
+     */
+    public TransformOptions getTransformOptions() {
+        return this.options;
+    }
+
+    /**
+     * Sets the policy that the jars of each classpath cache their classes by,
+     * for those classpaths opened from then on.
+     *
+     * @param cachePolicy The policy for caching classes
+     * @return {@code this}, for chaining
+     */
+    public AtlasDaemon setClassCachePolicy(final ClassCachePolicy cachePolicy) {
+        this.cachePolicy = Objects.requireNonNull(cachePolicy, "cachePolicy");
+        return this;
+    }
+
+    /**
+     * Sets the directory that {@link InheritanceIndex inheritance indexes} of
+     * the classpaths' jars are kept in, for those classpaths opened from then on.
+     *
+     * @param indexDirectory The directory of indexes, or {@code null} to not
+     *                       index the classpaths
+     * @return {@code this}, for chaining
+     * @see Atlas#setInheritanceIndexDirectory(Path)
+     */
+    public AtlasDaemon setInheritanceIndexDirectory(final Path indexDirectory) {
+        this.indexDirectory = indexDirectory;
+        return this;
+    }
+
+    /**
+     * Sets the time a classpath may go unused, before it is closed.
+     *
+     * @param idleTimeout The idle timeout
+     * @return {@code this}, for chaining
+     */
+    public AtlasDaemon setIdleTimeout(final Duration idleTimeout) {
+        if (idleTimeout.isNegative()) throw new IllegalArgumentException("idleTimeout must not be negative");
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of classpaths kept open, beyond which the least
+     * recently used idle classpaths are closed.
+     *
+     * @param maxClasspaths The maximum number of classpaths
+     * @return {@code this}, for chaining
+     */
+    public AtlasDaemon setMaxClasspaths(final int maxClasspaths) {
+        if (maxClasspaths < 0) throw new IllegalArgumentException("maxClasspaths must not be negative");
+        this.maxClasspaths = maxClasspaths;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the heap that may remain in use, following a
+     * collection, before the heap is considered under pressure.
+     * <p>
+     * While under pressure, the least recently used idle classpath is closed
+     * as each job completes - the heap's use is only known again once it has
+     * next been collected, so classpaths are closed one at a time.
+     *
+     * @param memoryThreshold The fraction of the heap, between {@code 0} and {@code 1}
+     * @return {@code this}, for chaining
+     */
+    public AtlasDaemon setMemoryThreshold(final double memoryThreshold) {
+        if (memoryThreshold < 0 || memoryThreshold > 1) {
+            throw new IllegalArgumentException("memoryThreshold must be between 0 and 1");
+        }
+        this.memoryThreshold = memoryThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the number of jobs {@link #serve(InputStream, OutputStream) served}
+     * at once. Each job is transformed in parallel regardless, so this is only
+     * worth raising for many small jobs.
+     *
+     * @param maxConcurrentJobs The number of jobs run at once
+     * @return {@code this}, for chaining
+     */
+    public AtlasDaemon setMaxConcurrentJobs(final int maxConcurrentJobs) {
+        if (maxConcurrentJobs < 1) throw new IllegalArgumentException("maxConcurrentJobs must be positive");
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        return this;
+    }
+
+    /**
+     * Gets the classpaths currently kept open, least recently used first.
+     *
+     * @return The open classpaths
+     */
+    public List<List<Path>> getOpenClasspaths() {
+        synchronized (this.classpaths) {
+            return new ArrayList<>(this.classpaths.keySet());
+        }
+    }
+
+    /**
+     * Runs the given job, blocking until it has completed.
+     *
+     * @param job The job
+     * @throws IOException Should an issue occur opening the classpath, reading
+     *                     the input JAR, or writing the output JAR
+     * @throws IllegalArgumentException Should the job use a transformer that
+     *                                  hasn't been registered
+     */
+    public void run(final Job job) throws IOException {
+        // Construct the transformers ahead of opening the classpath, so an
+        // unknown transformer fails fast
+        final List<Function<AtlasTransformerContext, JarEntryTransformer>> transformers =
+                new ArrayList<>(job.transformers.size());
+        for (final String name : job.transformers) {
+            final Function<AtlasTransformerContext, JarEntryTransformer> transformer = this.transformers.get(name);
+            if (transformer == null) throw new IllegalArgumentException("unknown transformer: " + name);
+            transformers.add(transformer);
+        }
+
+        final WarmClasspath classpath = this.acquire(job.classpath);
+        try (final Atlas atlas = new Atlas(this.executorService, this.options)) {
+            atlas.attach(classpath.session);
+            transformers.forEach(atlas::install);
+            atlas.run(job.input, job.output);
+        }
+        finally {
+            this.release(classpath);
+        }
+    }
+
+    /**
+     * Serves jobs from the given input stream, answering them on the given
+     * output stream - until either the input is exhausted, or a shutdown is
+     * requested. See the {@link AtlasDaemon class documentation} for the
+     * protocol.
+     * <p>
+     * Neither stream is closed, and the daemon may serve again afterwards.
+     *
+     * @param in The stream of requests
+     * @param out The stream of responses
+     * @throws IOException Should an issue occur reading requests, or writing
+     *                     responses
+     */
+    public void serve(final InputStream in, final OutputStream out) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        final Responder responder = new Responder(writer);
+        final ExecutorService jobs = Executors.newFixedThreadPool(this.maxConcurrentJobs);
+        String shutdown = null;
+        try {
+            String line;
+            while (shutdown == null && (line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+
+                final String[] fields = line.split("\t");
+                final String id = fields[0];
+                final String command = fields.length > 1 ? fields[1] : "";
+                switch (command) {
+                    case "transform": {
+                        final Job job;
+                        try {
+                            job = _parse(fields);
+                        }
+                        catch (final IllegalArgumentException ex) {
+                            responder.error(id, ex);
+                            break;
+                        }
+                        jobs.execute(() -> {
+                            final long start = System.nanoTime();
+                            try {
+                                this.run(job);
+                                responder.ok(id, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                            }
+                            catch (final IOException | RuntimeException ex) {
+                                responder.error(id, ex);
+                            }
+                        });
+                        break;
+                    }
+                    case "ping":
+                        responder.ok(id, null);
+                        break;
+                    case "evict":
+                        try {
+                            responder.ok(id, Integer.toString(this.evict()));
+                        }
+                        catch (final IOException ex) {
+                            responder.error(id, ex);
+                        }
+                        break;
+                    case "shutdown":
+                        shutdown = id;
+                        break;
+                    default:
+                        responder.error(id, new IllegalArgumentException("unknown command: " + command));
+                }
+            }
+        }
+        finally {
+            // Let the jobs already started complete, before answering any
+            // shutdown
+            jobs.shutdown();
+            try {
+                jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            catch (final InterruptedException ex) {
+                jobs.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for jobs to complete");
+            }
+        }
+
+        if (shutdown != null) responder.ok(shutdown, null);
+        responder.rethrow();
+    }
+
+    /**
+     * Closes every idle classpath.
+     *
+     * @return The number of classpaths closed
+     * @throws IOException Should an issue occur closing a classpath
+     */
+    public int evict() throws IOException {
+        final List<WarmClasspath> evicted = new ArrayList<>();
+        synchronized (this.classpaths) {
+            final Iterator<WarmClasspath> iterator = this.classpaths.values().iterator();
+            while (iterator.hasNext()) {
+                final WarmClasspath classpath = iterator.next();
+                if (classpath.users == 0) {
+                    iterator.remove();
+                    evicted.add(classpath);
+                }
+            }
+        }
+        _close(evicted);
+        return evicted.size();
+    }
+
+    private WarmClasspath acquire(final List<Path> paths) throws IOException {
+        synchronized (this.classpaths) {
+            final WarmClasspath warm = this.classpaths.get(paths);
+            if (warm != null) {
+                warm.users++;
+                return warm;
+            }
+        }
+
+        // Open the classpath outside of the lock, so jobs against other
+        // classpaths needn't wait on it. Two jobs may occasionally open the
+        // same classpath, but only one will be kept
+        // The classpath caches its classes within the memory budget, should
+        // there be one - so its jars are shared between jobs, as is the budget
+        final MemoryBudget budget = this.options.getMemoryBudget();
+        final ClassCachePolicy cachePolicy = budget != null && this.cachePolicy.getBudget() == null ?
+                this.cachePolicy.withBudget(budget) :
+                this.cachePolicy;
+        final WarmClasspath opened = new WarmClasspath(
+                new ClasspathSession(paths, cachePolicy, this.indexDirectory)
+        );
+        final WarmClasspath existing;
+        synchronized (this.classpaths) {
+            existing = this.classpaths.get(paths);
+            if (existing != null) {
+                existing.users++;
+            }
+            else {
+                this.classpaths.put(paths, opened);
+                opened.users++;
+            }
+        }
+        if (existing == null) return opened;
+
+        opened.session.close();
+        return existing;
+    }
+
+    private void release(final WarmClasspath classpath) {
+        // Reading the heap's usage walks every memory pool, so is done ahead
+        // of taking the lock every job contends for
+        boolean pressure = _heapUsage() > this.memoryThreshold;
+        final List<WarmClasspath> evicted = new ArrayList<>();
+        synchronized (this.classpaths) {
+            classpath.users--;
+            classpath.lastUsed = System.nanoTime();
+
+            final long now = System.nanoTime();
+            int excess = this.classpaths.size() - this.maxClasspaths;
+            final Iterator<WarmClasspath> iterator = this.classpaths.values().iterator();
+            while (iterator.hasNext()) {
+                final WarmClasspath candidate = iterator.next();
+                if (candidate.users != 0) continue;
+
+                final boolean idle = now - candidate.lastUsed >= this.idleTimeout.toNanos();
+                if (idle || excess > 0 || pressure) {
+                    iterator.remove();
+                    evicted.add(candidate);
+                    excess--;
+                    pressure = false;
+                }
+            }
+        }
+
+        try {
+            _close(evicted);
+        }
+        catch (final IOException ignored) {
+            // A classpath failing to close is no fault of the job releasing
+            // its own
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        final List<WarmClasspath> classpaths;
+        synchronized (this.classpaths) {
+            classpaths = new ArrayList<>(this.classpaths.values());
+            this.classpaths.clear();
+        }
+        try {
+            _close(classpaths);
+        }
+        finally {
+            if (this.manageExecutor) {
+                this.executorService.shutdown();
+            }
+        }
+    }
+
+    private static Job _parse(final String[] fields) {
+        Path input = null;
+        Path output = null;
+        List<Path> classpath = Collections.emptyList();
+        List<String> transformers = Collections.emptyList();
+        for (int i = 2; i < fields.length; i++) {
+            final int split = fields[i].indexOf('=');
+            if (split == -1) throw new IllegalArgumentException("malformed argument: " + fields[i]);
+
+            final String key = fields[i].substring(0, split);
+            final String value = fields[i].substring(split + 1);
+            switch (key) {
+                case "in":
+                    input = Paths.get(value);
+                    break;
+                case "out":
+                    output = Paths.get(value);
+                    break;
+                case "cp": {
+                    final List<Path> paths = new ArrayList<>();
+                    for (final String path : value.split(File.pathSeparator)) {
+                        if (!path.isEmpty()) paths.add(Paths.get(path));
+                    }
+                    classpath = paths;
+                    break;
+                }
+                case "with":
+                    transformers = value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(","));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument: " + key);
+            }
+        }
+        if (input == null) throw new IllegalArgumentException("missing argument: in");
+        if (output == null) throw new IllegalArgumentException("missing argument: out");
+        return new Job(input, output, classpath, transformers);
+    }
+
+    private static double _heapUsage() {
+        // The heap's use following its last collection is what remains live,
+        // where its current use would include any garbage yet to be collected
+        long used = 0;
+        long max = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage == null || usage.getMax() == -1) continue;
+            used += usage.getUsed();
+            max += usage.getMax();
+        }
+        if (max == 0) {
+            final Runtime runtime = Runtime.getRuntime();
+            return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        }
+        return (double) used / max;
+    }
+
+    private static void _close(final List<WarmClasspath> classpaths) throws IOException {
+        IOException failure = null;
+        for (final WarmClasspath classpath : classpaths) {
+            try {
+                classpath.session.close();
+            }
+            catch (final IOException ex) {
+                if (failure == null) failure = ex;
+                else failure.addSuppressed(ex);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * A transform job, of an input binary against a classpath.
+     *
+     * @author Jamie Mansfield
+     * @since 0.3.0
+     */
+    public static final class Job {
+
+        private final Path input;
+        private final Path output;
+        private final List<Path> classpath;
+        private final List<String> transformers;
+
+        /**
+         * Creates a job.
+         *
+         * @param input The input binary
+         * @param output The output binary
+         * @param classpath The paths of the jars in the classpath
+         * @param transformers The names of the {@link AtlasDaemon#register(String, Function) registered}
+         *                     transformers to use, in order
+         */
+        public Job(final Path input, final Path output, final List<Path> classpath, final List<String> transformers) {
+            this.input = Objects.requireNonNull(input, "input");
+            this.output = Objects.requireNonNull(output, "output");
+            // Classpaths are kept by their absolute paths, so the same jars
+            // are shared regardless of how a job names them
+            final List<Path> paths = new ArrayList<>(classpath.size());
+            for (final Path path : classpath) {
+                paths.add(path.toAbsolutePath().normalize());
+            }
+            this.classpath = Collections.unmodifiableList(paths);
+            this.transformers = Collections.unmodifiableList(new ArrayList<>(transformers));
+        }
+
+        /**
+         * Gets the input binary.
+         *
+         * @return The input
+         */
+        public Path getInput() {
+            return this.input;
+        }
+
+        /**
+         * Gets the output binary.
+         *
+         * @return The output
+         */
+        public Path getOutput() {
+            return this.output;
+        }
+
+        /**
+         * Gets the paths of the jars in the classpath.
+         *
+         * @return The classpath
+         */
+        public List<Path> getClasspath() {
+            return this.classpath;
+        }
+
+        /**
+         * Gets the names of the transformers to use.
+         *
+         * @return The transformers
+         */
+        public List<String> getTransformers() {
+            return this.transformers;
+        }
+
+    }
+
+    /**
+     * A provider of transformers to a daemon started through {@link AtlasDaemon#main(String[])},
+     * discovered through the {@link ServiceLoader}.
+     *
+     * @author Jamie Mansfield
+     * @since 0.3.0
+     */
+    public interface Plugin {
+
+        /**
+         * Registers transformers with the given daemon.
+         *
+         * @param daemon The daemon
+         */
+        void register(final AtlasDaemon daemon);
+
+    }
+
+    /**
+     * A classpath kept open between jobs, with the number of jobs using it.
+     */
+    private static final class WarmClasspath {
+
+        private final ClasspathSession session;
+        private int users;
+        private long lastUsed;
+
+        WarmClasspath(final ClasspathSession session) {
+            this.session = session;
+        }
+
+    }
+
+    /**
+     * Writes responses, from whichever thread completes a request.
+     */
+    private static final class Responder {
+
+        private final Writer writer;
+        private IOException failure;
+
+        Responder(final Writer writer) {
+            this.writer = writer;
+        }
+
+        void ok(final String id, final String result) {
+            this.write(id + "\tok" + (result == null ? "" : "\t" + result));
+        }
+
+        void error(final String id, final Exception ex) {
+            final String message = ex.getMessage() == null ? ex.getClass().getName() : ex.getMessage();
+            this.write(id + "\terror\t" + message.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+        }
+
+        synchronized void rethrow() throws IOException {
+            if (this.failure != null) throw this.failure;
+        }
+
+        private synchronized void write(final String response) {
+            // Remember the first failure to respond, rather than fail the
+            // job that was responding
+            if (this.failure != null) return;
+            try {
+                this.writer.write(response);
+                this.writer.write('\n');
+                this.writer.flush();
+            }
+            catch (final IOException ex) {
+                this.failure = ex;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas;
+
+import org.cadixdev.atlas.jar.ClassCachePolicy;
+import org.cadixdev.atlas.jar.InheritanceIndex;
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.util.CompositeClassProvider;
+import org.cadixdev.atlas.util.ConcurrentCachingInheritanceProvider;
+import org.cadixdev.atlas.util.DigestHelper;
+import org.cadixdev.bombe.analysis.CompositeInheritanceProvider;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.analysis.asm.ClassProviderInheritanceProvider;
+import org.cadixdev.bombe.provider.ClassProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An opened classpath, that can be {@link Atlas#attach(ClasspathSession) attached}
+ * to any number of {@link Atlas atlases}, and outlives any single run.
+ * <p>
+ * The jars of the classpath are kept open, along with their cached classes and
+ * inheritance information, until the session is closed. A jar is only reopened
+ * should its size, or last modified time, change - see {@link #refresh()}.
+ * <p>
+ * As the session may be held open for long, its jars aren't memory-mapped -
+ * see {@link JarFile#JarFile(Path, ClassCachePolicy, boolean)}. So they're
+ * neither locked on Windows, nor unsafe to overwrite in place, while the
+ * session is open - though should a jar be overwritten, it should be
+ * {@link #refresh() refreshed} before it is next read.
+ * <p>
+ * A jar is only closed once nothing is reading from it - each run holds the
+ * jars it started with until it completes, so a jar reopened by a refresh,
+ * or a session closed, beneath a run is closed once the run is done with it.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class ClasspathSession implements ClassProvider, Closeable {
+
+    private final List<Path> paths;
+    private final ClassCachePolicy cachePolicy;
+    private final Path indexDirectory;
+    private final boolean map;
+    private final List<Element> elements;
+    private volatile State state;
+    private boolean closed;
+
+    /**
+     * Opens a session for the given classpath.
+     *
+     * @param classpath The paths of the jars in the classpath
+     * @throws IOException Should an issue occur opening the jars
+     */
+    public ClasspathSession(final List<Path> classpath) throws IOException {
+        this(classpath, ClassCachePolicy.unbounded());
+    }
+
+    /**
+     * Opens a session for the given classpath, with each jar caching its classes
+     * according to the given policy.
+     *
+     * @param classpath The paths of the jars in the classpath
+     * @param cachePolicy The policy for caching classes
+     * @throws IOException Should an issue occur opening the jars
+     */
+    public ClasspathSession(final List<Path> classpath, final ClassCachePolicy cachePolicy) throws IOException {
+        this(classpath, cachePolicy, null);
+    }
+
+    /**
+     * Opens a session for the given classpath, with each jar caching its classes
+     * according to the given policy - and answering inheritance queries from an
+     * {@link InheritanceIndex inheritance index}, kept in the given directory.
+     * <p>
+     * The index of each jar is built the first time the jar is seen, and
+     * memory-mapped thereafter.
+     *
+     * @param classpath The paths of the jars in the classpath
+     * @param cachePolicy The policy for caching classes
+     * @param indexDirectory The directory of inheritance indexes, or {@code null}
+     *                       to read classes for inheritance queries
+     * @throws IOException Should an issue occur opening the jars, or their indexes
+     */
+    public ClasspathSession(final List<Path> classpath, final ClassCachePolicy cachePolicy, final Path indexDirectory)
+            throws IOException {
+        this(classpath, cachePolicy, indexDirectory, false);
+    }
+
+    /**
+     * Opens a session for the given classpath, memory-mapping its jars should
+     * the session be short-lived - such as for a single run.
+     *
+     * @param classpath The paths of the jars in the classpath
+     * @param cachePolicy The policy for caching classes
+     * @param indexDirectory The directory of inheritance indexes, or {@code null}
+     *                       to read classes for inheritance queries
+     * @param map Whether to memory-map the jars
+     * @throws IOException Should an issue occur opening the jars, or their indexes
+     */
+    ClasspathSession(final List<Path> classpath, final ClassCachePolicy cachePolicy, final Path indexDirectory,
+                     final boolean map) throws IOException {
+        this.paths = Collections.unmodifiableList(new ArrayList<>(classpath));
+        this.cachePolicy = cachePolicy;
+        this.indexDirectory = indexDirectory;
+        this.map = map;
+        this.elements = new ArrayList<>(this.paths.size());
+        try {
+            for (final Path path : this.paths) {
+                this.elements.add(new Element(path, cachePolicy, indexDirectory, map));
+            }
+        }
+        catch (final IOException ex) {
+            _close(this.elements);
+            throw ex;
+        }
+        this.state = new State(this.elements);
+    }
+
+    /**
+     * Gets the paths of the jars in the classpath.
+     *
+     * @return The classpath
+     */
+    public List<Path> getPaths() {
+        return this.paths;
+    }
+
+    /**
+     * Gets the {@link InheritanceProvider inheritance provider} for the classpath,
+     * which is shared by every run using the session.
+     *
+     * @return The inheritance provider
+     */
+    public InheritanceProvider inheritanceProvider() {
+        return this.state.inheritanceProvider;
+    }
+
+    /**
+     * Reopens any jars in the classpath that have changed since they were opened,
+     * judged by their size and last modified time.
+     * <p>
+     * Should any jar have changed, the session's cached inheritance information is
+     * discarded.
+     *
+     * @return {@code true} if any jar was reopened
+     * @throws IOException Should an issue occur reading, or reopening, a jar
+     */
+    public synchronized boolean refresh() throws IOException {
+        if (this.closed) return false;
+
+        // Every changed jar is reopened before any is replaced, so a jar that
+        // fails to reopen leaves the session as it was
+        final List<Element> elements = new ArrayList<>(this.elements);
+        final List<Element> opened = new ArrayList<>();
+        final State state;
+        try {
+            for (int i = 0; i < elements.size(); i++) {
+                final Element element = elements.get(i);
+                if (element.isStale()) {
+                    final Element reopened = new Element(element.path, this.cachePolicy, this.indexDirectory, this.map);
+                    opened.add(reopened);
+                    elements.set(i, reopened);
+                }
+            }
+            if (opened.isEmpty()) return false;
+            state = new State(elements);
+        }
+        catch (final IOException | RuntimeException ex) {
+            try {
+                _close(opened);
+            }
+            catch (final IOException suppressed) {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        }
+
+        final List<Element> replaced = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            if (this.elements.get(i) != elements.get(i)) replaced.add(this.elements.get(i));
+            this.elements.set(i, elements.get(i));
+        }
+        this.state = state;
+
+        // The jars replaced are closed once no run is still reading from them
+        _close(replaced);
+        return true;
+    }
+
+    /**
+     * Gets a fingerprint of the classpath, derived from the {@link JarFile#fingerprint() fingerprint}
+     * of each of its jars - as they were last opened.
+     * <p>
+     * The fingerprint describes the class hierarchy of the jars, not where
+     * they are or when they were written - so is shared by identical
+     * classpaths in different checkouts, and by jars rebuilt from the same
+     * classes. Their size, and last modified time, only decide whether a jar
+     * needs {@link #refresh() reopening}.
+     *
+     * @return The fingerprint
+     * @see org.cadixdev.atlas.jar.TransformOptions#setClasspathFingerprint(String)
+     */
+    public String fingerprint() {
+        return this.state.fingerprint;
+    }
+
+    @Override
+    public byte[] get(final String klass) {
+        return this.state.classProvider.get(klass);
+    }
+
+    /**
+     * Refreshes the session, and leases its jars to a run - such that they
+     * aren't closed until the lease is, should the session be refreshed or
+     * closed meanwhile.
+     *
+     * @return The lease
+     * @throws IOException Should an issue occur reading, or reopening, a jar
+     */
+    synchronized Lease lease() throws IOException {
+        if (this.closed) throw new IOException("classpath session closed");
+        this.refresh();
+        return new Lease(this.state);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        _close(this.elements);
+    }
+
+    private static void _close(final Collection<Element> elements) throws IOException {
+        IOException failure = null;
+        for (final Element element : elements) {
+            try {
+                element.release();
+            }
+            catch (final IOException ex) {
+                if (failure == null) failure = ex;
+                else failure.addSuppressed(ex);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * A jar in the classpath, with the attributes it was opened with.
+     */
+    private static final class Element {
+
+        private final Path path;
+        private final JarFile jar;
+        private final InheritanceIndex index;
+        private final long size;
+        private final long lastModified;
+        // Held by the session, and each lease over the jar - guarded by the
+        // session
+        private int references = 1;
+
+        Element(final Path path, final ClassCachePolicy cachePolicy, final Path indexDirectory, final boolean map)
+                throws IOException {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            this.path = path;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.jar = new JarFile(path, cachePolicy, map);
+            try {
+                this.index = indexDirectory == null ? null : InheritanceIndex.open(this.jar, indexDirectory);
+            }
+            catch (final IOException ex) {
+                this.jar.close();
+                throw ex;
+            }
+        }
+
+        String fingerprint() {
+            // The jar's own fingerprint would read its classes again, which
+            // the index already has
+            return this.index == null ? this.jar.fingerprint() : this.index.fingerprint();
+        }
+
+        boolean isStale() throws IOException {
+            final BasicFileAttributes attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+            return attributes.size() != this.size || attributes.lastModifiedTime().toMillis() != this.lastModified;
+        }
+
+        void retain() {
+            this.references++;
+        }
+
+        void release() throws IOException {
+            if (--this.references == 0) this.jar.close();
+        }
+
+    }
+
+    /**
+     * The providers over a given set of opened jars, replaced as a whole
+     * whenever a jar is reopened.
+     */
+    private static final class State {
+
+        private final List<Element> elements;
+        private final ClassProvider classProvider;
+        private final InheritanceProvider inheritanceProvider;
+        private final String fingerprint;
+
+        State(final List<Element> elements) {
+            this.elements = new ArrayList<>(elements);
+            final List<ClassProvider> providers = new ArrayList<>(elements.size());
+            final List<InheritanceProvider> indexes = new ArrayList<>(elements.size());
+            final MessageDigest digest = DigestHelper.sha256();
+            for (final Element element : elements) {
+                providers.add(element.jar);
+                if (element.index != null) indexes.add(element.index);
+                digest.update(element.fingerprint().getBytes(StandardCharsets.UTF_8));
+            }
+            this.fingerprint = DigestHelper.toHex(digest.digest());
+
+            // Inheritance queries are answered from the indexes of the jars,
+            // should they have them, rather than by reading their classes
+            this.classProvider = new CompositeClassProvider(providers);
+            this.inheritanceProvider = new ConcurrentCachingInheritanceProvider(indexes.size() == elements.size() ?
+                    new CompositeInheritanceProvider(indexes) :
+                    new ClassProviderInheritanceProvider(this.classProvider)
+            );
+        }
+
+    }
+
+    /**
+     * The jars of the session as a run started with, which are kept open until
+     * the lease is closed.
+     */
+    final class Lease implements Closeable {
+
+        private final State state;
+        private boolean closed;
+
+        Lease(final State state) {
+            this.state = state;
+            for (final Element element : state.elements) {
+                element.retain();
+            }
+        }
+
+        /**
+         * Gets the {@link InheritanceProvider inheritance provider} for the
+         * leased jars.
+         *
+         * @return The inheritance provider
+         */
+        InheritanceProvider inheritanceProvider() {
+            return this.state.inheritanceProvider;
+        }
+
+        /**
+         * Gets the fingerprint of the leased jars.
+         *
+         * @return The fingerprint
+         * @see ClasspathSession#fingerprint()
+         */
+        String fingerprint() {
+            return this.state.fingerprint;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (ClasspathSession.this) {
+                if (this.closed) return;
+                this.closed = true;
+                _close(this.state.elements);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,693 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.atlas.util.DigestHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A compact table of the entries within a zip archive, parsed once from the
+ * archive's central directory.
+ * <p>
+ * The archive is held as a (typically memory-mapped) {@link ByteBuffer}, and
+ * entry data is inflated straight from it - there is no file system
+ * provider between Atlas and the bytes.
+ * <p>
+ * Alternatively, only the central directory is copied onto the heap, and
+ * entry data is read through a {@link FileChannel} as it is needed - see
+ * {@link #openUnmapped(Path)}.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class CentralDirectory implements Closeable {
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOC_SIG = 0x07064b50;
+
+    private static final int LOC_HEADER = 30;
+    private static final int CEN_HEADER = 46;
+    private static final int END_HEADER = 22;
+    private static final int ZIP64_END_HEADER = 56;
+    private static final int ZIP64_LOC_HEADER = 20;
+
+    private static final int EXTID_ZIP64 = 0x0001;
+    private static final int EXTID_EXTT = 0x5455;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    // The furthest the end records can be from the end of the archive
+    private static final int MAX_TAIL = END_HEADER + 0xFFFF + ZIP64_LOC_HEADER + ZIP64_END_HEADER;
+
+    // The archive, or - when read through a channel - the end of it, from
+    // the start of the central directory
+    private final ByteBuffer archive;
+    private final long length;
+    private final Path path;
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+    private final int cenStart;
+    private final int cenEnd;
+    private final String[] names;
+    private final JarPath[] paths;
+    private final short[] methods;
+    private final int[] dosTimes;
+    private final long[] times;
+    private final int[] crcs;
+    private final long[] compressedSizes;
+    private final long[] sizes;
+    private final long[] offsets;
+    private final int[] slots;
+    private final BitSet shadowed = new BitSet();
+    private volatile int[] sorted;
+    private volatile String fingerprint;
+
+    private CentralDirectory(final ByteBuffer archive, final long length, final Path path, final FileChannel channel,
+                             final int cenStart, final int cenEnd, final int count) {
+        this.archive = archive;
+        this.length = length;
+        this.path = path;
+        this.channel = channel;
+        this.cenStart = cenStart;
+        this.cenEnd = cenEnd;
+        this.names = new String[count];
+        this.paths = new JarPath[count];
+        this.methods = new short[count];
+        this.dosTimes = new int[count];
+        this.times = new long[count];
+        this.crcs = new int[count];
+        this.compressedSizes = new long[count];
+        this.sizes = new long[count];
+        this.offsets = new long[count];
+        // An open-addressed table of entry indices (offset by one, so zero
+        // marks an empty slot), kept at most half full
+        this.slots = new int[Integer.highestOneBit(Math.max(count, 1)) << 2];
+    }
+
+    /**
+     * Memory-maps the zip archive at the given path, and reads its
+     * central directory.
+     * <p>
+     * A single mapping can't exceed 2GB, so larger archives are instead
+     * {@link #openUnmapped(Path) read through their channel}.
+     *
+     * @param path The path of the archive
+     * @return The central directory
+     * @throws IOException Should an issue occur mapping or reading the archive
+     */
+    static CentralDirectory open(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+        }
+        return openUnmapped(path);
+    }
+
+    /**
+     * Opens the zip archive at the given path without mapping it, and reads
+     * its central directory - which alone is copied onto the heap.
+     * <p>
+     * The archive is held open, and entry data read through the channel as it
+     * is needed, until the directory is {@link #close() closed}. Unlike a
+     * mapping, which is only released once collected, this neither locks the
+     * file on Windows nor crashes the JVM should the file be overwritten in
+     * place - it is better suited to archives held open for long.
+     *
+     * @param path The path of the archive
+     * @return The central directory
+     * @throws IOException Should an issue occur opening or reading the archive
+     */
+    static CentralDirectory openUnmapped(final Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final long length = channel.size();
+
+            // Read the end records, and then - should it not already have
+            // been - the rest of the central directory
+            long position = Math.max(0, length - MAX_TAIL);
+            ByteBuffer archive = _readFully(channel, position, length);
+            final long[] end = _end(archive);
+            final long cenStart = end[0] - end[1];
+            if (cenStart < 0) {
+                position += cenStart;
+                if (position < 0 || length - position > Integer.MAX_VALUE) {
+                    throw new ZipException("invalid END header");
+                }
+                archive = _readFully(channel, position, length);
+            }
+
+            return _read(archive, position, length, path, channel);
+        }
+        catch (final IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the central directory of the zip archive held in the given buffer.
+     *
+     * @param buffer The archive
+     * @return The central directory
+     * @throws ZipException Should the archive be malformed
+     */
+    static CentralDirectory read(final ByteBuffer buffer) throws ZipException {
+        final ByteBuffer archive = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        return _read(archive, 0, archive.limit(), null, null);
+    }
+
+    /**
+     * Finds the end records of the archive, within the given buffer.
+     *
+     * @return The position of the end record within the buffer, the size of
+     *         the central directory, its recorded offset, and the number of
+     *         entries
+     */
+    private static long[] _end(final ByteBuffer archive) throws ZipException {
+        // Find the end of central directory record, searching back past any comment
+        int end = -1;
+        for (int i = archive.limit() - END_HEADER; i >= Math.max(0, archive.limit() - END_HEADER - 0xFFFF); i--) {
+            if (archive.getInt(i) == END_SIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) throw new ZipException("zip END header not found");
+
+        long count = archive.getShort(end + 10) & 0xFFFF;
+        long cenSize = archive.getInt(end + 12) & ZIP64_MAGIC;
+        long cenOffset = archive.getInt(end + 16) & ZIP64_MAGIC;
+        long endPos = end;
+
+        // Defer to the zip64 end record, should there be one
+        final int locator = end - ZIP64_LOC_HEADER;
+        if (locator >= 0 && archive.getInt(locator) == ZIP64_LOC_SIG) {
+            long zip64End = archive.getLong(locator + 8);
+
+            // The recorded offset doesn't account for anything prepended to
+            // the archive (or, when read through a channel, for only the end
+            // of the archive being held), so also try directly before the
+            // locator
+            if (zip64End < 0 || zip64End >= locator || archive.getInt((int) zip64End) != ZIP64_END_SIG) {
+                zip64End = locator - ZIP64_END_HEADER;
+            }
+            if (zip64End >= 0 && archive.getInt((int) zip64End) == ZIP64_END_SIG) {
+                count = archive.getLong((int) zip64End + 32);
+                cenSize = archive.getLong((int) zip64End + 40);
+                cenOffset = archive.getLong((int) zip64End + 48);
+                endPos = zip64End;
+            }
+        }
+
+        return new long[] { endPos, cenSize, cenOffset, count };
+    }
+
+    private static CentralDirectory _read(final ByteBuffer archive, final long position, final long length,
+                                          final Path path, final FileChannel channel) throws ZipException {
+        final long[] end = _end(archive);
+        final long endPos = end[0];
+        final long cenSize = end[1];
+        final long cenOffset = end[2];
+        final long count = end[3];
+
+        // Anything prepended to the archive (such as a launcher script) shifts
+        // every offset within it
+        final long base = position + endPos - cenSize - cenOffset;
+        if (base < 0 || endPos - cenSize < 0 || count > Integer.MAX_VALUE) throw new ZipException("invalid END header");
+
+        final CentralDirectory directory = new CentralDirectory(archive, length, path, channel,
+                (int) (endPos - cenSize), (int) endPos, (int) count);
+        int pos = directory.cenStart;
+        for (int i = 0; i < count; i++) {
+            if (pos + CEN_HEADER > endPos || archive.getInt(pos) != CEN_SIG) {
+                throw new ZipException("invalid CEN header (bad signature)");
+            }
+
+            final int nameLength = archive.getShort(pos + 28) & 0xFFFF;
+            final int extraLength = archive.getShort(pos + 30) & 0xFFFF;
+            final int commentLength = archive.getShort(pos + 32) & 0xFFFF;
+
+            final byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = archive.get(pos + CEN_HEADER + j);
+            }
+
+            // Names are interned, as the same names recur across the jars
+            // of a classpath, and between runs over the same jar
+            directory.names[i] = new String(name, StandardCharsets.UTF_8).intern();
+            directory.methods[i] = archive.getShort(pos + 10);
+            directory.dosTimes[i] = archive.getInt(pos + 12);
+            directory.crcs[i] = archive.getInt(pos + 16);
+            directory.compressedSizes[i] = archive.getInt(pos + 20) & ZIP64_MAGIC;
+            directory.sizes[i] = archive.getInt(pos + 24) & ZIP64_MAGIC;
+            directory.offsets[i] = archive.getInt(pos + 42) & ZIP64_MAGIC;
+            directory.times[i] = -1;
+            directory.readExtra(i, pos + CEN_HEADER + nameLength, extraLength);
+            directory.offsets[i] += base;
+
+            // The first entry of a given name wins, as with ZipFile, and
+            // those it shadows share its path
+            final String entryName = directory.names[i];
+            final int slot = directory.slot(entryName.hashCode(), entryName);
+            if (directory.slots[slot] != 0) {
+                directory.paths[i] = directory.paths[directory.slots[slot] - 1];
+                directory.shadowed.set(i);
+            }
+            else {
+                directory.paths[i] = new JarPath(entryName, JarEntryType.of(entryName));
+                directory.slots[slot] = i + 1;
+            }
+
+            pos += CEN_HEADER + nameLength + extraLength + commentLength;
+        }
+
+        return directory;
+    }
+
+    private void readExtra(final int entry, final int start, final int length) {
+        int pos = start;
+        while (pos + 4 <= start + length) {
+            final int id = this.archive.getShort(pos) & 0xFFFF;
+            final int size = this.archive.getShort(pos + 2) & 0xFFFF;
+            int data = pos + 4;
+            if (data + size > start + length) return;
+
+            if (id == EXTID_ZIP64) {
+                // Only the values that overflowed are present, in this order
+                if (this.sizes[entry] == ZIP64_MAGIC && data + 8 <= pos + 4 + size) {
+                    this.sizes[entry] = this.archive.getLong(data);
+                    data += 8;
+                }
+                if (this.compressedSizes[entry] == ZIP64_MAGIC && data + 8 <= pos + 4 + size) {
+                    this.compressedSizes[entry] = this.archive.getLong(data);
+                    data += 8;
+                }
+                if (this.offsets[entry] == ZIP64_MAGIC && data + 8 <= pos + 4 + size) {
+                    this.offsets[entry] = this.archive.getLong(data);
+                }
+            }
+            else if (id == EXTID_EXTT && size >= 5 && (this.archive.get(data) & 0x1) != 0) {
+                this.times[entry] = TimeUnit.SECONDS.toMillis(this.archive.getInt(data + 1) & ZIP64_MAGIC);
+            }
+
+            pos += 4 + size;
+        }
+    }
+
+    /**
+     * Gets a fingerprint of the archive's contents, taken from its central
+     * directory - which records the name, size, and CRC-32 of every entry.
+     * <p>
+     * This is far cheaper than hashing the whole archive, while still
+     * changing whenever the contents of any entry do.
+     *
+     * @return The fingerprint
+     */
+    String fingerprint() {
+        String fingerprint = this.fingerprint;
+        if (fingerprint == null) {
+            final MessageDigest digest = DigestHelper.sha256();
+            final ByteBuffer cen = this.archive.duplicate();
+            cen.limit(this.cenEnd);
+            cen.position(this.cenStart);
+            digest.update(cen);
+            this.fingerprint = fingerprint = DigestHelper.toHex(digest.digest());
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Gets the number of entries within the archive.
+     *
+     * @return The number of entries
+     */
+    int size() {
+        return this.names.length;
+    }
+
+    /**
+     * Gets the index of the entry of the given name.
+     *
+     * @param name The name of the entry
+     * @return The entry's index, or {@code -1} if no such entry exists
+     */
+    int indexOf(final String name) {
+        return this.indexOf(name, name.hashCode());
+    }
+
+    /**
+     * Gets the index of the entry at the given path.
+     * <p>
+     * The path's hash is already known, and the paths walked from the
+     * archive are those held by its table - so are found by identity.
+     *
+     * @param path The path of the entry
+     * @return The entry's index, or {@code -1} if no such entry exists
+     */
+    int indexOf(final JarPath path) {
+        return this.indexOf(path.getName(), path.hashCode());
+    }
+
+    private int indexOf(final String name, final int hash) {
+        return this.slots[this.slot(hash, name)] - 1;
+    }
+
+    private int slot(final int hash, final String name) {
+        // Probe linearly from the spread hash, until either the entry of
+        // the given name or an empty slot is found
+        final int mask = this.slots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            final int entry = this.slots[slot] - 1;
+            if (entry == -1) return slot;
+            if (this.paths[entry].hashCode() == hash
+                    && (this.names[entry] == name || this.names[entry].equals(name))) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Gets the indices of the entries whose names begin with the given prefix,
+     * in the order they appear within the archive.
+     * <p>
+     * The entries are found by a binary search over their sorted names, which
+     * are only sorted the first time a non-empty prefix is given.
+     *
+     * @param prefix The prefix of the entry names
+     * @return The indices of the entries
+     */
+    int[] entriesWithPrefix(final String prefix) {
+        if (prefix.isEmpty()) return IntStream.range(0, this.names.length).toArray();
+
+        final int[] sorted = this.sorted();
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (this.names[sorted[mid]].compareTo(prefix) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+
+        int end = low;
+        while (end < sorted.length && this.names[sorted[end]].startsWith(prefix)) {
+            end++;
+        }
+
+        final int[] entries = Arrays.copyOfRange(sorted, low, end);
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    private int[] sorted() {
+        int[] sorted = this.sorted;
+        if (sorted == null) {
+            // Racing threads will each sort, but arrive at the same order
+            this.sorted = sorted = IntStream.range(0, this.names.length).boxed()
+                    .sorted(Comparator.comparing(i -> this.names[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        return sorted;
+    }
+
+    /**
+     * Gets whether the given entry is hidden by an earlier entry of the same
+     * name, and so will never be read.
+     *
+     * @param entry The index of the entry
+     * @return {@code true} if the entry is shadowed
+     */
+    boolean isShadowed(final int entry) {
+        return this.shadowed.get(entry);
+    }
+
+    String getName(final int entry) {
+        return this.names[entry];
+    }
+
+    /**
+     * Gets the path of the given entry, held by the archive's table - so its
+     * name is interned, and its hash and type already computed.
+     *
+     * @param entry The index of the entry
+     * @return The path
+     */
+    JarPath getPath(final int entry) {
+        return this.paths[entry];
+    }
+
+    boolean isDirectory(final int entry) {
+        return this.names[entry].endsWith("/");
+    }
+
+    /**
+     * Gets the last modified time of the given entry, preferring the extended
+     * timestamp should one be present.
+     *
+     * @param entry The index of the entry
+     * @return The last modified time, in milliseconds since the epoch
+     */
+    long getTime(final int entry) {
+        if (this.times[entry] != -1) return this.times[entry];
+        return DosTime.toJava(this.dosTimes[entry]);
+    }
+
+    long getSize(final int entry) {
+        return this.sizes[entry];
+    }
+
+    long getCompressedSize(final int entry) {
+        return this.compressedSizes[entry];
+    }
+
+    int getMethod(final int entry) {
+        return this.methods[entry] & 0xFFFF;
+    }
+
+    int getCrc(final int entry) {
+        return this.crcs[entry];
+    }
+
+    /**
+     * Gets the given entry, as it is stored within the archive.
+     *
+     * @param entry The index of the entry
+     * @return The encoded entry
+     * @throws IOException Should the entry's local header be malformed, or
+     *                     an issue occur reading it
+     */
+    EncodedEntry getEncoded(final int entry) throws IOException {
+        return new EncodedEntry(this.names[entry], this.getTime(entry), this.getMethod(entry), this.crcs[entry],
+                this.sizes[entry], this.getData(entry));
+    }
+
+    /**
+     * Reads the uncompressed contents of the given entry.
+     *
+     * @param entry The index of the entry
+     * @return The contents of the entry
+     * @throws IOException Should the entry be malformed, or of an unsupported
+     *                     compression method
+     */
+    byte[] read(final int entry) throws IOException {
+        return inflate(this.names[entry], this.getMethod(entry), this.sizes[entry], this.getData(entry));
+    }
+
+    /**
+     * Reads the uncompressed contents of an entry, from its raw data.
+     *
+     * @param name The name of the entry
+     * @param method The compression method of the entry
+     * @param size The uncompressed size of the entry
+     * @param data The raw data of the entry
+     * @return The contents of the entry
+     * @throws IOException Should the entry be malformed, or of an unsupported
+     *                     compression method
+     */
+    static byte[] inflate(final String name, final int method, final long size, final ByteBuffer data)
+            throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("entry too large: " + name);
+        }
+
+        final byte[] contents = new byte[(int) size];
+        switch (method) {
+            case ZipEntry.STORED:
+                if (data.remaining() != contents.length) throw new ZipException("invalid STORED entry: " + name);
+                data.get(contents);
+                return contents;
+            case ZipEntry.DEFLATED:
+                // The thread's inflater is reused, rather than one made (and
+                // ended) for every entry
+                final ThreadBuffers buffers = ThreadBuffers.get();
+                try {
+                    _inflate(buffers.inflater(), buffers.chunk(), data, contents);
+                }
+                catch (final DataFormatException ex) {
+                    throw new ZipException("invalid DEFLATED entry: " + name + " (" + ex.getMessage() + ")");
+                }
+                return contents;
+            default:
+                throw new ZipException("unsupported compression method " + method + ": " + name);
+        }
+    }
+
+    /**
+     * Gets a view of the raw (possibly compressed) data of the given entry.
+     *
+     * @param entry The index of the entry
+     * @return The entry's data
+     * @throws IOException Should the entry's local header be malformed, or
+     *                     an issue occur reading it
+     */
+    ByteBuffer getData(final int entry) throws IOException {
+        if (this.channel != null) return this.readData(entry);
+
+        final long offset = this.offsets[entry];
+        if (offset < 0 || offset + LOC_HEADER > this.archive.limit() || this.archive.getInt((int) offset) != LOC_SIG) {
+            throw new ZipException("invalid LOC header (bad signature): " + this.names[entry]);
+        }
+
+        final long start = offset + LOC_HEADER
+                + (this.archive.getShort((int) offset + 26) & 0xFFFF)
+                + (this.archive.getShort((int) offset + 28) & 0xFFFF);
+        final long end = start + this.compressedSizes[entry];
+        if (end > this.archive.limit()) throw new ZipException("invalid entry size: " + this.names[entry]);
+
+        final ByteBuffer data = this.archive.duplicate();
+        data.limit((int) end);
+        data.position((int) start);
+        return data;
+    }
+
+    private ByteBuffer readData(final int entry) throws IOException {
+        final long offset = this.offsets[entry];
+        final ByteBuffer header = ByteBuffer.allocate(LOC_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        if (offset < 0 || offset + LOC_HEADER > this.length || this.readFully(header, offset).getInt(0) != LOC_SIG) {
+            throw new ZipException("invalid LOC header (bad signature): " + this.names[entry]);
+        }
+
+        final long start = offset + LOC_HEADER + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        final long size = this.compressedSizes[entry];
+        if (start + size > this.length || size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("invalid entry size: " + this.names[entry]);
+        }
+
+        final ByteBuffer data = this.readFully(ByteBuffer.allocate((int) size), start);
+        data.flip();
+        return data;
+    }
+
+    private ByteBuffer readFully(final ByteBuffer buffer, final long position) throws IOException {
+        while (true) {
+            final FileChannel channel = this.channel;
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new ZipException("unexpected end of archive");
+                    }
+                }
+                return buffer;
+            }
+            catch (final ClosedByInterruptException ex) {
+                // An interrupted read closes the channel, which is reopened
+                // for the other threads reading from it
+                this.reopen(channel);
+                throw ex;
+            }
+            catch (final ClosedChannelException ex) {
+                if (this.closed) throw ex;
+                this.reopen(channel);
+            }
+        }
+    }
+
+    private synchronized void reopen(final FileChannel channel) throws IOException {
+        if (!this.closed && this.channel == channel) {
+            this.channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        }
+    }
+
+    private static ByteBuffer _readFully(final FileChannel channel, final long start, final long end)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) (end - start)).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) throw new ZipException("unexpected end of archive");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Closes the archive, should it be read through a channel. A mapped
+     * archive is only unmapped once the directory is unreachable, there is no
+     * way to unmap it any sooner on Java 8.
+     *
+     * @throws IOException Should an issue occur closing the channel
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.closed = true;
+        if (this.channel != null) this.channel.close();
+    }
+
+    private static void _inflate(final Inflater inflater, final byte[] chunk, final ByteBuffer data,
+                                 final byte[] contents) throws ZipException, DataFormatException {
+        // Inflater can't take a ByteBuffer on Java 8, so data off the heap is
+        // fed through a chunk of heap instead
+        if (data.hasArray()) {
+            inflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+        }
+
+        int offset = 0;
+        while (offset < contents.length) {
+            if (inflater.needsInput()) {
+                final int length = Math.min(chunk.length, data.remaining());
+                if (length == 0) throw new ZipException("unexpected end of entry data");
+                data.get(chunk, 0, length);
+                inflater.setInput(chunk, 0, length);
+            }
+
+            final int inflated = inflater.inflate(contents, offset, contents.length - offset);
+            if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                throw new ZipException("unexpected end of entry data");
+            }
+            offset += inflated;
+        }
+    }
+
+}
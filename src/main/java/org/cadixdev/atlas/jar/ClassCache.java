@@ -0,0 +1,252 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The cache of class entries read from a {@link JarFile jar}, implementing a
+ * {@link ClassCachePolicy}.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+abstract class ClassCache {
+
+    static ClassCache of(final ClassCachePolicy policy) {
+        if (policy.getEviction() == ClassCachePolicy.Eviction.NONE && !policy.isOffHeap() && policy.getBudget() == null) {
+            return new Unbounded();
+        }
+        return new Bounded(policy);
+    }
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    /**
+     * Gets the cached class at the given path, loading (and caching) it should
+     * it not be present.
+     *
+     * @param path The path of the class
+     * @param loader The function to read the class, returning {@code null}
+     *               should it not exist
+     * @return The class entry, or {@code null} if not present
+     */
+    abstract JarClassEntry get(final JarPath path, final Function<JarPath, JarClassEntry> loader);
+
+    abstract ClassCacheStats stats();
+
+    abstract void clear();
+
+    /**
+     * A cache that holds every class on the heap, and never evicts.
+     */
+    private static final class Unbounded extends ClassCache {
+
+        private final Map<JarPath, JarClassEntry> cache = new ConcurrentHashMap<>();
+        private final AtomicLong bytes = new AtomicLong();
+
+        @Override
+        JarClassEntry get(final JarPath path, final Function<JarPath, JarClassEntry> loader) {
+            final JarClassEntry cached = this.cache.get(path);
+            if (cached != null) {
+                this.hits.increment();
+                return cached;
+            }
+
+            return this.cache.computeIfAbsent(path, p -> {
+                this.misses.increment();
+                final JarClassEntry entry = loader.apply(p);
+                if (entry != null) this.bytes.addAndGet(entry.getContents().length);
+                return entry;
+            });
+        }
+
+        @Override
+        ClassCacheStats stats() {
+            return new ClassCacheStats(this.hits.sum(), this.misses.sum(), 0, this.cache.size(), this.bytes.get());
+        }
+
+        @Override
+        void clear() {
+            this.cache.clear();
+            this.bytes.set(0);
+        }
+
+    }
+
+    /**
+     * A cache bounded to a budget of bytes, evicting classes by either recency
+     * or frequency of use - or age, should it only be bounded by a
+     * {@link MemoryBudget memory budget}.
+     */
+    private static final class Bounded extends ClassCache {
+
+        private final ClassCachePolicy policy;
+        private final MemoryBudget budget;
+        private final boolean frequency;
+
+        // Ordered by access, for least recently used - or by insertion, alongside
+        // buckets of equally used classes for least frequently used
+        private final LinkedHashMap<JarPath, Slot> slots;
+        private final TreeMap<Long, LinkedHashSet<JarPath>> frequencies = new TreeMap<>();
+
+        private long bytes;
+        private long evictions;
+
+        Bounded(final ClassCachePolicy policy) {
+            this.policy = policy;
+            this.budget = policy.getBudget();
+            this.frequency = policy.getEviction() == ClassCachePolicy.Eviction.LEAST_FREQUENTLY_USED;
+            this.slots = new LinkedHashMap<>(16, 0.75f, policy.getEviction() == ClassCachePolicy.Eviction.LEAST_RECENTLY_USED);
+        }
+
+        @Override
+        JarClassEntry get(final JarPath path, final Function<JarPath, JarClassEntry> loader) {
+            synchronized (this) {
+                final Slot slot = this.slots.get(path);
+                if (slot != null) {
+                    this.hits.increment();
+                    if (this.frequency) this.touch(path, slot);
+                    return slot.get();
+                }
+            }
+
+            // Read the class outside of the lock, two threads may occasionally
+            // read the same class - but only one will be cached
+            this.misses.increment();
+            final JarClassEntry entry = loader.apply(path);
+            if (entry == null) return null;
+
+            final int weight = entry.getContents().length;
+            if (weight > this.policy.getMaxBytes()) return entry;
+
+            final Slot slot = new Slot(entry, this.policy.isOffHeap());
+            synchronized (this) {
+                if (this.slots.containsKey(path)) return entry;
+
+                // Make room within the memory budget, should there be one, by
+                // evicting classes - or otherwise don't cache the class. No more
+                // than the class' own weight is evicted, as the budget may be
+                // overdrawn by others, which this cache can't make up for
+                if (this.budget != null) {
+                    long evicted = 0;
+                    while (!this.budget.tryReserve(weight)) {
+                        if (this.slots.isEmpty() || evicted >= weight) return entry;
+                        evicted += this.evict();
+                    }
+                }
+
+                // Room is made before the class is cached, else the class
+                // would be the least frequently used - and its own victim
+                while (this.bytes + weight > this.policy.getMaxBytes()) {
+                    this.evict();
+                }
+
+                this.slots.put(path, slot);
+                this.bytes += weight;
+                if (this.frequency) this.frequencies.computeIfAbsent(slot.uses, k -> new LinkedHashSet<>()).add(path);
+            }
+            return entry;
+        }
+
+        private void touch(final JarPath path, final Slot slot) {
+            final LinkedHashSet<JarPath> bucket = this.frequencies.get(slot.uses);
+            bucket.remove(path);
+            if (bucket.isEmpty()) this.frequencies.remove(slot.uses);
+
+            slot.uses++;
+            this.frequencies.computeIfAbsent(slot.uses, k -> new LinkedHashSet<>()).add(path);
+        }
+
+        private int evict() {
+            final JarPath victim;
+            if (this.frequency) {
+                final Map.Entry<Long, LinkedHashSet<JarPath>> bucket = this.frequencies.firstEntry();
+                final Iterator<JarPath> iterator = bucket.getValue().iterator();
+                victim = iterator.next();
+                iterator.remove();
+                if (bucket.getValue().isEmpty()) this.frequencies.remove(bucket.getKey());
+            }
+            else {
+                victim = this.slots.keySet().iterator().next();
+            }
+
+            final int weight = this.slots.remove(victim).weight;
+            this.bytes -= weight;
+            this.evictions++;
+            if (this.budget != null) this.budget.release(weight);
+            return weight;
+        }
+
+        @Override
+        synchronized ClassCacheStats stats() {
+            return new ClassCacheStats(this.hits.sum(), this.misses.sum(), this.evictions, this.slots.size(), this.bytes);
+        }
+
+        @Override
+        synchronized void clear() {
+            if (this.budget != null) this.budget.release(this.bytes);
+            this.slots.clear();
+            this.frequencies.clear();
+            this.bytes = 0;
+        }
+
+    }
+
+    /**
+     * A cached class, held either on the heap as its entry - or off of it, as
+     * its raw bytes.
+     */
+    private static final class Slot {
+
+        private final JarClassEntry entry;
+        private final String name;
+        private final long time;
+        private final ByteBuffer raw;
+        private final int weight;
+        private long uses = 1;
+
+        Slot(final JarClassEntry entry, final boolean offHeap) {
+            final byte[] contents = entry.getContents();
+            this.weight = contents.length;
+            this.name = entry.getName();
+            this.time = entry.getTime();
+
+            if (offHeap) {
+                this.entry = null;
+                this.raw = ByteBuffer.allocateDirect(contents.length);
+                this.raw.put(contents);
+            }
+            else {
+                this.entry = entry;
+                this.raw = null;
+            }
+        }
+
+        JarClassEntry get() {
+            if (this.entry != null) return this.entry;
+
+            final byte[] contents = new byte[this.weight];
+            ((ByteBuffer) this.raw.duplicate().clear()).get(contents);
+            return new JarClassEntry(this.name, this.time, contents);
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+/**
+ * The policy for caching the classes of a {@link JarFile jar}.
+ * <p>
+ * By default, jars cache every class read from them for as long as they're
+ * open - a policy can instead bound the cache to a budget of bytes, evicting
+ * classes to stay within it, and optionally hold them off the heap.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class ClassCachePolicy {
+
+    private static final ClassCachePolicy UNBOUNDED = new ClassCachePolicy(Eviction.NONE, Long.MAX_VALUE, false, null);
+
+    /**
+     * Gets the policy that caches every class, for as long as the jar is open.
+     *
+     * @return The policy
+     */
+    public static ClassCachePolicy unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * Creates a policy that caches up to the given number of bytes of classes,
+     * evicting those least recently used.
+     *
+     * @param maxBytes The maximum size of the cache, in bytes
+     * @return The policy
+     */
+    public static ClassCachePolicy leastRecentlyUsed(final long maxBytes) {
+        return new ClassCachePolicy(Eviction.LEAST_RECENTLY_USED, maxBytes, false, null);
+    }
+
+    /**
+     * Creates a policy that caches up to the given number of bytes of classes,
+     * evicting those least frequently used.
+     *
+     * @param maxBytes The maximum size of the cache, in bytes
+     * @return The policy
+     */
+    public static ClassCachePolicy leastFrequentlyUsed(final long maxBytes) {
+        return new ClassCachePolicy(Eviction.LEAST_FREQUENTLY_USED, maxBytes, false, null);
+    }
+
+    private final Eviction eviction;
+    private final long maxBytes;
+    private final boolean offHeap;
+    private final MemoryBudget budget;
+
+    private ClassCachePolicy(final Eviction eviction, final long maxBytes, final boolean offHeap,
+                             final MemoryBudget budget) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+        this.eviction = eviction;
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+        this.budget = budget;
+    }
+
+    /**
+     * Gets how classes are chosen for eviction.
+     *
+     * @return The eviction strategy
+     */
+    public Eviction getEviction() {
+        return this.eviction;
+    }
+
+    /**
+     * Gets the maximum size of the cache, in bytes.
+     *
+     * @return The maximum size
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Gets whether cached classes are held off the heap, in direct buffers.
+     *
+     * @return {@code true} if classes are held off-heap
+     */
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
+    /**
+     * Creates a copy of this policy, that holds cached classes off the heap in
+     * direct buffers - copying them back onto the heap as they're used.
+     *
+     * @return The off-heap policy
+     */
+    public ClassCachePolicy offHeap() {
+        return new ClassCachePolicy(this.eviction, this.maxBytes, true, this.budget);
+    }
+
+    /**
+     * Gets the memory budget that cached classes draw from.
+     *
+     * @return The memory budget, or {@code null} for none
+     */
+    public MemoryBudget getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Creates a copy of this policy, whose cached classes also draw from the
+     * given {@link MemoryBudget memory budget} - evicting classes to make room
+     * within it, or otherwise not caching them.
+     * <p>
+     * Classes are evicted as the policy dictates, or oldest first should the
+     * policy not otherwise evict. Evicted classes are simply read from the jar
+     * again, should they be needed.
+     *
+     * @param budget The memory budget
+     * @return The budgeted policy
+     */
+    public ClassCachePolicy withBudget(final MemoryBudget budget) {
+        return new ClassCachePolicy(this.eviction, this.maxBytes, this.offHeap, budget);
+    }
+
+    /**
+     * The strategies for choosing which classes to evict from a cache.
+     */
+    public enum Eviction {
+
+        /**
+         * Classes are never evicted.
+         */
+        NONE,
+
+        /**
+         * The least recently used classes are evicted first.
+         */
+        LEAST_RECENTLY_USED,
+
+        /**
+         * The least frequently used classes are evicted first.
+         */
+        LEAST_FREQUENTLY_USED,
+        ;
+
+    }
+
+}
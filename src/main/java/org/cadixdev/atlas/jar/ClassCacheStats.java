@@ -0,0 +1,83 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+/**
+ * A snapshot of the statistics of a {@link JarFile jar}'s class cache.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ * @see JarFile#getCacheStats()
+ */
+public final class ClassCacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+    private final long bytes;
+
+    ClassCacheStats(final long hits, final long misses, final long evictions, final long size, final long bytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Gets the number of lookups that were served from the cache.
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to read the class from the jar.
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Gets the number of classes evicted from the cache.
+     *
+     * @return The eviction count
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Gets the number of classes currently cached.
+     *
+     * @return The number of classes
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of bytes of classes currently cached.
+     *
+     * @return The size of the cache, in bytes
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassCacheStats{hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions
+                + ", size=" + this.size + ", bytes=" + this.bytes + "}";
+    }
+
+}
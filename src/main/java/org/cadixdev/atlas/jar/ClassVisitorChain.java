@@ -0,0 +1,111 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Runs consecutive {@link ClassVisitorTransformer class visitor transformers}
+ * over a class as a single chain of visitors, reading and writing the class
+ * just once.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class ClassVisitorChain {
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    private ClassVisitorChain() {
+    }
+
+    /**
+     * Gets the end of the run of class visitor transformers, starting from
+     * the given transformer.
+     *
+     * @param transformers The transformers
+     * @param start The index of the first transformer
+     * @return The index after the last class visitor transformer of the run
+     */
+    static int end(final JarEntryTransformer[] transformers, final int start) {
+        int end = start;
+        while (end < transformers.length && transformers[end] instanceof ClassVisitorTransformer) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Transforms the given class, with the given run of class visitor
+     * transformers.
+     *
+     * @param entry The class entry
+     * @param transformers The transformers
+     * @param start The index of the first transformer of the run
+     * @param end The index after the last transformer of the run
+     * @return The transformed class entry
+     */
+    static JarClassEntry transform(final JarClassEntry entry, final JarEntryTransformer[] transformers,
+                                   final int start, final int end) {
+        int readerFlags = 0;
+        int writerFlags = 0;
+        for (int i = start; i < end; i++) {
+            readerFlags |= ((ClassVisitorTransformer) transformers[i]).readerFlags();
+            writerFlags |= ((ClassVisitorTransformer) transformers[i]).writerFlags();
+        }
+
+        final ClassReader reader = new ClassReader(entry.getContents());
+        final ClassWriter writer = new ClassWriter(reader, writerFlags);
+        final NameRecorder recorder = new NameRecorder(writer);
+
+        // The first transformer sees the class first, so the chain is built
+        // from the writer backwards
+        ClassVisitor visitor = recorder;
+        for (int i = end - 1; i >= start; i--) {
+            visitor = ((ClassVisitorTransformer) transformers[i]).visitor(visitor);
+        }
+        reader.accept(visitor, readerFlags);
+
+        return new JarClassEntry(_rename(entry.getName(), reader.getClassName(), recorder.name), entry.getTime(),
+                writer.toByteArray());
+    }
+
+    private static String _rename(final String path, final String from, final String to) {
+        if (to == null || to.equals(from)) return path;
+
+        // Keep any prefix of the path, such as that of a multi-release jar
+        final String suffix = from + CLASS_EXTENSION;
+        final String prefix = path.endsWith(suffix) ? path.substring(0, path.length() - suffix.length()) : "";
+        return prefix + to + CLASS_EXTENSION;
+    }
+
+    /**
+     * Records the name the class is written with.
+     */
+    private static final class NameRecorder extends ClassVisitor {
+
+        private String name;
+
+        NameRecorder(final ClassVisitor parent) {
+            super(Opcodes.ASM7, parent);
+        }
+
+        @Override
+        public void visit(final int version, final int access, final String name, final String signature,
+                          final String superName, final String[] interfaces) {
+            this.name = name;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A {@link JarEntryTransformer jar entry transformer} that transforms classes
+ * with an ASM {@link ClassVisitor class visitor}.
+ * <p>
+ * When consecutive transformers of a transformation are class visitor
+ * transformers, their visitors are chained together - so each class is read
+ * and written once, rather than once for each transformer. See
+ * {@link TransformOptions#setFuseClassVisitors(boolean)}.
+ * <p>
+ * When chained, {@link #transform(JarClassEntry)} isn't called - so it
+ * shouldn't be overridden. Classes can be renamed by the visitor, but not
+ * removed.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public interface ClassVisitorTransformer extends JarEntryTransformer {
+
+    /**
+     * Creates the visitor for a class, which should delegate to the given
+     * visitor.
+     *
+     * @param parent The visitor to delegate to
+     * @return The visitor
+     */
+    ClassVisitor visitor(final ClassVisitor parent);
+
+    /**
+     * Gets the flags the class should be read with, as given to
+     * {@link ClassReader#accept(ClassVisitor, int)}.
+     * <p>
+     * When chained, the flags of each transformer are combined.
+     *
+     * @return The reader flags
+     */
+    default int readerFlags() {
+        return 0;
+    }
+
+    /**
+     * Gets the flags the class should be written with, as given to
+     * {@link ClassWriter#ClassWriter(ClassReader, int)}.
+     * <p>
+     * When chained, the flags of each transformer are combined.
+     *
+     * @return The writer flags
+     */
+    default int writerFlags() {
+        return 0;
+    }
+
+    @Override
+    default JarClassEntry transform(final JarClassEntry entry) {
+        return ClassVisitorChain.transform(entry, new JarEntryTransformer[]{ this }, 0, 1);
+    }
+
+}
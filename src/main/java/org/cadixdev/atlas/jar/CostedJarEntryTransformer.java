@@ -0,0 +1,39 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+/**
+ * A {@link JarEntryTransformer transformer} that estimates how costly each
+ * entry is for it to transform, so the costliest entries can be
+ * {@link TransformOptions#setLargestFirst(boolean) scheduled first}.
+ * <p>
+ * Plain {@link JarEntryTransformer}s are assumed to cost the uncompressed
+ * size of each entry. Entries that a {@link ScopedJarEntryTransformer}
+ * doesn't apply to cost it nothing.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public interface CostedJarEntryTransformer extends JarEntryTransformer {
+
+    /**
+     * Estimates the cost of transforming the entry at the given path.
+     * <p>
+     * Costs are only compared with one another, so needn't be precise - a
+     * transformer that only reads the constant pool of a class might return
+     * a fraction of its size, and one that ignores resources zero for them.
+     *
+     * @param path The path of the entry
+     * @param size The uncompressed size of the entry, in bytes
+     * @return The estimated cost, in the same units as the size
+     * @see JarPath#getType()
+     */
+    long cost(final JarPath path, final long size);
+
+}
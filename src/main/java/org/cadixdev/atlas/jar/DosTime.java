@@ -0,0 +1,105 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.GregorianCalendar;
+
+/**
+ * Conversions between Java times and the MS-DOS dates and times found in zip
+ * headers, in the system's time zone.
+ * <p>
+ * The entries of a jar almost always share a handful of times, so the last
+ * conversion each way is kept - and otherwise converted with {@code java.time},
+ * rather than a {@link GregorianCalendar} for every entry.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class DosTime {
+
+    private static final int DOS_1980 = (1 << 21) | (1 << 16);
+
+    private static volatile Conversion lastToDos = new Conversion(Long.MIN_VALUE, DOS_1980);
+    private static volatile Conversion lastToJava = new Conversion(Long.MIN_VALUE, 0);
+
+    /**
+     * Converts the given Java time to an MS-DOS date and time. Times before
+     * 1980, which MS-DOS can't represent, are clamped to it.
+     *
+     * @param time The time, in milliseconds since the epoch
+     * @return The MS-DOS date and time
+     */
+    static int fromJava(final long time) {
+        final Conversion last = lastToDos;
+        if (last.time == time) return last.dos;
+
+        final LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        final int dos = date.getYear() < 1980 ? DOS_1980 :
+                (date.getYear() - 1980) << 25
+                        | date.getMonthValue() << 21
+                        | date.getDayOfMonth() << 16
+                        | date.getHour() << 11
+                        | date.getMinute() << 5
+                        | date.getSecond() >> 1;
+        lastToDos = new Conversion(time, dos);
+        return dos;
+    }
+
+    /**
+     * Converts the given MS-DOS date and time to a Java time.
+     *
+     * @param dos The MS-DOS date and time
+     * @return The time, in milliseconds since the epoch
+     */
+    static long toJava(final int dos) {
+        final Conversion last = lastToJava;
+        if (last.time != Long.MIN_VALUE && last.dos == dos) return last.time;
+
+        final int year = ((dos >> 25) & 0x7F) + 1980;
+        final int month = (dos >> 21) & 0x0F;
+        final int day = (dos >> 16) & 0x1F;
+        final int hour = (dos >> 11) & 0x1F;
+        final int minute = (dos >> 5) & 0x3F;
+        final int second = (dos << 1) & 0x3E;
+        long time;
+        try {
+            // An hour repeated as the clocks go back is taken to be the latter,
+            // as the calendar did
+            time = LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZoneId.systemDefault())
+                    .withLaterOffsetAtOverlap().toInstant().toEpochMilli();
+        }
+        catch (final DateTimeException ex) {
+            // Out of range fields are rolled over, as the calendar always has
+            time = new GregorianCalendar(year, month - 1, day, hour, minute, second).getTimeInMillis();
+        }
+        lastToJava = new Conversion(time, dos);
+        return time;
+    }
+
+    private DosTime() {
+    }
+
+    /**
+     * A conversion between a Java time and an MS-DOS date and time.
+     */
+    private static final class Conversion {
+
+        private final long time;
+        private final int dos;
+
+        Conversion(final long time, final int dos) {
+            this.time = time;
+            this.dos = dos;
+        }
+
+    }
+
+}
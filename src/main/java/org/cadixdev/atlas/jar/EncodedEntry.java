@@ -0,0 +1,114 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarManifestEntry;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.cadixdev.bombe.jar.JarServiceProviderConfigurationEntry;
+import org.cadixdev.bombe.jar.ServiceProviderConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.jar.Manifest;
+
+/**
+ * An entry as it is stored within a zip archive - ready to be written by a
+ * {@link JarWriter}.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class EncodedEntry {
+
+    final String name;
+    final long time;
+    final int method;
+    final int crc;
+    final long size;
+    final ByteBuffer data;
+
+    /**
+     * Creates an encoded entry.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @param method The compression method of the data
+     * @param crc The CRC-32 of the uncompressed data
+     * @param size The size of the uncompressed data
+     * @param data The (possibly compressed) data
+     */
+    EncodedEntry(final String name, final long time, final int method, final int crc, final long size,
+                 final ByteBuffer data) {
+        this.name = name;
+        this.time = time;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.data = data;
+    }
+
+    /**
+     * Gets a view of the entry's data, that can be consumed independently of
+     * any other.
+     *
+     * @return The data
+     */
+    ByteBuffer data() {
+        return this.data.duplicate();
+    }
+
+    /**
+     * Decompresses the entry, into a jar entry of its {@link JarEntryType type}.
+     *
+     * @return The jar entry
+     * @throws IOException Should the entry be malformed
+     */
+    AbstractJarEntry decode() throws IOException {
+        return entry(this.name, this.time, CentralDirectory.inflate(this.name, this.method, this.size, this.data()));
+    }
+
+    /**
+     * Creates a jar entry, of the {@link JarEntryType type} given by its name.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @param contents The uncompressed contents of the entry
+     * @return The jar entry
+     * @throws IOException Should the manifest, or service provider
+     *                     configuration, be malformed
+     */
+    static AbstractJarEntry entry(final String name, final long time, final byte[] contents) throws IOException {
+        switch (JarEntryType.of(name)) {
+            case MANIFEST:
+                try (final InputStream is = new ByteArrayInputStream(contents)) {
+                    return new JarManifestEntry(time, new Manifest(is));
+                }
+            case SERVICE_PROVIDER_CONFIGURATION:
+                try (final InputStream is = new ByteArrayInputStream(contents)) {
+                    final String serviceName = name.substring("META-INF/services/".length());
+
+                    final ServiceProviderConfiguration config = new ServiceProviderConfiguration(serviceName);
+                    config.read(is);
+                    return new JarServiceProviderConfigurationEntry(time, config);
+                }
+            case CLASS:
+                return new JarClassEntry(name, time, contents);
+            default:
+                return new JarResourceEntry(name, time, contents);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+}
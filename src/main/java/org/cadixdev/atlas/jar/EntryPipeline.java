@@ -0,0 +1,229 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs a task for each entry of a jar on an executor service, with a bounded
+ * number of tasks in flight.
+ * <p>
+ * Rather than submitting every entry up front, entries are drawn from the
+ * jar lazily - batched together by size, and submitted only as earlier batches
+ * complete. No thread waits on the pipeline.
+ * <p>
+ * Should an entry fail, its {@link TransformRun run} is cancelled - and no
+ * further entries are drawn.
+ * <p>
+ * The entries in flight draw their uncompressed size from the options'
+ * {@link MemoryBudget memory budget}, should there be one. While it is
+ * exhausted, no further entries are drawn until those in flight complete -
+ * though at least one batch is always in flight, so the run makes progress.
+ * <p>
+ * The pipeline's future completes as soon as the run is cancelled, though
+ * the batches in flight are only stopped as they next check the run. So each
+ * batch is tracked by the run, which is {@link TransformRun#drained() drained}
+ * once they have all completed.
+ *
+ * @param <T> The type of the entries
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class EntryPipeline<T> {
+
+    private final Iterator<T> entries;
+    private final ToLongFunction<T> sizes;
+    private final ExecutorService executorService;
+    private final TransformOptions options;
+    private final EntryTask<T> task;
+    private final TransformRun run;
+    private final MemoryBudget budget;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private int inFlight;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a pipeline over the given entries.
+     *
+     * @param entries The entries, which may be read as they are drawn
+     * @param sizes A function to get the uncompressed size of an entry
+     * @param executorService The executor service to run tasks on
+     * @param options The transform options
+     * @param task The task to run for each entry
+     * @param run The run the pipeline is a part of
+     */
+    EntryPipeline(final Iterator<T> entries, final ToLongFunction<T> sizes,
+                  final ExecutorService executorService, final TransformOptions options, final EntryTask<T> task,
+                  final TransformRun run) {
+        this.entries = entries;
+        this.sizes = sizes;
+        this.executorService = executorService;
+        this.options = options;
+        this.task = task;
+        this.run = run;
+        this.budget = options.getMemoryBudget();
+    }
+
+    /**
+     * Starts the pipeline.
+     *
+     * @return A future, completed once every entry has been handled - or
+     *         exceptionally, as soon as the run is cancelled
+     */
+    CompletableFuture<Void> start() {
+        this.run.attach(this.future);
+        this.fill();
+        return this.future;
+    }
+
+    private void fill() {
+        final List<Batch<T>> batches = new ArrayList<>();
+        final int inFlight;
+        synchronized (this) {
+            while (this.failure == null && !this.run.isCancelled() && this.inFlight < this.options.getMaxInFlight()
+                    && (this.budget == null || this.inFlight == 0 || this.budget.hasRoom())) {
+                // Each batch is a task of the run, from being drawn until it
+                // completes - so nothing it reads is closed beneath it
+                if (!this.run.enter()) break;
+                final Batch<T> batch;
+                try {
+                    batch = this.nextBatch();
+                }
+                catch (final RuntimeException ex) {
+                    this.failure = ex;
+                    this.run.exit();
+                    this.run.cancel(ex);
+                    break;
+                }
+                if (batch.entries.isEmpty()) {
+                    this.run.exit();
+                    break;
+                }
+
+                if (this.budget != null) this.budget.reserve(batch.bytes);
+                batches.add(batch);
+                this.inFlight++;
+            }
+
+            if (this.inFlight == 0) {
+                // Report why the run was cancelled, over whatever that did to
+                // the entries in flight
+                final Throwable failure = this.run.isCancelled() ? this.run.getFailure() : this.failure;
+                if (failure != null) this.future.completeExceptionally(failure);
+                else this.future.complete(null);
+                return;
+            }
+            inFlight = this.inFlight;
+        }
+
+        for (final Batch<T> batch : batches) {
+            try {
+                this.executorService.execute(() -> this.run(batch));
+            }
+            catch (final RuntimeException ex) {
+                this.complete(batch, ex);
+            }
+        }
+
+        final TransformListener listener = this.options.getListener();
+        if (listener != null && !batches.isEmpty()) {
+            listener.tasksQueued(inFlight, _queued(this.executorService));
+        }
+    }
+
+    private static int _queued(final ExecutorService executorService) {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getQueue().size();
+        }
+        if (executorService instanceof ForkJoinPool) {
+            final ForkJoinPool pool = (ForkJoinPool) executorService;
+            return (int) Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+        }
+        return -1;
+    }
+
+    private Batch<T> nextBatch() {
+        final List<T> entries = new ArrayList<>();
+        long bytes = 0;
+        while (entries.size() < this.options.getBatchSize() && bytes < this.options.getBatchBytes() && this.entries.hasNext()) {
+            final T entry = this.entries.next();
+            entries.add(entry);
+            bytes += this.sizes.applyAsLong(entry);
+        }
+        return new Batch<>(entries, bytes);
+    }
+
+    private void run(final Batch<T> batch) {
+        Throwable failure = null;
+        try {
+            for (final T entry : batch.entries) {
+                if (this.failure != null || this.run.isCancelled()) break;
+                this.run.run(entry, this.task);
+            }
+        }
+        catch (final Throwable ex) {
+            failure = ex;
+        }
+        this.complete(batch, failure);
+    }
+
+    private void complete(final Batch<T> batch, final Throwable failure) {
+        if (this.budget != null) this.budget.release(batch.bytes);
+        synchronized (this) {
+            this.inFlight--;
+            if (failure != null && this.failure == null) this.failure = failure;
+        }
+        try {
+            // A failure cancels the whole run, rather than waiting on the
+            // entries in flight
+            if (failure != null) this.run.cancel(failure);
+            this.fill();
+        }
+        finally {
+            this.run.exit();
+        }
+    }
+
+    /**
+     * A batch of entries, handled by a single task.
+     *
+     * @param <T> The type of the entries
+     */
+    private static final class Batch<T> {
+
+        private final List<T> entries;
+        private final long bytes;
+
+        Batch(final List<T> entries, final long bytes) {
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+    }
+
+    /**
+     * A task run for each entry in the pipeline.
+     *
+     * @param <T> The type of the entries
+     */
+    @FunctionalInterface
+    interface EntryTask<T> {
+
+        void run(final T entry) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+/**
+ * A {@link JarEntryTransformer jar entry transformer} that can describe its
+ * configuration as a fingerprint, allowing its results to be reused by a
+ * {@link TransformCache transform cache}.
+ * <p>
+ * By providing a fingerprint, a transformer promises that its result for an
+ * entry depends on nothing but that entry, the other entries of its jar (see
+ * {@link #dependsOnJar()}), the classpath, and whatever the fingerprint
+ * describes (its mappings, for example). Transformers that gather
+ * state from the entries they visit - say, for their {@link #additions()} -
+ * should not be fingerprinted, as entries served from the cache are never
+ * visited.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public interface FingerprintedJarEntryTransformer extends JarEntryTransformer {
+
+    /**
+     * Gets the fingerprint of the transformer, which must change whenever
+     * its result for any entry could.
+     *
+     * @return The fingerprint
+     */
+    String fingerprint();
+
+    /**
+     * Gets whether the transformer's result for an entry may depend on the
+     * other entries of its jar - such as the supertypes it finds through the
+     * inheritance provider, which also sees the jar's own classes.
+     * <p>
+     * Results are only reused across changes to the rest of the jar should
+     * no transformer depend on it. Otherwise, changing the {@link JarFile#fingerprint()
+     * class hierarchy} of the jar misses the cache for every entry - what a
+     * dependent transformer sees of the other entries is their hierarchy,
+     * not their code or the jar's resources.
+     *
+     * @return {@code true} if the transformer depends on the rest of the jar
+     */
+    default boolean dependsOnJar() {
+        return true;
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link TransformListener listener} that emits JDK Flight Recorder events
+ * as entries are read, transformed, and written.
+ * <p>
+ * Atlas targets Java 8, which has no API for Flight Recorder - so the events
+ * are defined at runtime with {@code jdk.jfr.EventFactory}. On JVMs without
+ * it the listener does nothing, see {@link #isAvailable()}.
+ * <p>
+ * The events are named {@code org.cadixdev.atlas.EntryRead},
+ * {@code org.cadixdev.atlas.EntryTransformed}, and {@code org.cadixdev.atlas.EntryWritten},
+ * each carrying the time taken by its stage as {@code elapsed} - as events
+ * are emitted once their stage has finished, their own duration is of no use.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class FlightRecorderListener implements TransformListener {
+
+    private final EventType read;
+    private final EventType transformed;
+    private final EventType written;
+
+    /**
+     * Creates a listener, defining its events should Flight Recorder be
+     * available.
+     */
+    public FlightRecorderListener() {
+        EventType read = null;
+        EventType transformed = null;
+        EventType written = null;
+        try {
+            final Fields fields = new Fields();
+            read = new EventType(fields, "EntryRead", "Entry Read",
+                    fields.string("path", "Path"),
+                    fields.timespan("elapsed", "Elapsed"),
+                    fields.bytes("bytes", "Bytes"));
+            transformed = new EventType(fields, "EntryTransformed", "Entry Transformed",
+                    fields.string("path", "Path"),
+                    fields.string("transformer", "Transformer"),
+                    fields.timespan("elapsed", "Elapsed"),
+                    fields.timespan("cpuTime", "CPU Time"));
+            written = new EventType(fields, "EntryWritten", "Entry Written",
+                    fields.string("path", "Path"),
+                    fields.timespan("elapsed", "Elapsed"),
+                    fields.bytes("bytes", "Bytes"));
+        }
+        catch (final ReflectiveOperationException | LinkageError ignored) {
+            // Flight Recorder isn't available, the listener does nothing
+            read = transformed = written = null;
+        }
+        this.read = read;
+        this.transformed = transformed;
+        this.written = written;
+    }
+
+    /**
+     * Gets whether Flight Recorder is available, and so events are emitted.
+     *
+     * @return {@code true} if events are emitted
+     */
+    public boolean isAvailable() {
+        return this.read != null;
+    }
+
+    @Override
+    public void entryRead(final JarPath path, final long nanos, final long bytes) {
+        if (this.read != null) this.read.commit(path.getName(), nanos, bytes);
+    }
+
+    @Override
+    public void entryTransformed(final JarPath path, final JarEntryTransformer transformer,
+                                 final long nanos, final long cpuNanos) {
+        if (this.transformed != null) {
+            this.transformed.commit(path.getName(), transformer.getClass().getName(), nanos, Math.max(0, cpuNanos));
+        }
+    }
+
+    @Override
+    public void entryWritten(final JarPath path, final long nanos, final long bytes) {
+        if (this.written != null) this.written.commit(path.getName(), nanos, bytes);
+    }
+
+    /**
+     * Builds the field descriptors of events, reflectively.
+     */
+    private static final class Fields {
+
+        private final Constructor<?> annotation;
+        private final Constructor<?> descriptor;
+        private final Class<? extends Annotation> label;
+        private final Class<? extends Annotation> timespan;
+        private final Class<? extends Annotation> dataAmount;
+
+        Fields() throws ReflectiveOperationException {
+            final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            this.annotation = annotationElement.getConstructor(Class.class, Object.class);
+            this.descriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            this.label = _annotation("jdk.jfr.Label");
+            this.timespan = _annotation("jdk.jfr.Timespan");
+            this.dataAmount = _annotation("jdk.jfr.DataAmount");
+        }
+
+        Object annotation(final Class<? extends Annotation> type, final Object value) throws ReflectiveOperationException {
+            return this.annotation.newInstance(type, value);
+        }
+
+        Object annotation(final String type, final Object value) throws ReflectiveOperationException {
+            return this.annotation(_annotation(type), value);
+        }
+
+        Object string(final String name, final String label) throws ReflectiveOperationException {
+            return this.descriptor.newInstance(String.class, name,
+                    Collections.singletonList(this.annotation(this.label, label)));
+        }
+
+        Object timespan(final String name, final String label) throws ReflectiveOperationException {
+            return this.descriptor.newInstance(long.class, name, Arrays.asList(
+                    this.annotation(this.label, label), this.annotation(this.timespan, "NANOSECONDS")
+            ));
+        }
+
+        Object bytes(final String name, final String label) throws ReflectiveOperationException {
+            return this.descriptor.newInstance(long.class, name, Arrays.asList(
+                    this.annotation(this.label, label), this.annotation(this.dataAmount, "BYTES")
+            ));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> _annotation(final String name) throws ClassNotFoundException {
+            return (Class<? extends Annotation>) Class.forName(name);
+        }
+
+    }
+
+    /**
+     * An event type, defined with {@code jdk.jfr.EventFactory}.
+     */
+    private static final class EventType {
+
+        private final Object factory;
+        private final Object type;
+        private final Method newEvent;
+        private final Method isEnabled;
+        private final Method set;
+        private final Method commit;
+
+        EventType(final Fields fields, final String name, final String label, final Object... values)
+                throws ReflectiveOperationException {
+            final List<Object> annotations = new ArrayList<>();
+            annotations.add(fields.annotation("jdk.jfr.Name", "org.cadixdev.atlas." + name));
+            annotations.add(fields.annotation("jdk.jfr.Label", label));
+            annotations.add(fields.annotation("jdk.jfr.Category", new String[]{ "Atlas" }));
+
+            final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            this.factory = eventFactory.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, Arrays.asList(values));
+            this.type = eventFactory.getMethod("getEventType").invoke(this.factory);
+            this.newEvent = eventFactory.getMethod("newEvent");
+            this.isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+
+            final Class<?> event = Class.forName("jdk.jfr.Event");
+            this.set = event.getMethod("set", int.class, Object.class);
+            this.commit = event.getMethod("commit");
+        }
+
+        void commit(final Object... values) {
+            try {
+                if (!(Boolean) this.isEnabled.invoke(this.type)) return;
+
+                final Object event = this.newEvent.invoke(this.factory);
+                for (int i = 0; i < values.length; i++) {
+                    this.set.invoke(event, i, values[i]);
+                }
+                this.commit.invoke(event);
+            }
+            catch (final ReflectiveOperationException ignored) {
+                // Events are best effort
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,453 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.atlas.util.DigestHelper;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.analysis.InheritanceType;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A compact, precomputed, index of the class hierarchy of a {@link JarFile jar} -
+ * recording the superclass, interfaces, access, fields, and methods of each
+ * of its classes.
+ * <p>
+ * Indexes are built by reading every class of the jar in parallel, and can be
+ * saved alongside others in a directory, keyed by the {@link CentralDirectory#fingerprint()
+ * contents} of their jar. A saved index is memory-mapped, so answering an
+ * inheritance query requires neither reading nor parsing a class - and the
+ * index itself is kept off of the heap.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class InheritanceIndex implements InheritanceProvider {
+
+    private static final int MAGIC = 0x41494458; // AIDX
+    private static final int VERSION = 2;
+    private static final int HEADER = 28;
+    private static final int NONE = -1;
+
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String MODULE_INFO = "module-info.class";
+    private static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * Opens the index of the given jar from the given directory, building
+     * (and saving) it should the directory not yet have one.
+     *
+     * @param jar The jar
+     * @param directory The directory of indexes
+     * @return The index
+     * @throws IOException Should an issue occur reading the jar, or reading
+     *                     or writing the index
+     */
+    public static InheritanceIndex open(final JarFile jar, final Path directory) throws IOException {
+        // The format's version is part of the name, so indexes of another
+        // version are never read - and an index that can't be read, should
+        // it have been corrupted, is rebuilt
+        final Path path = directory.resolve(jar.getDirectory().fingerprint() + ".v" + VERSION + INDEX_EXTENSION);
+        if (Files.exists(path)) {
+            final ByteBuffer index = _map(path);
+            if (_isValid(index)) return new InheritanceIndex(index);
+        }
+
+        Files.createDirectories(directory);
+
+        // Write to a temporary file first, so a partially written index
+        // is never read
+        final Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, _build(jar.getDirectory()));
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException ignored) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        return new InheritanceIndex(_map(path));
+    }
+
+    private static ByteBuffer _map(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static boolean _isValid(final ByteBuffer index) {
+        return index.limit() >= HEADER && index.getInt(0) == MAGIC && index.getInt(4) == VERSION;
+    }
+
+    /**
+     * Builds the index of the given jar, held on the heap.
+     *
+     * @param jar The jar
+     * @return The index
+     * @throws IOException Should an issue occur reading the jar
+     */
+    public static InheritanceIndex build(final JarFile jar) throws IOException {
+        return new InheritanceIndex(ByteBuffer.wrap(_build(jar.getDirectory())));
+    }
+
+    private final ByteBuffer index;
+    private volatile String fingerprint;
+    private final int count;
+    private final int slots;
+    private final int table;
+    private final int records;
+    private final int pool;
+
+    private InheritanceIndex(final ByteBuffer index) throws IOException {
+        this.index = index;
+        if (!_isValid(index)) {
+            throw new IOException("Invalid inheritance index");
+        }
+        this.count = index.getInt(8);
+        this.slots = index.getInt(12);
+        this.table = index.getInt(16);
+        this.records = index.getInt(20);
+        this.pool = index.getInt(24);
+    }
+
+    /**
+     * Gets the number of classes within the index.
+     *
+     * @return The number of classes
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Gets a fingerprint of the class hierarchy within the index - the
+     * superclass, interfaces, access, fields, and methods of each class.
+     * <p>
+     * Unlike the jar's central directory, this doesn't change should the
+     * same classes be written again - with new timestamps, or in another
+     * order.
+     *
+     * @return The fingerprint
+     */
+    public String fingerprint() {
+        String fingerprint = this.fingerprint;
+        if (fingerprint == null) {
+            final MessageDigest digest = DigestHelper.sha256();
+            digest.update(this.index.duplicate());
+            this.fingerprint = fingerprint = DigestHelper.toHex(digest.digest());
+        }
+        return fingerprint;
+    }
+
+    @Override
+    public Optional<ClassInfo> provide(final String klass) {
+        final int record = this.find(klass);
+        if (record == NONE) return Optional.empty();
+
+        int pos = record + 4;
+        final int access = this.index.getInt(pos);
+        final String superName = this.string(this.index.getInt(pos + 4));
+        pos += 8;
+
+        final String[] interfaces = new String[this.index.getInt(pos)];
+        pos += 4;
+        for (int i = 0; i < interfaces.length; i++, pos += 4) {
+            interfaces[i] = this.string(this.index.getInt(pos));
+        }
+
+        final int fieldCount = this.index.getInt(pos);
+        pos += 4;
+        final Map<FieldSignature, InheritanceType> fields = new HashMap<>(fieldCount * 4 / 3 + 1);
+        final Map<String, InheritanceType> fieldsByName = new HashMap<>(fieldCount * 4 / 3 + 1);
+        for (int i = 0; i < fieldCount; i++, pos += 12) {
+            final String name = this.string(this.index.getInt(pos));
+            final InheritanceType type = InheritanceType.fromModifiers(this.index.getInt(pos + 8));
+            fields.put(FieldSignature.of(name, this.string(this.index.getInt(pos + 4))), type);
+            fieldsByName.put(name, type);
+        }
+
+        final int methodCount = this.index.getInt(pos);
+        pos += 4;
+        final Map<MethodSignature, InheritanceType> methods = new HashMap<>(methodCount * 4 / 3 + 1);
+        for (int i = 0; i < methodCount; i++, pos += 12) {
+            methods.put(
+                    MethodSignature.of(this.string(this.index.getInt(pos)), this.string(this.index.getInt(pos + 4))),
+                    InheritanceType.fromModifiers(this.index.getInt(pos + 8))
+            );
+        }
+
+        return Optional.of(new ClassInfo.Impl(klass, (access & Opcodes.ACC_INTERFACE) != 0, superName,
+                Arrays.asList(interfaces), fields, fieldsByName, methods));
+    }
+
+    private int find(final String klass) {
+        if (this.slots == 0) return NONE;
+
+        final byte[] name = klass.getBytes(StandardCharsets.UTF_8);
+        final int hash = klass.hashCode();
+        for (int slot = hash & (this.slots - 1); ; slot = (slot + 1) & (this.slots - 1)) {
+            final int pos = this.table + slot * 8;
+            final int record = this.index.getInt(pos + 4);
+            if (record == NONE) return NONE;
+
+            final int offset = this.records + record;
+            if (this.index.getInt(pos) == hash && this.equals(this.index.getInt(offset), name)) return offset;
+        }
+    }
+
+    private boolean equals(final int string, final byte[] value) {
+        final int pos = this.pool + string;
+        if ((this.index.getShort(pos) & 0xFFFF) != value.length) return false;
+        for (int i = 0; i < value.length; i++) {
+            if (this.index.get(pos + 2 + i) != value[i]) return false;
+        }
+        return true;
+    }
+
+    private String string(final int string) {
+        if (string == NONE) return null;
+
+        final int pos = this.pool + string;
+        final byte[] value = new byte[this.index.getShort(pos) & 0xFFFF];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = this.index.get(pos + 2 + i);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] _build(final CentralDirectory directory) throws IOException {
+        // Read each class in parallel, they're then written in order of their
+        // name - so the index of the same classes is always the same, however
+        // their jar was written
+        final List<Entry> entries = IntStream.range(0, directory.size()).parallel()
+                .filter(i -> !directory.isDirectory(i) && !directory.isShadowed(i))
+                .filter(i -> directory.getPath(i).getType() == JarEntryType.CLASS)
+                .filter(i -> !directory.getName(i).endsWith(MODULE_INFO))
+                .mapToObj(i -> _read(directory, i))
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(entry -> entry.name))
+                .collect(Collectors.toList());
+
+        // Strings are shared between classes, and written once
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream poolOut = new DataOutputStream(pool);
+        final DataOutputStream out = new DataOutputStream(records);
+        final int[] offsets = new int[entries.size()];
+
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            offsets[i] = records.size();
+
+            out.writeInt(_string(strings, poolOut, entry.name));
+            out.writeInt(entry.access);
+            out.writeInt(entry.superName == null ? NONE : _string(strings, poolOut, entry.superName));
+            out.writeInt(entry.interfaces.size());
+            for (final String iface : entry.interfaces) {
+                out.writeInt(_string(strings, poolOut, iface));
+            }
+            for (final List<Member> members : Arrays.asList(entry.fields, entry.methods)) {
+                out.writeInt(members.size());
+                for (final Member member : members) {
+                    out.writeInt(_string(strings, poolOut, member.name));
+                    out.writeInt(_string(strings, poolOut, member.descriptor));
+                    out.writeInt(member.access);
+                }
+            }
+        }
+
+        // An open addressing hash table of the classes, by name, that is
+        // never more than half full
+        final int slots = entries.isEmpty() ? 0 : Integer.highestOneBit(entries.size() * 2 - 1) << 1;
+        final int[] table = new int[slots * 2];
+        for (int i = 0; i < slots; i++) {
+            table[i * 2 + 1] = NONE;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            final int hash = entries.get(i).name.hashCode();
+            int slot = hash & (slots - 1);
+            while (table[slot * 2 + 1] != NONE) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            table[slot * 2] = hash;
+            table[slot * 2 + 1] = offsets[i];
+        }
+
+        final int tableOffset = HEADER;
+        final int recordsOffset = tableOffset + slots * 8;
+        final int poolOffset = recordsOffset + records.size();
+        final ByteBuffer index = ByteBuffer.allocate(poolOffset + pool.size());
+        index.putInt(MAGIC).putInt(VERSION).putInt(entries.size()).putInt(slots)
+                .putInt(tableOffset).putInt(recordsOffset).putInt(poolOffset);
+        for (final int value : table) {
+            index.putInt(value);
+        }
+        index.put(records.toByteArray());
+        index.put(pool.toByteArray());
+        return index.array();
+    }
+
+    private static int _string(final Map<String, Integer> strings, final DataOutputStream pool, final String value)
+            throws IOException {
+        final Integer existing = strings.get(value);
+        if (existing != null) return existing;
+
+        final byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > 0xFFFF) throw new IOException("String too long for inheritance index: " + value);
+
+        final int offset = pool.size();
+        pool.writeShort(raw.length);
+        pool.write(raw);
+        strings.put(value, offset);
+        return offset;
+    }
+
+    /**
+     * Reads the inheritance information of the given class, as an index
+     * would hold it - so the class itself needn't be held.
+     *
+     * @param name The name of the class, as it is looked up
+     * @param klass The class
+     * @return The information of the class, or {@code null} should it be
+     *         unreadable
+     */
+    static ClassInfo info(final String name, final byte[] klass) {
+        final Entry info = new Entry(name);
+        final Map<FieldSignature, InheritanceType> fields = new HashMap<>();
+        final Map<String, InheritanceType> fieldsByName = new HashMap<>();
+        final Map<MethodSignature, InheritanceType> methods = new HashMap<>();
+        try {
+            new ClassReader(klass).accept(info, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            for (final Member field : info.fields) {
+                final InheritanceType type = InheritanceType.fromModifiers(field.access);
+                fields.put(FieldSignature.of(field.name, field.descriptor), type);
+                fieldsByName.put(field.name, type);
+            }
+            for (final Member method : info.methods) {
+                methods.put(MethodSignature.of(method.name, method.descriptor), InheritanceType.fromModifiers(method.access));
+            }
+        }
+        catch (final RuntimeException ignored) {
+            // As with the index, a class that can't be read is left out
+            return null;
+        }
+
+        return new ClassInfo.Impl(name, (info.access & Opcodes.ACC_INTERFACE) != 0, info.superName,
+                info.interfaces, fields, fieldsByName, methods);
+    }
+
+    private static Entry _read(final CentralDirectory directory, final int entry) {
+        // Classes are keyed by the name they're looked up with, that of their
+        // entry - as with ClassProvider
+        final String name = directory.getName(entry);
+        final Entry info = new Entry(name.substring(0, name.length() - CLASS_EXTENSION.length()));
+        try {
+            new ClassReader(directory.read(entry))
+                    .accept(info, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        catch (final IOException | RuntimeException ignored) {
+            // A class that can't be read is left out of the index, as it
+            // would be unavailable through its class provider
+            return null;
+        }
+        return info;
+    }
+
+    /**
+     * The information of a class, as it is read.
+     */
+    private static final class Entry extends ClassVisitor {
+
+        private final String name;
+        private int access;
+        private String superName;
+        private List<String> interfaces = Collections.emptyList();
+        private final List<Member> fields = new ArrayList<>();
+        private final List<Member> methods = new ArrayList<>();
+
+        Entry(final String name) {
+            super(Opcodes.ASM7);
+            this.name = name;
+        }
+
+        @Override
+        public void visit(final int version, final int access, final String name, final String signature,
+                          final String superName, final String[] interfaces) {
+            this.access = access;
+            this.superName = superName;
+            if (interfaces != null) this.interfaces = Arrays.asList(interfaces);
+        }
+
+        @Override
+        public FieldVisitor visitField(final int access, final String name, final String descriptor,
+                                       final String signature, final Object value) {
+            this.fields.add(new Member(name, descriptor, access));
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
+                                         final String signature, final String[] exceptions) {
+            this.methods.add(new Member(name, descriptor, access));
+            return null;
+        }
+
+    }
+
+    /**
+     * A field, or method, of a class.
+     */
+    private static final class Member {
+
+        private final String name;
+        private final String descriptor;
+        private final int access;
+
+        Member(final String name, final String descriptor, final int access) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.access = access;
+        }
+
+    }
+
+}
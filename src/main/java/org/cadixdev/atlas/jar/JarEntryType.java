@@ -0,0 +1,59 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+/**
+ * The types of entries that can be found in a jar file.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public enum JarEntryType {
+
+    /**
+     * The jar's manifest, {@code META-INF/MANIFEST.MF}.
+     */
+    MANIFEST,
+
+    /**
+     * A service provider configuration, within {@code META-INF/services/}.
+     */
+    SERVICE_PROVIDER_CONFIGURATION,
+
+    /**
+     * A class.
+     */
+    CLASS,
+
+    /**
+     * Any other resource.
+     */
+    RESOURCE,
+    ;
+
+    /**
+     * Gets the type of the entry of the given name.
+     *
+     * @param name The fully-qualified name of the entry
+     * @return The type of the entry
+     */
+    public static JarEntryType of(final String name) {
+        if ("META-INF/MANIFEST.MF".equals(name)) {
+            return MANIFEST;
+        }
+        else if (name.startsWith("META-INF/services/")) {
+            return SERVICE_PROVIDER_CONFIGURATION;
+        }
+        else if (name.endsWith(".class")) {
+            return CLASS;
+        }
+        else {
+            return RESOURCE;
+        }
+    }
+
+}
@@ -6,33 +6,41 @@
 
 package org.cadixdev.atlas.jar;
 
-import org.cadixdev.atlas.util.NIOHelper;
+import org.cadixdev.atlas.util.FutureHelper;
 import org.cadixdev.bombe.jar.AbstractJarEntry;
 import org.cadixdev.bombe.provider.ClassProvider;
 import org.cadixdev.bombe.jar.JarClassEntry;
 import org.cadixdev.bombe.jar.JarEntryTransformer;
-import org.cadixdev.bombe.jar.JarManifestEntry;
-import org.cadixdev.bombe.jar.JarResourceEntry;
-import org.cadixdev.bombe.jar.JarServiceProviderConfigurationEntry;
-import org.cadixdev.bombe.jar.ServiceProviderConfiguration;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.FileSystem;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.jar.Manifest;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
 
 /**
  * A representation of a JAR file, with the class entries cached.
@@ -42,22 +50,148 @@
  */
 public class JarFile implements ClassProvider, Closeable {
 
-    private final Path path;
-    private final FileSystem fs;
-    private final Map<JarPath, JarClassEntry> cache = new ConcurrentHashMap<>();
+    private static final JarPath MANIFEST_PATH = new JarPath(JarWriter.MANIFEST_NAME);
+
+    private final String name;
+    private final CentralDirectory directory;
+    private final ClassCachePolicy cachePolicy;
+    private final ClassCache cache;
+    private final Map<String, JarFile> nestedJars = new ConcurrentHashMap<>();
+    private final Set<TransformRun> runs = ConcurrentHashMap.newKeySet();
+    private volatile String fingerprint;
 
     public JarFile(final Path path) throws IOException {
-        this.path = path;
-        this.fs = NIOHelper.openZip(this.path, false);
+        this(path, ClassCachePolicy.unbounded());
+    }
+
+    /**
+     * Opens the JAR file at the given path, caching its classes according to the
+     * given policy.
+     * <p>
+     * The JAR file is memory-mapped, see {@link #JarFile(Path, ClassCachePolicy, boolean)}.
+     *
+     * @param path The path of the JAR file
+     * @param cachePolicy The policy for caching classes
+     * @throws IOException Should an issue occur opening the JAR file
+     * @since 0.3.0
+     */
+    public JarFile(final Path path, final ClassCachePolicy cachePolicy) throws IOException {
+        this(path, cachePolicy, true);
+    }
+
+    /**
+     * Opens the JAR file at the given path, caching its classes according to the
+     * given policy - and either memory-mapping it, or reading its entries
+     * through a file channel.
+     * <p>
+     * A mapped JAR file is only unmapped once it is garbage collected, as there
+     * is no way to unmap it any sooner on Java 8. Until then, the file is locked
+     * on Windows - and should it be overwritten in place, reading it may crash
+     * the JVM. JAR files held open for long, as by a {@link org.cadixdev.atlas.ClasspathSession},
+     * are better left unmapped - only their central directory is held on the
+     * heap, and the file is released as soon as the JAR file is closed.
+     * JAR files of over 2GB are never mapped, as a single mapping can't
+     * exceed that.
+     *
+     * @param path The path of the JAR file
+     * @param cachePolicy The policy for caching classes
+     * @param map Whether to memory-map the JAR file
+     * @throws IOException Should an issue occur opening the JAR file
+     * @since 0.3.0
+     */
+    public JarFile(final Path path, final ClassCachePolicy cachePolicy, final boolean map) throws IOException {
+        this.name = path.toString();
+        this.directory = map ? CentralDirectory.open(path) : CentralDirectory.openUnmapped(path);
+        this.cachePolicy = cachePolicy;
+        this.cache = ClassCache.of(cachePolicy);
+    }
+
+    /**
+     * Creates a JAR file held in memory, of the given contents.
+     *
+     * @param name The name of the JAR file
+     * @param contents The contents of the JAR file
+     * @throws IOException Should the JAR file be malformed
+     * @since 0.3.0
+     */
+    public JarFile(final String name, final byte[] contents) throws IOException {
+        this(name, ByteBuffer.wrap(contents));
     }
 
     /**
-     * Gets the name (location on file system) of the JAR file.
+     * Creates a JAR file held in memory, of the given contents.
+     *
+     * @param name The name of the JAR file
+     * @param contents The contents of the JAR file, from its position to its limit
+     * @throws IOException Should the JAR file be malformed
+     * @since 0.3.0
+     */
+    public JarFile(final String name, final ByteBuffer contents) throws IOException {
+        this(name, contents, ClassCachePolicy.unbounded());
+    }
+
+    /**
+     * Creates a JAR file held in memory, of the given contents - caching its
+     * classes according to the given policy.
+     * <p>
+     * The contents are read in place, whether on the heap or in direct memory,
+     * and must not be modified while the JAR file is in use. Nothing is read
+     * from, or written to, the file system.
+     *
+     * @param name The name of the JAR file
+     * @param contents The contents of the JAR file, from its position to its limit
+     * @param cachePolicy The policy for caching classes
+     * @throws IOException Should the JAR file be malformed
+     * @since 0.3.0
+     */
+    public JarFile(final String name, final ByteBuffer contents, final ClassCachePolicy cachePolicy) throws IOException {
+        this.name = name;
+        this.directory = CentralDirectory.read(contents);
+        this.cachePolicy = cachePolicy;
+        this.cache = ClassCache.of(cachePolicy);
+    }
+
+    /**
+     * Gets the name (location on file system) of the JAR file, or the name
+     * it was given should it be held in memory.
      *
      * @return The name
      */
     public String getName() {
-        return this.path.toString();
+        return this.name;
+    }
+
+    /**
+     * Gets a fingerprint of the JAR file's class hierarchy, that of its
+     * {@link InheritanceIndex inheritance index} - so the fingerprint is
+     * shared by every build of the same classes, whenever they were written.
+     * <p>
+     * The classes are read the first time the fingerprint is needed.
+     *
+     * @return The fingerprint
+     * @see InheritanceIndex#fingerprint()
+     * @since 0.3.0
+     */
+    public String fingerprint() {
+        String fingerprint = this.fingerprint;
+        if (fingerprint == null) {
+            try {
+                this.fingerprint = fingerprint = InheritanceIndex.build(this).fingerprint();
+            }
+            catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Gets the central directory of the JAR file.
+     *
+     * @return The central directory
+     */
+    CentralDirectory getDirectory() {
+        return this.directory;
     }
 
     /**
@@ -70,21 +204,53 @@ public String getName() {
      * @throws IOException Should an issue occur reading the entry
      */
     public AbstractJarEntry get(final JarPath path) throws IOException {
-        final Path entry = this.fs.getPath("/", path.getName());
-        if (Files.notExists(entry)) return null;
+        final int entry = this.directory.indexOf(path);
+        if (entry == -1) return null;
 
-        if ("META-INF/MANIFEST.MF".equals(path.getName())) {
-            return _readManifest(entry);
-        }
-        else if (path.getName().startsWith("META-INF/services/")) {
-            return _readServiceConfig(entry);
-        }
-        else if (path.getName().endsWith(".class")) {
-            return this.getClass(path);
-        }
-        else {
-            return _readResource(entry);
+        if (path.getType() == JarEntryType.CLASS) return this.getClass(path);
+        return this._read(entry);
+    }
+
+    /**
+     * Gets the jar nested within the JAR file at the given {@link JarPath JAR path},
+     * held in memory.
+     * <p>
+     * A nested jar is only opened once, and is closed along with the JAR file.
+     * Those stored without compression, as is typical, are read in place.
+     * <p>
+     * The nested jars a transformation opens itself, which haven't been got
+     * through here, are instead closed as soon as they've been transformed.
+     *
+     * @param path The path of the nested jar
+     * @return The nested jar, or {@code null} if no entry for the path exists
+     * @throws IOException Should an issue occur reading the nested jar
+     * @since 0.3.0
+     */
+    public JarFile getNestedJar(final JarPath path) throws IOException {
+        final JarFile cached = this.nestedJars.get(path.getName());
+        if (cached != null) return cached;
+
+        final JarFile jar = this._openNested(path);
+        if (jar == null) return null;
+
+        // Two threads may occasionally open the same jar, but only one will
+        // be kept
+        final JarFile existing = this.nestedJars.putIfAbsent(path.getName(), jar);
+        if (existing != null) {
+            jar.close();
+            return existing;
         }
+        return jar;
+    }
+
+    private JarFile _openNested(final JarPath path) throws IOException {
+        final int entry = this.directory.indexOf(path);
+        if (entry == -1) return null;
+
+        final ByteBuffer contents = this.directory.getMethod(entry) == ZipEntry.STORED ?
+                this.directory.getData(entry) :
+                ByteBuffer.wrap(this.directory.read(entry));
+        return new JarFile(this.name + "!/" + path.getName(), contents, this.cachePolicy);
     }
 
     /**
@@ -95,11 +261,11 @@ else if (path.getName().endsWith(".class")) {
      * @return The class entry, or {@code null} if not present
      */
     public JarClassEntry getClass(final JarPath path) {
-        return this.cache.computeIfAbsent(path, p -> {
-            final Path entry = this.fs.getPath("/", p.getName());
-            if (Files.notExists(entry)) return null;
+        return this.cache.get(path, p -> {
+            final int entry = this.directory.indexOf(p);
+            if (entry == -1) return null;
             try {
-                return _readClass(entry);
+                return this._readClass(entry);
             }
             catch (final IOException ignored) {
                 return null;
@@ -114,7 +280,20 @@ public JarClassEntry getClass(final JarPath path) {
      * @return The class entry, or {@code null} if not present
      */
     public JarClassEntry getClass(final String name) {
-        return this.getClass(new JarPath(name));
+        // Look the path up in the table, so the cache is keyed by the
+        // jar's own paths
+        final int entry = this.directory.indexOf(name);
+        return entry == -1 ? null : this.getClass(this.directory.getPath(entry));
+    }
+
+    /**
+     * Gets a snapshot of the statistics of the JAR file's class cache.
+     *
+     * @return The cache statistics
+     * @since 0.3.0
+     */
+    public ClassCacheStats getCacheStats() {
+        return this.cache.stats();
     }
 
     /**
@@ -126,24 +305,30 @@ public JarClassEntry getClass(final String name) {
      * @throws IOException Should an issue with reading occur
      */
     public Stream<JarPath> walk(final JarVisitOption... options) throws IOException {
-        return Files.walk(this.fs.getPath("/")).filter(p -> !Files.isDirectory(p)).map(p -> {
-            final String name = p.toString().substring(1); // Trim leading /
-
-            if ("META-INF/MANIFEST.MF".equals(name)) {
-                if (_contains(JarVisitOption.IGNORE_MANIFESTS, options)) return null;
-            }
-            else if (name.startsWith("META-INF/services/")) {
-                if (_contains(JarVisitOption.IGNORE_SERVICE_PROVIDER_CONFIGURATIONS, options)) return null;
-            }
-            else if (name.endsWith(".class")) {
-                if (_contains(JarVisitOption.IGNORE_CLASSES, options)) return null;
-            }
-            else {
-                if (_contains(JarVisitOption.IGNORE_RESOURCES, options)) return null;
-            }
+        return this.walk(JarPathFilter.all(), options);
+    }
 
-            return new JarPath(name);
-        }).filter(Objects::nonNull);
+    /**
+     * Walks through the jar entries within the JAR file matched by the given
+     * filter, omitting those targeted by a {@link JarVisitOption}.
+     * <p>
+     * Only the entries sharing the filter's literal prefix - such as the
+     * package of {@code com/foo/**.class} - are visited, so walking a few
+     * packages of a large jar needn't visit the rest of it.
+     *
+     * @param filter The filter of entries to walk
+     * @param options The visit options to use, while walking
+     * @return The jar entries
+     * @throws IOException Should an issue with reading occur
+     * @since 0.3.0
+     */
+    public Stream<JarPath> walk(final JarPathFilter filter, final JarVisitOption... options) throws IOException {
+        final EnumSet<JarEntryType> types = _types(options);
+        return Arrays.stream(this.directory.entriesWithPrefix(filter.getPrefix()))
+                // Skip directories, and duplicate entries - only the first will be read
+                .filter(i -> !this.directory.isDirectory(i) && !this.directory.isShadowed(i))
+                .mapToObj(this.directory::getPath)
+                .filter(path -> types.contains(path.getType()) && filter.test(path));
     }
 
     /**
@@ -171,6 +356,11 @@ public void transform(final Path export, final JarEntryTransformer... transforme
     /**
      * Transforms the JAR file, with the given {@link JarEntryTransformer}s, writing
      * to the given output JAR path.
+     * <p>
+     * Entries are transformed in parallel, and streamed to the output as they
+     * complete - with the manifest always written first. Entries that none of
+     * the transformers {@link ScopedJarEntryTransformer apply to} are copied
+     * as they are, without being decompressed.
      *
      * @param export The JAR path to write to
      * @param executorService The executor service to use
@@ -179,66 +369,170 @@ public void transform(final Path export, final JarEntryTransformer... transforme
      * @since 0.2.1
      */
     public void transform(final Path export, final ExecutorService executorService, final JarEntryTransformer... transformers) throws IOException {
-        Files.deleteIfExists(export);
-        try (final FileSystem fs = NIOHelper.openZip(export, true)) {
-            final CompletableFuture<Void> future = CompletableFuture.allOf(this.walk().map(path -> CompletableFuture.runAsync(() -> {
-                try {
-                    // Get the entry
-                    AbstractJarEntry entry = this.get(path);
-                    if (entry == null) return;
-
-                    // Transform the entry
-                    for (final JarEntryTransformer transformer : transformers) {
-                        entry = entry.accept(transformer);
-                        if (entry == null) return;
-                    }
-
-                    // Write to jar
-                    final Path outEntry = fs.getPath("/", entry.getName());
-
-                    // Ensure parent directory exists
-                    Files.createDirectories(outEntry.getParent());
+        this.transform(export, executorService, new TransformOptions(), transformers);
+    }
 
-                    // Write the result to the new jar
-                    Files.write(outEntry, entry.getContents());
-                    Files.setLastModifiedTime(outEntry, FileTime.fromMillis(entry.getTime()));
-                }
-                catch (final IOException ex) {
-                    throw new CompletionException(ex);
-                }
-            }, executorService)).toArray(CompletableFuture[]::new));
+    /**
+     * Transforms the JAR file, with the given {@link JarEntryTransformer}s, writing
+     * to the given output JAR path.
+     *
+     * @param export The JAR path to write to
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @throws IOException Should an issue with reading or writing occur
+     * @see #transform(Path, ExecutorService, JarEntryTransformer...)
+     * @since 0.3.0
+     */
+    public void transform(final Path export, final ExecutorService executorService, final TransformOptions options,
+                          final JarEntryTransformer... transformers) throws IOException {
+        FutureHelper.await(this.transformAsync(export, executorService, options, transformers));
+    }
 
-            future.get();
+    /**
+     * Transforms the JAR file, with the given {@link JarEntryTransformer}s, writing
+     * to the given output JAR path - without blocking the calling thread.
+     * <p>
+     * This behaves as {@link #transform(Path, ExecutorService, JarEntryTransformer...)},
+     * though no thread waits upon the transformation - allowing many jars to share
+     * the same executor service.
+     *
+     * @param export The JAR path to write to
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @return A future, completed once the output has been written - which
+     *         cancels the transformation, should it be cancelled
+     * @since 0.3.0
+     */
+    public CompletableFuture<Void> transformAsync(final Path export, final ExecutorService executorService,
+                                                 final TransformOptions options, final JarEntryTransformer... transformers) {
+        return this._transformAsync(export, executorService, options, transformers, this::source);
+    }
 
-            // Add additions from transformers
-            for (final JarEntryTransformer transformer : transformers) {
-                for (final AbstractJarEntry addition : transformer.additions()) {
-                    // Write to jar
-                    final Path outEntry = fs.getPath("/", addition.getName());
+    /**
+     * Transforms the JAR file, with the given {@link JarEntryTransformer}s, writing
+     * to the given output stream.
+     *
+     * @param out The output stream to write to, which will not be closed
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @throws IOException Should an issue with reading or writing occur
+     * @see #transformAsync(OutputStream, ExecutorService, TransformOptions, JarEntryTransformer...)
+     * @since 0.3.0
+     */
+    public void transform(final OutputStream out, final ExecutorService executorService, final TransformOptions options,
+                          final JarEntryTransformer... transformers) throws IOException {
+        FutureHelper.await(this.transformAsync(out, executorService, options, transformers));
+    }
 
-                    // Ensure parent directory exists
-                    Files.createDirectories(outEntry.getParent());
+    /**
+     * Transforms the JAR file, with the given {@link JarEntryTransformer}s, writing
+     * to the given output stream - without blocking the calling thread.
+     * <p>
+     * Along with a {@link #JarFile(String, ByteBuffer) JAR file held in memory},
+     * writing to a {@link java.io.ByteArrayOutputStream} keeps the whole
+     * transformation off the file system.
+     * <p>
+     * Unlike when writing to a path, the output can't be repacked - so a
+     * manifest only provided by a transformer's
+     * {@link JarEntryTransformer#additions() additions} won't be the first
+     * entry of the output.
+     *
+     * @param out The output stream to write to, which will not be closed
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @return A future, completed once the output has been written - which
+     *         cancels the transformation, should it be cancelled
+     * @since 0.3.0
+     */
+    public CompletableFuture<Void> transformAsync(final OutputStream out, final ExecutorService executorService,
+                                                 final TransformOptions options, final JarEntryTransformer... transformers) {
+        final JarWriter writer = new JarWriter(new BufferedOutputStream(new UnclosableOutputStream(out)));
+        return this._transformAsync(writer, null, this, executorService, options, transformers, null, this::source);
+    }
 
-                    // Write the result to the new jar
-                    Files.write(outEntry, addition.getContents());
-                    Files.setLastModifiedTime(outEntry, FileTime.fromMillis(addition.getTime()));
-                }
-            }
+    private CompletableFuture<Void> _transformAsync(final Path export, final ExecutorService executorService,
+                                                    final TransformOptions options, final JarEntryTransformer[] transformers,
+                                                    final Function<JarPath, Transformation.Source> sources) {
+        final JarWriter writer;
+        try {
+            writer = new JarWriter(new BufferedOutputStream(Files.newOutputStream(export)));
         }
-        catch (final InterruptedException ex) {
-            throw new RuntimeException(ex);
+        catch (final IOException ex) {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
         }
-        catch (final ExecutionException ex) {
+        return this._transformAsync(writer, export, this, executorService, options, transformers, null, sources);
+    }
+
+    private CompletableFuture<Void> _transformAsync(final JarWriter writer, final Path export, final JarFile input,
+                                                    final ExecutorService executorService, final TransformOptions options,
+                                                    final JarEntryTransformer[] transformers, final TransformRun parent,
+                                                    final Function<JarPath, Transformation.Source> sources) {
+        final Transformation transformation = new Transformation(writer, input, options, transformers);
+        // Nested jars share the run of the outermost jar, which alone is given
+        // the transformers' additions
+        final TransformRun run = parent != null ? parent : this._track(new TransformRun(options));
+
+        final long start = System.nanoTime();
+        if (transformation.listener != null) transformation.listener.started(this);
+
+        // The manifest needs to be the first entry in the jar, so it is
+        // transformed ahead of the others
+        final CompletableFuture<Void> transformed = run.attach(CompletableFuture.runAsync(() -> {
             try {
-                throw ex.getCause();
-            }
-            catch (final IOException ioe) {
-                throw ioe;
+                run.run(MANIFEST_PATH, path -> this._transform(path, transformation, sources));
             }
-            catch (final Throwable cause) {
-                throw new RuntimeException(cause);
+            catch (final IOException ex) {
+                throw new CompletionException(ex);
             }
-        }
+        }, executorService))
+                .thenCompose(v -> run.attach(CompletableFuture.allOf(
+                        this._pipeline(executorService, options, transformers, run,
+                                path -> this._transform(path, transformation, sources), JarVisitOption.IGNORE_MANIFESTS),
+                        this._nested(executorService, options, run, (path, jar) -> this._transformNested(path, jar,
+                                executorService, options, transformers, run, transformation))
+                )))
+                .thenRun(() -> {
+                    // Add additions from transformers
+                    if (parent != null) return;
+                    try {
+                        transformation.writeAdditions();
+                    }
+                    catch (final IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                });
+        // Stop whatever else is running, should any stage fail - though the
+        // writer is only closed once the entries in flight have stopped
+        final CompletableFuture<Void> result = run.closeAfter(transformed, writer)
+                .thenRun(() -> {
+                    // A manifest only provided by a transformer's additions can't be
+                    // written first, so fall back to repacking the jar
+                    if (export != null && writer.isManifestMisplaced()) {
+                        try {
+                            final long repackStart = System.nanoTime();
+                            _repack(export);
+                            if (transformation.listener != null) {
+                                transformation.listener.repacked(export, System.nanoTime() - repackStart);
+                            }
+                        }
+                        catch (final IOException ex) {
+                            throw new CompletionException(ex);
+                        }
+                    }
+                })
+                .whenComplete((v, ex) -> {
+                    if (parent == null) run.finish();
+                    if (transformation.listener != null) {
+                        transformation.listener.completed(this, System.nanoTime() - start, FutureHelper.unwrap(ex));
+                    }
+                });
+        return parent == null ? _cancellable(result, run) : result;
     }
 
     /**
@@ -281,91 +575,645 @@ public void process(final JarEntryTransformer... transformers) throws IOExceptio
      */
     public void process(final ExecutorService executorService, final JarEntryTransformer... transformers)
             throws IOException {
-        final CompletableFuture<Void> future = CompletableFuture.allOf(this.walk().map(path -> CompletableFuture.runAsync(() -> {
+        this.process(executorService, new TransformOptions(), transformers);
+    }
+
+    /**
+     * Processes the JAR file, running the given {@link JarEntryTransformer jar entry transformers}
+     * for each path within the jar.
+     *
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @throws IOException Should an issue with reading occur
+     * @see #process(ExecutorService, JarEntryTransformer...)
+     * @since 0.3.0
+     */
+    public void process(final ExecutorService executorService, final TransformOptions options,
+                        final JarEntryTransformer... transformers) throws IOException {
+        FutureHelper.await(this._processAsync(executorService, options, transformers, null, this::source));
+    }
+
+    /**
+     * Analyses the JAR file, running the given {@link JarEntryTransformer analysers}
+     * for each path within the jar - as {@link #process(ExecutorService, TransformOptions, JarEntryTransformer...)}
+     * would - ahead of {@link Analysis#transform(Path, JarEntryTransformer...) transforming}
+     * it.
+     * <p>
+     * The entries read by the analysers are retained, up to the options'
+     * {@link TransformOptions#getRetainedBytes() retained bytes}, and handed to
+     * the transformers rather than being read again - so a tool that needs
+     * to see the whole jar before transforming it, such as one building
+     * mappings, only reads and decompresses each entry once. Each entry is
+     * released once it has been transformed, and classes read by the
+     * analysers aren't {@link #getClass(JarPath) cached}.
+     * <p>
+     * The entries of {@link TransformOptions#getNestedJars() nested jars} are
+     * read again, once transformed.
+     *
+     * @param executorService The executor service to use, for both analysing
+     *                        and transforming
+     * @param options The transform options to use, for both analysing and
+     *                transforming
+     * @param analyzers The transformers to analyse the jar with
+     * @return The analysis, to transform the jar with
+     * @throws IOException Should an issue with reading occur
+     * @since 0.3.0
+     */
+    public Analysis analyze(final ExecutorService executorService, final TransformOptions options,
+                            final JarEntryTransformer... analyzers) throws IOException {
+        final Analysis analysis = new Analysis(executorService, options);
+        FutureHelper.await(this._processAsync(executorService, options, analyzers, null, analysis::retain));
+        return analysis;
+    }
+
+    /**
+     * Analyses the JAR file, as {@link #analyze(ExecutorService, TransformOptions, JarEntryTransformer...)}
+     * - without blocking the calling thread.
+     *
+     * @param executorService The executor service to use, for both analysing
+     *                        and transforming
+     * @param options The transform options to use, for both analysing and
+     *                transforming
+     * @param analyzers The transformers to analyse the jar with
+     * @return A future, completed with the analysis once every entry has been
+     *         analysed - which cancels the analysis, should it be cancelled
+     * @since 0.3.0
+     */
+    public CompletableFuture<Analysis> analyzeAsync(final ExecutorService executorService, final TransformOptions options,
+                                                    final JarEntryTransformer... analyzers) {
+        final Analysis analysis = new Analysis(executorService, options);
+        final CompletableFuture<Void> processed = this._processAsync(executorService, options, analyzers, null,
+                analysis::retain);
+        final CompletableFuture<Analysis> result = processed.thenApply(v -> analysis);
+        result.whenComplete((v, ex) -> {
+            if (ex instanceof CancellationException) processed.cancel(true);
+        });
+        return result;
+    }
+
+    private CompletableFuture<Void> _processAsync(final ExecutorService executorService, final TransformOptions options,
+                                                  final JarEntryTransformer[] transformers, final TransformRun parent,
+                                                  final Function<JarPath, Transformation.Source> sources) {
+        final TransformRun run = parent != null ? parent : this._track(new TransformRun(options));
+        final TransformListener listener = options.getListener();
+        final long start = System.nanoTime();
+        if (listener != null) listener.started(this);
+
+        final CompletableFuture<Void> processed = run.attach(CompletableFuture.allOf(
+                this._pipeline(executorService, options, transformers, run, path -> Transformation.transform(path,
+                        sources.apply(path), listener, options.isFuseClassVisitors(), transformers)),
+                this._nested(executorService, options, run, (path, jar) -> jar._processAsync(executorService, options,
+                        transformers, run, jar::source))
+        ));
+        // Should any stage fail, the run is cancelled - and only completes
+        // once the entries in flight have stopped reading from the jar
+        final CompletableFuture<Void> result = run.closeAfter(processed, () -> {}).whenComplete((v, ex) -> {
+            if (parent == null) run.finish();
+            if (listener != null) listener.completed(this, System.nanoTime() - start, FutureHelper.unwrap(ex));
+        });
+        return parent == null ? _cancellable(result, run) : result;
+    }
+
+    @Override
+    public byte[] get(final String klass) {
+        final JarClassEntry entry = this.getClass(klass + ".class");
+        return entry == null ? null : entry.getContents();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.cache.clear();
+        for (final JarFile jar : this.nestedJars.values()) {
+            jar.close();
+        }
+        this.nestedJars.clear();
+        this.directory.close();
+    }
+
+    /**
+     * Gets a future completed once the runs over the JAR file have drained - as
+     * a run that has been cancelled completes straight away, while the entries
+     * it had in flight may still be reading from the jar.
+     *
+     * @return A future, completed once the runs have drained
+     * @since 0.3.0
+     */
+    public CompletableFuture<Void> drained() {
+        return CompletableFuture.allOf(this.runs.stream()
+                .map(TransformRun::drained)
+                .toArray(CompletableFuture<?>[]::new)
+        );
+    }
+
+    /**
+     * Closes the JAR file once the runs over it have {@link #drained() drained}.
+     *
+     * @return A future, completed once the jar has been closed
+     * @since 0.3.0
+     */
+    public CompletableFuture<Void> closeAsync() {
+        return this.drained().thenRun(() -> {
             try {
-                // Get the entry
-                AbstractJarEntry entry = this.get(path);
-                if (entry == null) return;
-
-                // Transform the entry
-                for (final JarEntryTransformer transformer : transformers) {
-                    entry = entry.accept(transformer);
-                    if (entry == null) return;
-                }
+                this.close();
             }
             catch (final IOException ex) {
                 throw new CompletionException(ex);
             }
-        }, executorService)).toArray(CompletableFuture[]::new));
+        });
+    }
+
+    private TransformRun _track(final TransformRun run) {
+        this.runs.add(run);
+        run.drained().thenRun(() -> this.runs.remove(run));
+        return run;
+    }
 
+    private CompletableFuture<Void> _pipeline(final ExecutorService executorService, final TransformOptions options,
+                                              final JarEntryTransformer[] transformers, final TransformRun run,
+                                              final EntryPipeline.EntryTask<JarPath> task, final JarVisitOption... visitOptions) {
+        // Nested jars are transformed as jars of their own, rather than as
+        // entries of this one
+        final JarPathFilter nested = options.getNestedJars();
+        final Iterator<JarPath> paths;
         try {
-            future.get();
+            final Stream<JarPath> stream = this.walk(visitOptions).filter(path -> nested == null || !nested.matches(path));
+            paths = options.isLargestFirst() ? this._largestFirst(stream, transformers) : stream.iterator();
         }
-        catch (final InterruptedException ex) {
-            throw new RuntimeException(ex);
+        catch (final IOException ex) {
+            throw new CompletionException(ex);
         }
-        catch (final ExecutionException ex) {
-            try {
-                throw ex.getCause();
-            }
-            catch (final IOException ioe) {
-                throw ioe;
-            }
-            catch (final Throwable cause) {
-                throw new RuntimeException(cause);
-            }
+
+        return new EntryPipeline<>(paths, this::_size, executorService, options, task, run).start();
+    }
+
+    private Iterator<JarPath> _largestFirst(final Stream<JarPath> stream, final JarEntryTransformer[] transformers) {
+        // Only the paths, and their costs, are held - the entries themselves
+        // are still read as they're drawn
+        final JarPath[] paths = stream.toArray(JarPath[]::new);
+        final long[] costs = new long[paths.length];
+        final Integer[] order = new Integer[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            costs[i] = Transformation.cost(paths[i], this._size(paths[i]), transformers);
+            order[i] = i;
         }
+        Arrays.sort(order, (a, b) -> Long.compare(costs[b], costs[a]));
+        return Arrays.stream(order).map(i -> paths[i]).iterator();
     }
 
-    @Override
-    public byte[] get(final String klass) {
-        final JarClassEntry entry = this.getClass(klass + ".class");
-        return entry == null ? null : entry.getContents();
+    private long _size(final JarPath path) {
+        final int entry = this.directory.indexOf(path);
+        return entry == -1 ? 0 : this.directory.getSize(entry);
     }
 
-    @Override
-    public void close() throws IOException {
-        this.fs.close();
+    private CompletableFuture<Void> _nested(final ExecutorService executorService, final TransformOptions options,
+                                            final TransformRun run, final NestedTask task) {
+        final JarPathFilter nested = options.getNestedJars();
+        if (nested == null) return CompletableFuture.completedFuture(null);
+
+        final List<JarPath> paths;
+        try (final Stream<JarPath> stream = this.walk(nested)) {
+            paths = stream.collect(Collectors.toList());
+        }
+        catch (final IOException ex) {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
+        }
+
+        // Each nested jar is opened on the executor, and its entries run
+        // through a pipeline of their own - alongside those of this jar
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            final JarPath path = paths.get(i);
+            futures[i] = CompletableFuture.supplyAsync(() -> {
+                if (!run.enter()) throw new CompletionException(run.getFailure());
+                try {
+                    // A nested jar that has already been got - say, to put it
+                    // on the classpath - is reused
+                    final JarFile cached = this.nestedJars.get(path.getName());
+                    return cached != null ? cached : this._openNested(path);
+                }
+                catch (final IOException ex) {
+                    throw new CompletionException(ex);
+                }
+                finally {
+                    run.exit();
+                }
+            }, executorService).thenCompose(jar -> {
+                // Otherwise, it is only held open - with its inflated contents,
+                // and cached classes - until it has been transformed, rather
+                // than for as long as this jar is
+                final CompletableFuture<Void> future = task.run(path, jar);
+                return this.nestedJars.get(path.getName()) == jar ? future : run.closeAfter(future, jar);
+            });
+        }
+        return CompletableFuture.allOf(futures);
     }
 
-    private static JarManifestEntry _readManifest(final Path entry) throws IOException {
-        final long time = Files.getLastModifiedTime(entry).toMillis();
+    private CompletableFuture<Void> _transformNested(final JarPath path, final JarFile jar,
+                                                     final ExecutorService executorService, final TransformOptions options,
+                                                     final JarEntryTransformer[] transformers, final TransformRun run,
+                                                     final Transformation transformation) {
+        // Keep the nested jar's compression, as jar-in-jar loaders may well
+        // expect it to be stored
+        final int entry = this.directory.indexOf(path);
+        final long time = this.directory.getTime(entry);
+        final boolean stored = this.directory.getMethod(entry) == ZipEntry.STORED;
 
-        try (final InputStream is = Files.newInputStream(entry)) {
-            return new JarManifestEntry(time, new Manifest(is));
+        // The nested jar is held in memory as it is transformed, unless the
+        // memory budget has no room for it - in which case it is spilled to
+        // disk, compressed as it will be written
+        final MemoryBudget budget = options.getMemoryBudget();
+        final long weight = this.directory.getSize(entry);
+        final boolean reserved = budget != null && budget.tryReserve(weight);
+        final OutputStream out;
+        try {
+            out = budget == null || reserved || budget.getSpillDirectory() == null ?
+                    new ByteArrayOutputStream() :
+                    new SpilledEntry(budget.getSpillDirectory(), stored || transformation.isStored(path, ZipEntry.DEFLATED),
+                            transformation.level);
+        }
+        catch (final IOException ex) {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
         }
+
+        return jar._transformAsync(new JarWriter(out), null, transformation.input, executorService, options, transformers,
+                run, jar::source)
+                .thenRun(() -> {
+                    // The parent's writer is only closed once this has
+                    // finished, should the run be cancelled meanwhile
+                    if (!run.enter()) throw new CompletionException(run.getFailure());
+                    try {
+                        if (out instanceof SpilledEntry) {
+                            final SpilledEntry spilled = (SpilledEntry) out;
+                            transformation.writer.write(spilled.encode(path.getName(), time));
+                            budget.spilled(spilled.size());
+                        }
+                        else {
+                            final byte[] contents = ((ByteArrayOutputStream) out).toByteArray();
+                            transformation.writer.write(stored ?
+                                    JarWriter.store(path.getName(), time, contents) :
+                                    transformation.encode(path.getName(), time, contents, ZipEntry.DEFLATED));
+                        }
+                    }
+                    catch (final IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                    finally {
+                        run.exit();
+                    }
+                })
+                .whenComplete((v, ex) -> {
+                    if (reserved) budget.release(weight);
+                    if (out instanceof SpilledEntry) ((SpilledEntry) out).delete();
+                });
     }
 
-    private static JarServiceProviderConfigurationEntry _readServiceConfig(final Path entry) throws IOException {
-        final String name = entry.toString().substring(1); // Remove '/' prefix
-        final long time = Files.getLastModifiedTime(entry).toMillis();
+    private void _transform(final JarPath path, final Transformation transformation,
+                            final Function<JarPath, Transformation.Source> sources) throws IOException {
+        final int index = this.directory.indexOf(path);
+        if (index == -1) return;
 
-        try (final InputStream is = Files.newInputStream(entry)) {
-            final String serviceName = name.substring("META-INF/services/".length());
+        final Transformation.Source source = sources.apply(path);
+        try {
+            transformation.transform(path, source);
+        }
+        finally {
+            source.release();
+        }
+    }
 
-            final ServiceProviderConfiguration config = new ServiceProviderConfiguration(serviceName);
-            config.read(is);
-            return new JarServiceProviderConfigurationEntry(time, config);
+    private Transformation.Source source(final JarPath path) {
+        return new Transformation.Source() {
+            @Override
+            public EncodedEntry raw() throws IOException {
+                return JarFile.this.directory.getEncoded(JarFile.this.directory.indexOf(path));
+            }
+
+            @Override
+            public int method() {
+                return JarFile.this.directory.getMethod(JarFile.this.directory.indexOf(path));
+            }
+
+            @Override
+            public AbstractJarEntry read() throws IOException {
+                return JarFile.this.get(path);
+            }
+
+            @Override
+            public long size() {
+                final int index = JarFile.this.directory.indexOf(path);
+                return index == -1 ? 0 : JarFile.this.directory.getSize(index);
+            }
+        };
+    }
+
+    private AbstractJarEntry _read(final int entry) throws IOException {
+        if (this.directory.getPath(entry).getType() == JarEntryType.CLASS) return this._readClass(entry);
+        return EncodedEntry.entry(this.directory.getName(entry), this.directory.getTime(entry), this.directory.read(entry));
+    }
+
+    private JarClassEntry _readClass(final int entry) throws IOException {
+        final String name = this.directory.getName(entry);
+        final long time = this.directory.getTime(entry);
+        return new JarClassEntry(name, time, this.directory.read(entry));
+    }
+
+    private static void _repack(final Path export) throws IOException {
+        // The entries are copied as they were written, without being
+        // recompressed - only the manifest is moved. The jar is read into
+        // memory, as a mapping would hold it open until collected
+        final CentralDirectory directory = CentralDirectory.read(ByteBuffer.wrap(Files.readAllBytes(export)));
+        final Path temp = Files.createTempFile(export.toAbsolutePath().getParent(), "atlas", "jar");
+        try {
+            try (final JarWriter writer = new JarWriter(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                final int manifest = directory.indexOf(JarWriter.MANIFEST_NAME);
+                if (manifest != -1) writer.write(directory.getEncoded(manifest));
+                for (int i = 0; i < directory.size(); i++) {
+                    if (i == manifest || directory.isDirectory(i) || directory.isShadowed(i)) continue;
+                    writer.write(directory.getEncoded(i));
+                }
+            }
+            Files.move(temp, export, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
         }
     }
 
-    private static JarClassEntry _readClass(final Path entry) throws IOException {
-        final String name = entry.toString().substring(1); // Remove '/' prefix
-        final long time = Files.getLastModifiedTime(entry).toMillis();
-        return new JarClassEntry(name, time, Files.readAllBytes(entry));
+    private static <T> CompletableFuture<T> _cancellable(final CompletableFuture<T> future, final TransformRun run) {
+        // Cancelling the future cancels the run
+        future.whenComplete((v, ex) -> {
+            if (ex instanceof CancellationException) run.cancel(ex);
+        });
+        return future;
     }
 
-    private static JarResourceEntry _readResource(final Path entry) throws IOException {
-        final String name = entry.toString().substring(1); // Remove '/' prefix
-        final long time = Files.getLastModifiedTime(entry).toMillis();
-        return new JarResourceEntry(name, time, Files.readAllBytes(entry));
+    private static EnumSet<JarEntryType> _types(final JarVisitOption[] options) {
+        final EnumSet<JarEntryType> types = EnumSet.allOf(JarEntryType.class);
+        for (final JarVisitOption option : options) {
+            switch (option) {
+                case IGNORE_MANIFESTS:
+                    types.remove(JarEntryType.MANIFEST);
+                    break;
+                case IGNORE_SERVICE_PROVIDER_CONFIGURATIONS:
+                    types.remove(JarEntryType.SERVICE_PROVIDER_CONFIGURATION);
+                    break;
+                case IGNORE_CLASSES:
+                    types.remove(JarEntryType.CLASS);
+                    break;
+                case IGNORE_RESOURCES:
+                    types.remove(JarEntryType.RESOURCE);
+                    break;
+            }
+        }
+        return types;
     }
 
-    private static <T> boolean _contains(final T entry, final T[] in) {
-        for (final T i : in) {
-            if (i == entry) return true;
+    /**
+     * A JAR file that has been {@link #analyze(ExecutorService, TransformOptions, JarEntryTransformer...) analysed},
+     * retaining the entries its analysers read until they are transformed.
+     * <p>
+     * An analysis can only be transformed once, should it not be transformed
+     * at all the retained entries are released along with the analysis - or
+     * once {@link #discard() discarded}, which returns them to any memory
+     * budget.
+     *
+     * @author Jamie Mansfield
+     * @since 0.3.0
+     */
+    public final class Analysis {
+
+        private final ExecutorService executorService;
+        private final TransformOptions options;
+        private final AtomicReferenceArray<AbstractJarEntry> entries;
+        private final AtomicLong retained = new AtomicLong();
+        private final AtomicBoolean transformed = new AtomicBoolean();
+
+        Analysis(final ExecutorService executorService, final TransformOptions options) {
+            this.executorService = executorService;
+            this.options = options;
+            this.entries = new AtomicReferenceArray<>(JarFile.this.directory.size());
+        }
+
+        /**
+         * Gets the (uncompressed) number of bytes of entries currently
+         * retained, that are yet to be transformed.
+         *
+         * @return The retained bytes
+         */
+        public long getRetainedBytes() {
+            return this.retained.get();
+        }
+
+        /**
+         * Transforms the JAR file, with the given {@link JarEntryTransformer}s,
+         * writing to the given output JAR path.
+         *
+         * @param export The JAR path to write to
+         * @param transformers The transformers to use
+         * @throws IOException Should an issue with reading or writing occur
+         * @throws IllegalStateException Should the analysis have already been transformed
+         * @see JarFile#transform(Path, ExecutorService, TransformOptions, JarEntryTransformer...)
+         */
+        public void transform(final Path export, final JarEntryTransformer... transformers) throws IOException {
+            FutureHelper.await(this.transformAsync(export, transformers));
+        }
+
+        /**
+         * Transforms the JAR file, with the given {@link JarEntryTransformer}s,
+         * writing to the given output JAR path - without blocking the calling
+         * thread.
+         *
+         * @param export The JAR path to write to
+         * @param transformers The transformers to use
+         * @return A future, completed once the output has been written - which
+         *         cancels the transformation, should it be cancelled
+         * @throws IllegalStateException Should the analysis have already been transformed
+         * @see JarFile#transformAsync(Path, ExecutorService, TransformOptions, JarEntryTransformer...)
+         */
+        public CompletableFuture<Void> transformAsync(final Path export, final JarEntryTransformer... transformers) {
+            this.consume();
+            return this.released(JarFile.this._transformAsync(export, this.executorService, this.options, transformers,
+                    this::take));
+        }
+
+        /**
+         * Transforms the JAR file, with the given {@link JarEntryTransformer}s,
+         * writing to the given output stream.
+         *
+         * @param out The output stream to write to, which will not be closed
+         * @param transformers The transformers to use
+         * @throws IOException Should an issue with reading or writing occur
+         * @throws IllegalStateException Should the analysis have already been transformed
+         * @see JarFile#transform(OutputStream, ExecutorService, TransformOptions, JarEntryTransformer...)
+         */
+        public void transform(final OutputStream out, final JarEntryTransformer... transformers) throws IOException {
+            FutureHelper.await(this.transformAsync(out, transformers));
+        }
+
+        /**
+         * Transforms the JAR file, with the given {@link JarEntryTransformer}s,
+         * writing to the given output stream - without blocking the calling
+         * thread.
+         *
+         * @param out The output stream to write to, which will not be closed
+         * @param transformers The transformers to use
+         * @return A future, completed once the output has been written - which
+         *         cancels the transformation, should it be cancelled
+         * @throws IllegalStateException Should the analysis have already been transformed
+         * @see JarFile#transformAsync(OutputStream, ExecutorService, TransformOptions, JarEntryTransformer...)
+         */
+        public CompletableFuture<Void> transformAsync(final OutputStream out, final JarEntryTransformer... transformers) {
+            this.consume();
+            final JarWriter writer = new JarWriter(new BufferedOutputStream(new UnclosableOutputStream(out)));
+            return this.released(JarFile.this._transformAsync(writer, null, JarFile.this, this.executorService,
+                    this.options, transformers, null, this::take));
+        }
+
+        /**
+         * Releases the retained entries, without transforming the JAR file -
+         * returning them to the {@link TransformOptions#getMemoryBudget() memory budget},
+         * should there be one.
+         *
+         * @throws IllegalStateException Should the analysis have already been transformed
+         */
+        public void discard() {
+            this.consume();
+            this.releaseAll();
+        }
+
+        private void consume() {
+            if (!this.transformed.compareAndSet(false, true)) {
+                throw new IllegalStateException("An analysis can only be transformed once");
+            }
+        }
+
+        private CompletableFuture<Void> released(final CompletableFuture<Void> future) {
+            // Whatever is left, should the transformation fail, is released
+            // with it - before the caller hears of it
+            final CompletableFuture<Void> result = future.whenComplete((v, ex) -> this.releaseAll());
+            result.whenComplete((v, ex) -> {
+                if (ex instanceof CancellationException) future.cancel(true);
+            });
+            return result;
         }
-        return false;
+
+        private void releaseAll() {
+            // Only what is still held is freed, as entries may be released by
+            // the tasks of a cancelled transformation meanwhile
+            for (int i = 0; i < this.entries.length(); i++) {
+                this.release(i);
+            }
+        }
+
+        private void release(final int index) {
+            if (this.entries.getAndSet(index, null) != null) {
+                this.free(JarFile.this.directory.getSize(index));
+            }
+        }
+
+        private void free(final long bytes) {
+            this.retained.addAndGet(-bytes);
+            final MemoryBudget budget = this.options.getMemoryBudget();
+            if (budget != null) budget.release(bytes);
+        }
+
+        /**
+         * Gets the source of the given entry while analysing, which retains
+         * the entry as it is read.
+         */
+        private Transformation.Source retain(final JarPath path) {
+            final Transformation.Source source = JarFile.this.source(path);
+            return new Transformation.Source() {
+                @Override
+                public EncodedEntry raw() throws IOException {
+                    return source.raw();
+                }
+
+                @Override
+                public int method() {
+                    return source.method();
+                }
+
+                @Override
+                public AbstractJarEntry read() throws IOException {
+                    final int index = JarFile.this.directory.indexOf(path);
+                    if (index == -1) return null;
+
+                    // The entry is read without being cached, as it is held
+                    // here until transformed
+                    final AbstractJarEntry entry = JarFile.this._read(index);
+                    final long size = JarFile.this.directory.getSize(index);
+                    final MemoryBudget budget = Analysis.this.options.getMemoryBudget();
+                    if (Analysis.this.retained.addAndGet(size) <= Analysis.this.options.getRetainedBytes()
+                            && (budget == null || budget.tryReserve(size))) {
+                        // Should the entry have been retained already, the
+                        // bytes are returned rather than counted twice
+                        if (!Analysis.this.entries.compareAndSet(index, null, entry)) Analysis.this.free(size);
+                    }
+                    else {
+                        Analysis.this.retained.addAndGet(-size);
+                    }
+                    return entry;
+                }
+
+                @Override
+                public long size() {
+                    return source.size();
+                }
+            };
+        }
+
+        /**
+         * Gets the source of the given entry while transforming, which hands
+         * over the retained entry - and releases it, once transformed.
+         */
+        private Transformation.Source take(final JarPath path) {
+            final Transformation.Source source = JarFile.this.source(path);
+            final int index = JarFile.this.directory.indexOf(path);
+            return new Transformation.Source() {
+                @Override
+                public EncodedEntry raw() throws IOException {
+                    return source.raw();
+                }
+
+                @Override
+                public int method() {
+                    return source.method();
+                }
+
+                @Override
+                public AbstractJarEntry read() throws IOException {
+                    final AbstractJarEntry entry = index == -1 ? null : Analysis.this.entries.get(index);
+                    return entry != null ? entry : source.read();
+                }
+
+                @Override
+                public long size() {
+                    return source.size();
+                }
+
+                @Override
+                public void release() {
+                    if (index != -1) Analysis.this.release(index);
+                }
+            };
+        }
+
+    }
+
+    /**
+     * A task run for each nested jar.
+     */
+    @FunctionalInterface
+    private interface NestedTask {
+
+        CompletableFuture<Void> run(final JarPath path, final JarFile jar);
+
     }
 
 }
@@ -6,8 +6,6 @@
 
 package org.cadixdev.atlas.jar;
 
-import java.util.Objects;
-
 /**
  * A path to an entry within a {@link JarFile JAR file}.
  *
@@ -17,9 +15,24 @@
 public class JarPath {
 
     private final String name;
+    private final int hash;
+    private final JarEntryType type;
 
     public JarPath(final String name) {
+        this(name, JarEntryType.of(name));
+    }
+
+    /**
+     * Creates a path of an already classified entry, as those held by a
+     * jar's entry table are.
+     *
+     * @param name The fully-qualified name
+     * @param type The type of the entry
+     */
+    JarPath(final String name, final JarEntryType type) {
         this.name = name;
+        this.hash = name.hashCode();
+        this.type = type;
     }
 
     /**
@@ -31,18 +44,33 @@ public String getName() {
         return this.name;
     }
 
+    /**
+     * Gets the type of the entry at the path.
+     *
+     * @return The entry type
+     * @since 0.3.0
+     */
+    public JarEntryType getType() {
+        return this.type;
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) return true;
         if (!(obj instanceof JarPath)) return false;
         final JarPath that = (JarPath) obj;
 
-        return Objects.equals(this.name, that.name);
+        return this.hash == that.hash && this.name.equals(that.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.name);
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
     }
 
 }
@@ -0,0 +1,212 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A filter of the entries {@link JarFile#walk(JarPathFilter, JarVisitOption...) walked}
+ * within a jar.
+ * <p>
+ * Filters carry the literal prefix that every entry they match starts with,
+ * such that a walk need only visit the entries within that range of the
+ * jar - rather than testing each of them in turn.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class JarPathFilter {
+
+    private static final JarPathFilter ALL = new JarPathFilter("", null);
+
+    /**
+     * Gets the filter that matches every entry.
+     *
+     * @return The filter
+     */
+    public static JarPathFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Creates a filter matching the entries whose names begin with the given
+     * prefix.
+     *
+     * @param prefix The prefix of the entry names, for example {@code com/foo/Bar}
+     * @return The filter
+     */
+    public static JarPathFilter prefix(final String prefix) {
+        return new JarPathFilter(prefix, null);
+    }
+
+    /**
+     * Creates a filter matching the entries within the given package, or any
+     * of its sub-packages.
+     *
+     * @param pkg The package, either as {@code com.foo} or {@code com/foo}
+     * @return The filter
+     */
+    public static JarPathFilter inPackage(final String pkg) {
+        final String name = pkg.replace('.', '/');
+        return prefix(name.isEmpty() || name.endsWith("/") ? name : name + "/");
+    }
+
+    /**
+     * Creates a filter matching the entries whose names match the given glob.
+     * <p>
+     * Within the glob, {@code *} matches any run of characters within a single
+     * directory, {@code **} matches any run of characters across directories,
+     * and {@code ?} matches a single character other than {@code /}. A
+     * <code>**&#47;</code> matches zero or more directories, such that
+     * <code>com/**&#47;*.class</code> also matches {@code com/Foo.class}.
+     *
+     * @param glob The glob, for example {@code com/foo/**.class}
+     * @return The filter
+     */
+    public static JarPathFilter glob(final String glob) {
+        final Pattern pattern = _compile(glob);
+        return new JarPathFilter(_literalPrefix(glob), path -> pattern.matcher(path.getName()).matches());
+    }
+
+    /**
+     * Creates a filter matching the entries accepted by the given predicate.
+     * <p>
+     * The predicate is tested against every entry of the jar, combining it
+     * with a {@link #prefix(String) prefix} or {@link #inPackage(String) package}
+     * filter through {@link #and(JarPathFilter)} will narrow those visited.
+     *
+     * @param predicate The predicate
+     * @return The filter
+     */
+    public static JarPathFilter matching(final Predicate<JarPath> predicate) {
+        return new JarPathFilter("", Objects.requireNonNull(predicate, "predicate"));
+    }
+
+    private final String prefix;
+    private final Predicate<JarPath> predicate;
+
+    private JarPathFilter(final String prefix, final Predicate<JarPath> predicate) {
+        this.prefix = Objects.requireNonNull(prefix, "prefix");
+        this.predicate = predicate;
+    }
+
+    /**
+     * Creates a filter matching the entries that both this, and the given,
+     * filter match.
+     *
+     * @param other The other filter
+     * @return The combined filter
+     */
+    public JarPathFilter and(final JarPathFilter other) {
+        final String prefix;
+        if (this.prefix.startsWith(other.prefix)) {
+            prefix = this.prefix;
+        }
+        else if (other.prefix.startsWith(this.prefix)) {
+            prefix = other.prefix;
+        }
+        else {
+            // The two prefixes are disjoint, so nothing can match
+            return new JarPathFilter(this.prefix, path -> false);
+        }
+
+        final Predicate<JarPath> predicate;
+        if (this.predicate == null) {
+            predicate = other.predicate;
+        }
+        else if (other.predicate == null) {
+            predicate = this.predicate;
+        }
+        else {
+            predicate = this.predicate.and(other.predicate);
+        }
+        return new JarPathFilter(prefix, predicate);
+    }
+
+    /**
+     * Gets the literal prefix that every matched entry name begins with.
+     *
+     * @return The prefix, which may be empty
+     */
+    String getPrefix() {
+        return this.prefix;
+    }
+
+    /**
+     * Tests the given path.
+     *
+     * @param path The path
+     * @return {@code true} if the path is matched
+     */
+    boolean matches(final JarPath path) {
+        return path.getName().startsWith(this.prefix) && this.test(path);
+    }
+
+    /**
+     * Tests the given path, which is known to begin with the
+     * {@link #getPrefix() prefix}.
+     *
+     * @param path The path
+     * @return {@code true} if the path is matched
+     */
+    boolean test(final JarPath path) {
+        return this.predicate == null || this.predicate.test(path);
+    }
+
+    private static String _literalPrefix(final String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') return glob.substring(0, i);
+        }
+        return glob;
+    }
+
+    private static Pattern _compile(final String glob) {
+        final StringBuilder regex = new StringBuilder(glob.length() + 16);
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            final char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            if (literal.length() != 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+
+            if (c == '?') {
+                regex.append("[^/]");
+                i++;
+            }
+            else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                    regex.append("(?:.*/)?");
+                    i += 3;
+                }
+                else {
+                    regex.append(".*");
+                    i += 2;
+                }
+            }
+            else {
+                regex.append("[^/]*");
+                i++;
+            }
+        }
+        if (literal.length() != 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.atlas.util.FutureHelper;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A JAR read sequentially from a stream, that is transformed as its entries
+ * arrive - without ever being written to disk.
+ * <p>
+ * Entries are read from the stream, transformed in parallel, and written to
+ * the output as they complete. So, the output begins streaming while the
+ * input is still arriving. Entries that none of the transformers
+ * {@link ScopedJarEntryTransformer apply to} are written as they were read,
+ * without being recompressed - though every class is still inflated, once,
+ * for its inheritance information, which the transformers of other classes
+ * may need.
+ * <p>
+ * As a stream can only be read once, so too can it only be transformed once.
+ * The inheritance information of the classes that have been read so far is
+ * {@link #provide(String) provided} - that of those yet to arrive isn't. Only
+ * that information is kept, not the classes themselves, so the stream is
+ * never held in memory.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class JarStream implements InheritanceProvider {
+
+    private final ZipStreamReader reader;
+    private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+    private final AtomicBoolean consumed = new AtomicBoolean();
+    private volatile TransformRun run;
+
+    /**
+     * Creates a JAR stream, reading from the given input stream.
+     * <p>
+     * The input stream isn't closed by the JAR stream.
+     *
+     * @param in The input stream
+     */
+    public JarStream(final InputStream in) {
+        this.reader = new ZipStreamReader(in);
+    }
+
+    /**
+     * Creates a JAR stream, reading from the given channel.
+     * <p>
+     * The channel isn't closed by the JAR stream.
+     *
+     * @param in The channel
+     */
+    public JarStream(final ReadableByteChannel in) {
+        this(Channels.newInputStream(in));
+    }
+
+    /**
+     * Transforms the JAR, with the given {@link JarEntryTransformer}s, writing
+     * to the given output stream.
+     *
+     * @param out The output stream to write to, which will not be closed
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @throws IOException Should an issue with reading or writing occur
+     * @throws IllegalStateException Should the JAR stream have already been transformed
+     */
+    public void transform(final OutputStream out, final ExecutorService executorService, final TransformOptions options,
+                          final JarEntryTransformer... transformers) throws IOException {
+        FutureHelper.await(this.transformAsync(out, executorService, options, transformers));
+    }
+
+    /**
+     * Transforms the JAR, with the given {@link JarEntryTransformer}s, writing
+     * to the given channel.
+     *
+     * @param out The channel to write to, which will not be closed
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @throws IOException Should an issue with reading or writing occur
+     * @throws IllegalStateException Should the JAR stream have already been transformed
+     */
+    public void transform(final WritableByteChannel out, final ExecutorService executorService,
+                          final TransformOptions options, final JarEntryTransformer... transformers) throws IOException {
+        this.transform(Channels.newOutputStream(out), executorService, options, transformers);
+    }
+
+    /**
+     * Transforms the JAR, with the given {@link JarEntryTransformer}s, writing
+     * to the given output stream - without blocking the calling thread.
+     * <p>
+     * The input is read by the executor service's threads, as they draw
+     * entries to transform.
+     * <p>
+     * The manifest is written first should it be the first entry of the
+     * input, as it is in any jar written by the {@code jar} tool or
+     * {@link java.util.jar.JarOutputStream}. Otherwise, it is written where it
+     * arrives - as the output can't be repacked.
+     *
+     * @param out The output stream to write to, which will not be closed
+     * @param executorService The executor service to use
+     * @param options The transform options to use
+     * @param transformers The transformers to use
+     * @return A future, completed once the output has been written - which
+     *         cancels the transformation, should it be cancelled
+     * @throws IllegalStateException Should the JAR stream have already been transformed
+     */
+    public CompletableFuture<Void> transformAsync(final OutputStream out, final ExecutorService executorService,
+                                                 final TransformOptions options, final JarEntryTransformer... transformers) {
+        if (!this.consumed.compareAndSet(false, true)) {
+            throw new IllegalStateException("A JAR stream can only be transformed once");
+        }
+
+        final JarWriter writer = new JarWriter(new BufferedOutputStream(new UnclosableOutputStream(out)));
+        // The stream's entries aren't known up front, so results are only
+        // cached should no transformer depend on them
+        final Transformation transformation = new Transformation(writer, null, options, transformers);
+        final TransformRun run = this.run = new TransformRun(options);
+
+        final long start = System.nanoTime();
+        if (transformation.listener != null) transformation.listener.started(null);
+
+        final CompletableFuture<Void> transformed = run.attach(CompletableFuture.supplyAsync(() -> {
+            // The manifest needs to be the first entry in the jar, so should
+            // it be the first entry read, it is transformed ahead of the others
+            if (!run.enter()) throw new CompletionException(run.getFailure());
+            try {
+                final EncodedEntry first = this.reader.hasNext() ? this.reader.next() : null;
+                if (first == null) return null;
+                if (!JarWriter.MANIFEST_NAME.equals(first.name)) return first;
+
+                run.run(first, entry -> transformation.transform(new JarPath(entry.name), this.source(entry)));
+                return null;
+            }
+            catch (final IOException ex) {
+                throw new CompletionException(ex);
+            }
+            finally {
+                run.exit();
+            }
+        }, executorService))
+                .thenCompose(first -> new EntryPipeline<>(_prepend(first, this.reader), entry -> entry.size,
+                        executorService, options, entry -> transformation.transform(new JarPath(entry.name),
+                        this.source(entry)), run).start())
+                .thenRun(() -> {
+                    // Add additions from transformers
+                    try {
+                        transformation.writeAdditions();
+                    }
+                    catch (final IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                });
+        // Stop whatever else is running, should any stage fail - though the
+        // writer is only closed once the entries in flight have stopped
+        final CompletableFuture<Void> result = run.closeAfter(transformed, writer)
+                .whenComplete((v, ex) -> {
+                    run.finish();
+                    if (transformation.listener != null) {
+                        transformation.listener.completed(null, System.nanoTime() - start, FutureHelper.unwrap(ex));
+                    }
+                });
+
+        // Cancelling the future cancels the run
+        result.whenComplete((v, ex) -> {
+            if (ex instanceof CancellationException) run.cancel(ex);
+        });
+        return result;
+    }
+
+    /**
+     * Gets a future completed once the stream's transformation has drained - as
+     * a transformation that has been cancelled completes straight away, while
+     * the entries it had in flight may still be running.
+     *
+     * @return The future, completed straight away should the stream not have
+     *         been transformed
+     */
+    public CompletableFuture<Void> drained() {
+        final TransformRun run = this.run;
+        return run == null ? CompletableFuture.completedFuture(null) : run.drained();
+    }
+
+    /**
+     * Gets the inheritance information of the class of the given name, should
+     * it have been read from the stream yet.
+     *
+     * @param klass The name of the class
+     * @return The class information, or {@link Optional#empty()} if not (yet)
+     *         present
+     */
+    @Override
+    public Optional<ClassInfo> provide(final String klass) {
+        return Optional.ofNullable(this.classes.get(klass));
+    }
+
+    private Transformation.Source source(final EncodedEntry entry) throws IOException {
+        if (JarEntryType.of(entry.name) != JarEntryType.CLASS) return Transformation.Source.of(entry);
+
+        // Remember the inheritance information of each class as it is read,
+        // so it can be provided - the class is only inflated the once, for
+        // that and its transformation
+        final byte[] contents = CentralDirectory.inflate(entry.name, entry.method, entry.size, entry.data());
+        final String name = entry.name.substring(0, entry.name.length() - ".class".length());
+        final ClassInfo info = InheritanceIndex.info(name, contents);
+        if (info != null) this.classes.put(name, info);
+
+        return new Transformation.Source() {
+            @Override
+            public EncodedEntry raw() {
+                return entry;
+            }
+
+            @Override
+            public int method() {
+                return entry.method;
+            }
+
+            @Override
+            public AbstractJarEntry read() {
+                return new JarClassEntry(entry.name, entry.time, contents);
+            }
+
+            @Override
+            public long size() {
+                return entry.size;
+            }
+        };
+    }
+
+    private static <T> Iterator<T> _prepend(final T first, final Iterator<T> rest) {
+        if (first == null) return rest;
+        return new Iterator<T>() {
+            private boolean taken;
+
+            @Override
+            public boolean hasNext() {
+                return !this.taken || rest.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (this.taken) return rest.next();
+                this.taken = true;
+                return first;
+            }
+        };
+    }
+
+}
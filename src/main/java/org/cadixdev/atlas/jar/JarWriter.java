@@ -0,0 +1,425 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A streaming writer for JAR files, that entries can be handed to from
+ * many threads.
+ * <p>
+ * Entries are written straight through to the underlying stream, in the
+ * order they are received. Callers should write the manifest before any
+ * other entry, as {@link JarInputStream} requires - see
+ * {@link #isManifestMisplaced()}.
+ * <p>
+ * Unlike {@link java.util.jar.JarOutputStream}, entries are compressed by
+ * the thread handing them over, and already-compressed entries can be
+ * {@link #write(EncodedEntry) written} as they are.
+ * <p>
+ * Each name is only written once - a later entry of the same name is either
+ * skipped, or {@link #replace(EncodedEntry) replaces} the earlier one.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class JarWriter implements Closeable {
+
+    static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOC_SIG = 0x07064b50;
+
+    private static final int EXTID_ZIP64 = 0x0001;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final OutputStream out;
+    private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+    // The offset, and length, of the central directory header of each name
+    // written - and of those since replaced, which are left out on close
+    private final Map<String, int[]> names = new HashMap<>();
+    private final TreeMap<Integer, Integer> replaced = new TreeMap<>();
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] header = new byte[64];
+    private long position;
+    private long count;
+    private int written;
+    private boolean manifestMisplaced;
+
+    JarWriter(final OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Compresses the given entry, ready to be written.
+     *
+     * @param entry The entry to encode
+     * @return The encoded entry
+     */
+    static EncodedEntry encode(final AbstractJarEntry entry) {
+        return encode(entry.getName(), entry.getTime(), entry.getContents());
+    }
+
+    /**
+     * Compresses an entry of the given contents, ready to be written.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @param contents The uncompressed contents of the entry
+     * @return The encoded entry
+     */
+    static EncodedEntry encode(final String name, final long time, final byte[] contents) {
+        return encode(name, time, contents, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Compresses an entry of the given contents at the given level, ready
+     * to be written.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @param contents The uncompressed contents of the entry
+     * @param level The compression level
+     * @return The encoded entry
+     */
+    static EncodedEntry encode(final String name, final long time, final byte[] contents, final int level) {
+        final EncodedEntry borrowed = encodeBorrowed(name, time, contents, level);
+        final byte[] data = new byte[borrowed.data.remaining()];
+        borrowed.data().get(data);
+        return new EncodedEntry(name, time, ZipEntry.DEFLATED, borrowed.crc, borrowed.size, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Compresses an entry of the given contents at the given level, ready
+     * to be written - into the calling thread's {@link ThreadBuffers buffers}.
+     * <p>
+     * The entry's data is borrowed, and only valid until the thread next
+     * encodes an entry. It must be written, and let go of, before then.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @param contents The uncompressed contents of the entry
+     * @param level The compression level
+     * @return The encoded entry
+     */
+    static EncodedEntry encodeBorrowed(final String name, final long time, final byte[] contents, final int level) {
+        final ThreadBuffers buffers = ThreadBuffers.get();
+        final CRC32 crc = buffers.crc();
+        crc.update(contents);
+
+        final Deflater deflater = buffers.deflater(level);
+        deflater.setInput(contents);
+        deflater.finish();
+
+        // Deflate straight into the buffer, which is sized to deflate's
+        // bound - so rarely needs to grow
+        final int n = contents.length;
+        byte[] compressed = buffers.output(n + (n >> 12) + (n >> 14) + (n >> 25) + 13);
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) compressed = buffers.grow(compressed);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        return new EncodedEntry(name, time, ZipEntry.DEFLATED, (int) crc.getValue(), n,
+                ByteBuffer.wrap(compressed, 0, length));
+    }
+
+    /**
+     * Creates an uncompressed entry of the given contents, ready to be written.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @param contents The contents of the entry
+     * @return The encoded entry
+     */
+    static EncodedEntry store(final String name, final long time, final byte[] contents) {
+        final CRC32 crc = ThreadBuffers.get().crc();
+        crc.update(contents);
+        return new EncodedEntry(name, time, ZipEntry.STORED, (int) crc.getValue(), contents.length,
+                ByteBuffer.wrap(contents));
+    }
+
+    /**
+     * Writes the given entry to the JAR, creating any parent directories
+     * that have not yet been written.
+     * <p>
+     * The entry is compressed before the writer is locked, so many entries
+     * can be compressed at once.
+     *
+     * @param entry The entry to write
+     * @return {@code true} if the entry was written, or {@code false} should
+     *         an entry of the same name already have been
+     * @throws IOException Should an issue occur writing the entry
+     */
+    boolean write(final AbstractJarEntry entry) throws IOException {
+        return this.write(encode(entry));
+    }
+
+    /**
+     * Writes the given, already encoded, entry to the JAR - creating any
+     * parent directories that have not yet been written.
+     * <p>
+     * Should an entry of the same name already have been written, the
+     * entry is skipped.
+     *
+     * @param entry The entry to write
+     * @return {@code true} if the entry was written, or {@code false} should
+     *         an entry of the same name already have been
+     * @throws IOException Should an issue occur writing the entry
+     */
+    synchronized boolean write(final EncodedEntry entry) throws IOException {
+        if (this.names.containsKey(entry.name)) return false;
+        this.writeData(entry);
+        return true;
+    }
+
+    /**
+     * Writes the given, already encoded, entry to the JAR - replacing any
+     * entry of the same name already written.
+     * <p>
+     * The data of the entry replaced is left where it was written, but is
+     * no longer referenced by the central directory.
+     *
+     * @param entry The entry to write
+     * @throws IOException Should an issue occur writing the entry
+     */
+    synchronized void replace(final EncodedEntry entry) throws IOException {
+        final int[] record = this.names.remove(entry.name);
+        if (record != null) {
+            this.replaced.put(record[0], record[1]);
+            this.count--;
+        }
+        this.writeData(entry);
+    }
+
+    private void writeData(final EncodedEntry entry) throws IOException {
+        final int dosTime = DosTime.fromJava(entry.time);
+        this.createDirectories(entry.name, dosTime);
+
+        if (MANIFEST_NAME.equals(entry.name) && this.written != 0) {
+            this.manifestMisplaced = true;
+        }
+
+        final ByteBuffer data = entry.data();
+        this.writeEntry(entry.name, dosTime, entry.method, entry.crc, data.remaining(), entry.size);
+
+        // Data on the heap is written as it is, rather than copied through
+        // the chunk
+        if (data.hasArray()) {
+            this.out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        else {
+            while (data.hasRemaining()) {
+                final int length = Math.min(this.chunk.length, data.remaining());
+                data.get(this.chunk, 0, length);
+                this.out.write(this.chunk, 0, length);
+            }
+        }
+        this.written++;
+    }
+
+    /**
+     * Gets whether a manifest was written after other entries, in which case
+     * the JAR will need repacking for {@link JarInputStream} to find it.
+     *
+     * @return {@code true} if the manifest wasn't the first entry
+     */
+    synchronized boolean isManifestMisplaced() {
+        return this.manifestMisplaced;
+    }
+
+    private void createDirectories(final String name, final int dosTime) throws IOException {
+        int index = name.indexOf('/');
+        while (index != -1) {
+            final String directory = name.substring(0, index + 1);
+            if (!this.names.containsKey(directory)) {
+                this.writeEntry(directory, dosTime, ZipEntry.STORED, 0, 0, 0);
+            }
+            index = name.indexOf('/', index + 1);
+        }
+    }
+
+    /**
+     * Writes the local header of an entry, and records its central directory
+     * header for when the JAR is closed. The caller is expected to write the
+     * entry's data immediately after.
+     */
+    private void writeEntry(final String entryName, final int dosTime, final int method, final int crc,
+                            final long compressedSize, final long size) throws IOException {
+        final byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+        final long offset = this.position;
+        final int record = this.central.size();
+        final int version = method == ZipEntry.STORED ? 10 : 20;
+
+        // Local header, sizes are always known up front - so no data descriptor.
+        // Should either size overflow, both are given by a zip64 extra
+        final boolean zip64Sizes = compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        _put32(this.header, 0, LOC_SIG);
+        _put16(this.header, 4, zip64Sizes ? 45 : version);
+        _put16(this.header, 6, FLAG_UTF8);
+        _put16(this.header, 8, method);
+        _put32(this.header, 10, dosTime);
+        _put32(this.header, 14, crc);
+        _put32(this.header, 18, zip64Sizes ? (int) ZIP64_MAGIC : (int) compressedSize);
+        _put32(this.header, 22, zip64Sizes ? (int) ZIP64_MAGIC : (int) size);
+        _put16(this.header, 26, name.length);
+        _put16(this.header, 28, zip64Sizes ? 20 : 0);
+        this.out.write(this.header, 0, 30);
+        this.out.write(name);
+        if (zip64Sizes) {
+            _put16(this.header, 0, EXTID_ZIP64);
+            _put16(this.header, 2, 16);
+            _put64(this.header, 4, size);
+            _put64(this.header, 12, compressedSize);
+            this.out.write(this.header, 0, 20);
+        }
+        this.position += 30 + name.length + (zip64Sizes ? 20 : 0) + compressedSize;
+
+        // Central directory header, using zip64 for whichever of the sizes and
+        // offset overflow - which are given in that order
+        final boolean zip64Size = size >= ZIP64_MAGIC;
+        final boolean zip64CompressedSize = compressedSize >= ZIP64_MAGIC;
+        final boolean zip64Offset = offset >= ZIP64_MAGIC;
+        final int extra = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+        _put32(this.header, 0, CEN_SIG);
+        _put16(this.header, 4, extra != 0 ? 45 : version);
+        _put16(this.header, 6, extra != 0 ? 45 : version);
+        _put16(this.header, 8, FLAG_UTF8);
+        _put16(this.header, 10, method);
+        _put32(this.header, 12, dosTime);
+        _put32(this.header, 16, crc);
+        _put32(this.header, 20, zip64CompressedSize ? (int) ZIP64_MAGIC : (int) compressedSize);
+        _put32(this.header, 24, zip64Size ? (int) ZIP64_MAGIC : (int) size);
+        _put16(this.header, 28, name.length);
+        _put16(this.header, 30, extra == 0 ? 0 : 4 + extra);
+        _put16(this.header, 32, 0);
+        _put16(this.header, 34, 0);
+        _put16(this.header, 36, 0);
+        _put32(this.header, 38, 0);
+        _put32(this.header, 42, zip64Offset ? (int) ZIP64_MAGIC : (int) offset);
+        this.central.write(this.header, 0, 46);
+        this.central.write(name, 0, name.length);
+        if (extra != 0) {
+            int pos = 4;
+            _put16(this.header, 0, EXTID_ZIP64);
+            _put16(this.header, 2, extra);
+            if (zip64Size) {
+                _put64(this.header, pos, size);
+                pos += 8;
+            }
+            if (zip64CompressedSize) {
+                _put64(this.header, pos, compressedSize);
+                pos += 8;
+            }
+            if (zip64Offset) {
+                _put64(this.header, pos, offset);
+                pos += 8;
+            }
+            this.central.write(this.header, 0, pos);
+        }
+
+        this.names.put(entryName, new int[] { record, this.central.size() - record });
+        this.count++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        final long cenOffset = this.position;
+        final long cenSize;
+        if (this.replaced.isEmpty()) {
+            cenSize = this.central.size();
+            this.central.writeTo(this.out);
+        }
+        else {
+            // Leave out the headers of the entries that were replaced
+            final byte[] central = this.central.toByteArray();
+            int from = 0;
+            long size = 0;
+            for (final Map.Entry<Integer, Integer> record : this.replaced.entrySet()) {
+                this.out.write(central, from, record.getKey() - from);
+                size += record.getKey() - from;
+                from = record.getKey() + record.getValue();
+            }
+            this.out.write(central, from, central.length - from);
+            cenSize = size + central.length - from;
+        }
+
+        final boolean zip64 = this.count >= ZIP64_MAGICCOUNT || cenOffset >= ZIP64_MAGIC || cenSize >= ZIP64_MAGIC;
+        if (zip64) {
+            final long zip64End = cenOffset + cenSize;
+
+            _put32(this.header, 0, ZIP64_END_SIG);
+            _put64(this.header, 4, 44);
+            _put16(this.header, 12, 45);
+            _put16(this.header, 14, 45);
+            _put32(this.header, 16, 0);
+            _put32(this.header, 20, 0);
+            _put64(this.header, 24, this.count);
+            _put64(this.header, 32, this.count);
+            _put64(this.header, 40, cenSize);
+            _put64(this.header, 48, cenOffset);
+            this.out.write(this.header, 0, 56);
+
+            _put32(this.header, 0, ZIP64_LOC_SIG);
+            _put32(this.header, 4, 0);
+            _put64(this.header, 8, zip64End);
+            _put32(this.header, 16, 1);
+            this.out.write(this.header, 0, 20);
+        }
+
+        _put32(this.header, 0, END_SIG);
+        _put16(this.header, 4, 0);
+        _put16(this.header, 6, 0);
+        _put16(this.header, 8, (int) Math.min(this.count, ZIP64_MAGICCOUNT));
+        _put16(this.header, 10, (int) Math.min(this.count, ZIP64_MAGICCOUNT));
+        _put32(this.header, 12, (int) Math.min(cenSize, ZIP64_MAGIC));
+        _put32(this.header, 16, (int) Math.min(cenOffset, ZIP64_MAGIC));
+        _put16(this.header, 20, 0);
+        this.out.write(this.header, 0, 22);
+
+        this.out.close();
+    }
+
+    private static void _put16(final byte[] buffer, final int offset, final int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void _put32(final byte[] buffer, final int offset, final int value) {
+        _put16(buffer, offset, value);
+        _put16(buffer, offset + 2, value >>> 16);
+    }
+
+    private static void _put64(final byte[] buffer, final int offset, final long value) {
+        _put32(buffer, offset, (int) value);
+        _put32(buffer, offset + 4, (int) (value >>> 32));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A budget of heap, drawn from by everything that holds entries while jars
+ * are transformed - which may be shared by any number of runs, jars, and
+ * {@link org.cadixdev.atlas.Atlas atlases} at once.
+ * <p>
+ * The budget is drawn from by:
+ * <ul>
+ *     <li>The entries in flight, no more of which are drawn from the jar
+ *     while the budget is exhausted - so the run slows down, rather than
+ *     exhausting the heap.</li>
+ *     <li>The classes cached by jars opened with a {@link ClassCachePolicy#withBudget(MemoryBudget) budgeted policy},
+ *     which evict classes to make room - or don't cache them at all.</li>
+ *     <li>The entries retained by an {@link JarFile.Analysis analysis}, which
+ *     are read again once the budget is exhausted.</li>
+ *     <li>The jars nested within a jar, as they're transformed - which are
+ *     written to the {@link #getSpillDirectory() spill directory} instead,
+ *     should the budget not have room for them.</li>
+ * </ul>
+ * Entries are weighed by their uncompressed size. The budget may be overdrawn,
+ * as each run always has at least one batch of entries in flight - however
+ * large - so that it can make progress.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class MemoryBudget {
+
+    private final long maxBytes;
+    private final Path spillDirectory;
+    private final AtomicLong used = new AtomicLong();
+    private final LongAdder spilled = new LongAdder();
+
+    /**
+     * Creates a budget of the given number of bytes, that never spills to
+     * disk.
+     *
+     * @param maxBytes The size of the budget, in bytes
+     */
+    public MemoryBudget(final long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * Creates a budget of the given number of bytes, that spills to the
+     * given directory once exhausted.
+     *
+     * @param maxBytes The size of the budget, in bytes
+     * @param spillDirectory The directory to spill to, which is created
+     *                       should it not exist - or {@code null} to never
+     *                       spill
+     */
+    public MemoryBudget(final long maxBytes, final Path spillDirectory) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+        this.maxBytes = maxBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Gets the size of the budget, in bytes.
+     *
+     * @return The size of the budget
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Gets the number of bytes currently drawn from the budget.
+     *
+     * @return The used bytes
+     */
+    public long getUsedBytes() {
+        return this.used.get();
+    }
+
+    /**
+     * Gets the directory that entries are spilled to, once the budget is
+     * exhausted.
+     *
+     * @return The spill directory, or {@code null} should the budget never
+     *         spill
+     */
+    public Path getSpillDirectory() {
+        return this.spillDirectory;
+    }
+
+    /**
+     * Gets the (uncompressed) number of bytes that have been spilled to disk.
+     *
+     * @return The spilled bytes
+     */
+    public long getSpilledBytes() {
+        return this.spilled.sum();
+    }
+
+    /**
+     * Gets whether the budget has any room left.
+     *
+     * @return {@code true} if the budget isn't exhausted
+     */
+    boolean hasRoom() {
+        return this.used.get() < this.maxBytes;
+    }
+
+    /**
+     * Draws the given number of bytes from the budget, should it have room
+     * for them.
+     *
+     * @param bytes The number of bytes
+     * @return {@code true} if the bytes were drawn
+     */
+    boolean tryReserve(final long bytes) {
+        while (true) {
+            final long used = this.used.get();
+            if (used + bytes > this.maxBytes) return false;
+            if (this.used.compareAndSet(used, used + bytes)) return true;
+        }
+    }
+
+    /**
+     * Draws the given number of bytes from the budget, regardless of whether
+     * it has room for them.
+     *
+     * @param bytes The number of bytes
+     */
+    void reserve(final long bytes) {
+        this.used.addAndGet(bytes);
+    }
+
+    /**
+     * Returns the given number of bytes to the budget.
+     *
+     * @param bytes The number of bytes
+     */
+    void release(final long bytes) {
+        this.used.addAndGet(-bytes);
+    }
+
+    /**
+     * Records that the given number of bytes were spilled to disk, rather
+     * than drawn from the budget.
+     *
+     * @param bytes The number of bytes
+     */
+    void spilled(final long bytes) {
+        this.spilled.add(bytes);
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+/**
+ * A {@link JarEntryTransformer transformer} that declares which entries it
+ * may change.
+ * <p>
+ * Entries that no installed transformer applies to are copied to the output
+ * jar as they are - still compressed, and without ever being read. Plain
+ * {@link JarEntryTransformer}s are assumed to apply to every entry.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public interface ScopedJarEntryTransformer extends JarEntryTransformer {
+
+    /**
+     * Gets whether the transformer may change, or remove, the entry at
+     * the given path.
+     * <p>
+     * Transformers must leave any entry they don't apply to unchanged, as
+     * they may not see it at all.
+     *
+     * @param path The path of the entry
+     * @return {@code true} if the transformer applies to the entry
+     * @see JarPath#getType()
+     */
+    boolean appliesTo(final JarPath path);
+
+}
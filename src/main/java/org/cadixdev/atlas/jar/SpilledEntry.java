@@ -0,0 +1,127 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * An entry written to a temporary file as it is produced, rather than held
+ * on the heap - for those that the {@link MemoryBudget memory budget} has no
+ * room for.
+ * <p>
+ * The entry is compressed as it is written, so once complete it is ready to
+ * be written to a jar straight from the (memory-mapped) file.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class SpilledEntry extends OutputStream {
+
+    private final Path file;
+    private final Deflater deflater;
+    private final OutputStream out;
+    private final CRC32 crc = new CRC32();
+    private long size;
+
+    /**
+     * Creates a spilled entry, within the given directory.
+     *
+     * @param directory The directory to spill to
+     * @param stored Whether the entry is to be stored, rather than compressed
+     * @param level The compression level, should the entry be compressed
+     * @throws IOException Should an issue occur creating the file
+     */
+    SpilledEntry(final Path directory, final boolean stored, final int level) throws IOException {
+        this.file = Files.createTempFile(Files.createDirectories(directory), "atlas", ".spill");
+        final OutputStream out = new BufferedOutputStream(Files.newOutputStream(this.file));
+        this.deflater = stored ? null : new Deflater(level, true);
+        this.out = stored ? out : new DeflaterOutputStream(out, this.deflater, ThreadBuffers.CHUNK_SIZE);
+    }
+
+    /**
+     * Gets the uncompressed size of the entry, so far.
+     *
+     * @return The size, in bytes
+     */
+    long size() {
+        return this.size;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.crc.update(b);
+        this.size++;
+        this.out.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        this.crc.update(b, off, len);
+        this.size += len;
+        this.out.write(b, off, len);
+    }
+
+    /**
+     * Completes the entry, mapping it back from disk - ready to be written.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @return The encoded entry
+     * @throws IOException Should an issue occur completing, or mapping, the file
+     */
+    EncodedEntry encode(final String name, final long time) throws IOException {
+        this.close();
+        final ByteBuffer data;
+        try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new EncodedEntry(name, time, this.deflater == null ? ZipEntry.STORED : ZipEntry.DEFLATED,
+                (int) this.crc.getValue(), this.size, data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.out.close();
+        }
+        finally {
+            if (this.deflater != null) this.deflater.end();
+        }
+    }
+
+    /**
+     * Deletes the file, once the entry has been written or abandoned.
+     */
+    void delete() {
+        try {
+            this.close();
+        }
+        catch (final IOException ignored) {
+        }
+
+        // A file still mapped can't be deleted on Windows, so is left for
+        // the JVM to delete as it exits
+        try {
+            Files.deleteIfExists(this.file);
+        }
+        catch (final IOException ex) {
+            this.file.toFile().deleteOnExit();
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The buffers, checksum, inflater and deflaters kept by each thread that
+ * reads or writes entries - so they needn't be allocated for every entry.
+ * <p>
+ * Each is only borrowed for the duration of a single call, on the thread that
+ * borrowed it. Nothing borrowed may be held onto, or handed to another thread,
+ * beyond that.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class ThreadBuffers {
+
+    static final int CHUNK_SIZE = 8192;
+
+    // Larger buffers aren't kept, so a single huge entry doesn't pin its
+    // buffer to the thread for good
+    private static final int MAX_RETAINED = 1 << 20;
+
+    private static final ThreadLocal<ThreadBuffers> BUFFERS = ThreadLocal.withInitial(ThreadBuffers::new);
+
+    /**
+     * Gets the buffers of the current thread.
+     *
+     * @return The buffers
+     */
+    static ThreadBuffers get() {
+        return BUFFERS.get();
+    }
+
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final CRC32 crc = new CRC32();
+    private final Inflater inflater = new Inflater(true);
+    private final Deflater[] deflaters = new Deflater[Deflater.BEST_COMPRESSION + 2];
+    private byte[] output = new byte[CHUNK_SIZE];
+
+    private ThreadBuffers() {
+    }
+
+    /**
+     * Gets a chunk of {@link #CHUNK_SIZE} bytes, for copying through.
+     *
+     * @return The chunk
+     */
+    byte[] chunk() {
+        return this.chunk;
+    }
+
+    /**
+     * Gets a reset checksum.
+     *
+     * @return The checksum
+     */
+    CRC32 crc() {
+        this.crc.reset();
+        return this.crc;
+    }
+
+    /**
+     * Gets a reset inflater, of raw deflate data.
+     *
+     * @return The inflater
+     */
+    Inflater inflater() {
+        this.inflater.reset();
+        return this.inflater;
+    }
+
+    /**
+     * Gets a reset deflater, of raw deflate data, at the given level.
+     *
+     * @param level The compression level
+     * @return The deflater
+     */
+    Deflater deflater(final int level) {
+        final int index = level - Deflater.DEFAULT_COMPRESSION;
+        final Deflater deflater = this.deflaters[index];
+        if (deflater == null) return this.deflaters[index] = new Deflater(level, true);
+
+        deflater.reset();
+        return deflater;
+    }
+
+    /**
+     * Gets an output buffer of at least the given length.
+     *
+     * @param length The minimum length
+     * @return The buffer
+     */
+    byte[] output(final int length) {
+        if (this.output.length >= length) return this.output;
+
+        final byte[] output = new byte[length];
+        if (length <= MAX_RETAINED) this.output = output;
+        return output;
+    }
+
+    /**
+     * Grows the given output buffer, keeping its contents.
+     *
+     * @param output The buffer, from {@link #output(int)}
+     * @return The larger buffer
+     */
+    byte[] grow(final byte[] output) {
+        final byte[] grown = Arrays.copyOf(output, output.length * 2);
+        if (grown.length <= MAX_RETAINED) this.output = grown;
+        return grown;
+    }
+
+}
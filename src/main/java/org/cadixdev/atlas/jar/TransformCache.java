@@ -0,0 +1,259 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.atlas.util.DigestHelper;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An on-disk cache of transformed entries, allowing unchanged entries of a
+ * jar to skip transformation when it is transformed again.
+ * <p>
+ * An entry's result is keyed by the entry's name and (compressed) contents,
+ * the {@link FingerprintedJarEntryTransformer#fingerprint() fingerprints} of
+ * the transformers, the {@link TransformOptions#getClasspathFingerprint()
+ * classpath's fingerprint}, and - should any transformer {@link FingerprintedJarEntryTransformer#dependsOnJar() depend on it} -
+ * the {@link JarFile#fingerprint() fingerprint} of the jar being transformed. Results are stored as they are written to the
+ * jar, so serving an entry from the cache neither decompresses nor compresses
+ * anything.
+ * <p>
+ * The cache is only used should every transformer be fingerprinted. Entries
+ * are never evicted, the directory can be deleted at any time while the
+ * cache isn't in use.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class TransformCache {
+
+    private static final int MAGIC = 0x41544331; // ATC1
+
+    private final Path directory;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a transform cache, storing its entries in the given directory.
+     *
+     * @param directory The directory of the cache
+     * @throws IOException Should an issue occur creating the directory
+     */
+    public TransformCache(final Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Gets the directory the cache stores its entries in.
+     *
+     * @return The directory
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Gets the number of entries served from the cache.
+     *
+     * @return The number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of entries that weren't present in the cache, and
+     * were transformed.
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the key for a transformation of the given jar, with the given
+     * transformers and classpath, from which the keys of its entries are
+     * derived.
+     *
+     * @param transformers The transformers
+     * @param classpath The fingerprint of the classpath, or {@code null}
+     * @param jar The jar being transformed, or {@code null} should its
+     *            entries not be known up front
+     * @return The key, or {@code null} should any transformer not be
+     *         fingerprinted - or depend on a jar that isn't known
+     */
+    static byte[] key(final JarEntryTransformer[] transformers, final String classpath, final JarFile jar) {
+        final MessageDigest digest = DigestHelper.sha256();
+        boolean dependsOnJar = false;
+        for (final JarEntryTransformer transformer : transformers) {
+            if (!(transformer instanceof FingerprintedJarEntryTransformer)) return null;
+
+            final FingerprintedJarEntryTransformer fingerprinted = (FingerprintedJarEntryTransformer) transformer;
+            final String fingerprint = fingerprinted.fingerprint();
+            if (fingerprint == null) return null;
+            _update(digest, transformer.getClass().getName());
+            _update(digest, fingerprint);
+            dependsOnJar |= fingerprinted.dependsOnJar();
+        }
+        _update(digest, classpath == null ? "" : classpath);
+        if (dependsOnJar) {
+            if (jar == null) return null;
+            _update(digest, jar.fingerprint());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Gets the key for an entry of a jar, for the transformation of the given
+     * key.
+     *
+     * @param key The key of the transformation
+     * @param entry The entry, as it is stored within the jar
+     * @return The key of the entry
+     */
+    static String key(final byte[] key, final EncodedEntry entry) {
+        final MessageDigest digest = DigestHelper.sha256();
+        digest.update(key);
+        _update(digest, entry.name);
+        digest.update(ByteBuffer.allocate(16)
+                .putInt(entry.method)
+                .putInt(entry.crc)
+                .putLong(entry.size)
+                .array());
+        digest.update(entry.data());
+        return DigestHelper.toHex(digest.digest());
+    }
+
+    /**
+     * Gets the cached result for the given key.
+     *
+     * @param key The key of the entry
+     * @return The result, or {@code null} should the entry not be cached
+     * @throws IOException Should an issue occur reading the cache
+     */
+    Result get(final String key) throws IOException {
+        final byte[] raw;
+        try {
+            raw = Files.readAllBytes(this.path(key));
+        }
+        catch (final NoSuchFileException ignored) {
+            this.misses.increment();
+            return null;
+        }
+
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            if (in.readInt() != MAGIC) {
+                this.misses.increment();
+                return null;
+            }
+
+            this.hits.increment();
+            if (!in.readBoolean()) return new Result(null);
+
+            final String name = in.readUTF();
+            final long time = in.readLong();
+            final int method = in.readInt();
+            final int crc = in.readInt();
+            final long size = in.readLong();
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Result(new EncodedEntry(name, time, method, crc, size, ByteBuffer.wrap(data)));
+        }
+    }
+
+    /**
+     * Caches the result for the given key.
+     *
+     * @param key The key of the entry
+     * @param entry The transformed entry, or {@code null} should the entry
+     *              have been removed
+     * @throws IOException Should an issue occur writing to the cache
+     */
+    void put(final String key, final EncodedEntry entry) throws IOException {
+        final Path path = this.path(key);
+        Files.createDirectories(path.getParent());
+
+        // Write to a temporary file first, so a partially written entry is
+        // never read
+        final Path temp = Files.createTempFile(path.getParent(), key, ".tmp");
+        try {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeBoolean(entry != null);
+                if (entry != null) {
+                    final ByteBuffer data = entry.data();
+                    out.writeUTF(entry.name);
+                    out.writeLong(entry.time);
+                    out.writeInt(entry.method);
+                    out.writeInt(entry.crc);
+                    out.writeLong(entry.size);
+                    out.writeInt(data.remaining());
+                    if (data.hasArray()) {
+                        out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                    }
+                    else {
+                        final byte[] chunk = ThreadBuffers.get().chunk();
+                        while (data.hasRemaining()) {
+                            final int length = Math.min(chunk.length, data.remaining());
+                            data.get(chunk, 0, length);
+                            out.write(chunk, 0, length);
+                        }
+                    }
+                }
+            }
+
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException ignored) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path path(final String key) {
+        return this.directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+
+    private static void _update(final MessageDigest digest, final String value) {
+        final byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(raw.length).array());
+        digest.update(raw);
+    }
+
+    /**
+     * A cached result of transforming an entry.
+     */
+    static final class Result {
+
+        final EncodedEntry entry;
+
+        Result(final EncodedEntry entry) {
+            this.entry = entry;
+        }
+
+    }
+
+}
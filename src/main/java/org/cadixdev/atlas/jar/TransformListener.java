@@ -0,0 +1,182 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A listener to the stages of a {@link JarFile jar}'s transformation (or
+ * processing), for instrumentation.
+ * <p>
+ * Listeners are called from the threads doing the work, so must be
+ * thread-safe - and should be cheap, as they are called at least once for
+ * every entry. Every method does nothing by default.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ * @see TransformMetrics
+ * @see FlightRecorderListener
+ */
+public interface TransformListener {
+
+    /**
+     * Creates a listener that calls each of the given listeners, in order.
+     *
+     * @param listeners The listeners
+     * @return The listener
+     */
+    static TransformListener of(final TransformListener... listeners) {
+        final List<TransformListener> all = Arrays.asList(listeners.clone());
+        return new TransformListener() {
+            @Override
+            public void started(final JarFile jar) {
+                all.forEach(listener -> listener.started(jar));
+            }
+
+            @Override
+            public void entryRead(final JarPath path, final long nanos, final long bytes) {
+                all.forEach(listener -> listener.entryRead(path, nanos, bytes));
+            }
+
+            @Override
+            public void entryTransformed(final JarPath path, final JarEntryTransformer transformer,
+                                         final long nanos, final long cpuNanos) {
+                all.forEach(listener -> listener.entryTransformed(path, transformer, nanos, cpuNanos));
+            }
+
+            @Override
+            public void entryWritten(final JarPath path, final long nanos, final long bytes) {
+                all.forEach(listener -> listener.entryWritten(path, nanos, bytes));
+            }
+
+            @Override
+            public void entryCopied(final JarPath path, final long nanos, final long bytes) {
+                all.forEach(listener -> listener.entryCopied(path, nanos, bytes));
+            }
+
+            @Override
+            public void cacheLookup(final JarPath path, final boolean hit) {
+                all.forEach(listener -> listener.cacheLookup(path, hit));
+            }
+
+            @Override
+            public void tasksQueued(final int inFlight, final int queued) {
+                all.forEach(listener -> listener.tasksQueued(inFlight, queued));
+            }
+
+            @Override
+            public void repacked(final Path jar, final long nanos) {
+                all.forEach(listener -> listener.repacked(jar, nanos));
+            }
+
+            @Override
+            public void completed(final JarFile jar, final long nanos, final Throwable failure) {
+                all.forEach(listener -> listener.completed(jar, nanos, failure));
+            }
+        };
+    }
+
+    /**
+     * Called as the transformation of the given jar starts.
+     *
+     * @param jar The jar, or {@code null} should it be a {@link JarStream}
+     */
+    default void started(final JarFile jar) {
+    }
+
+    /**
+     * Called once an entry has been read, and decompressed, from the jar.
+     *
+     * @param path The path of the entry
+     * @param nanos The time taken to read the entry, in nanoseconds
+     * @param bytes The uncompressed size of the entry
+     */
+    default void entryRead(final JarPath path, final long nanos, final long bytes) {
+    }
+
+    /**
+     * Called once a transformer has been run on an entry.
+     *
+     * @param path The path of the entry, as it was read
+     * @param transformer The transformer
+     * @param nanos The (wall-clock) time taken by the transformer, in nanoseconds
+     * @param cpuNanos The CPU time taken by the transformer, in nanoseconds - or
+     *                 {@code -1} should the JVM not measure thread CPU time
+     */
+    default void entryTransformed(final JarPath path, final JarEntryTransformer transformer,
+                                  final long nanos, final long cpuNanos) {
+    }
+
+    /**
+     * Called once a transformed entry has been compressed, and written to the
+     * output jar.
+     *
+     * @param path The path of the entry, as it was read
+     * @param nanos The time taken to compress and write the entry, in nanoseconds
+     * @param bytes The compressed size of the entry, as written
+     */
+    default void entryWritten(final JarPath path, final long nanos, final long bytes) {
+    }
+
+    /**
+     * Called once an entry that no transformer applies to has been copied,
+     * as it was, to the output jar.
+     *
+     * @param path The path of the entry
+     * @param nanos The time taken to copy the entry, in nanoseconds
+     * @param bytes The compressed size of the entry
+     */
+    default void entryCopied(final JarPath path, final long nanos, final long bytes) {
+    }
+
+    /**
+     * Called once an entry has been looked up in the {@link TransformCache
+     * transform cache}.
+     *
+     * @param path The path of the entry
+     * @param hit {@code true} should the entry have been served from the cache
+     */
+    default void cacheLookup(final JarPath path, final boolean hit) {
+    }
+
+    /**
+     * Called once tasks have been submitted to the executor service.
+     *
+     * @param inFlight The number of the transformation's tasks queued, or running
+     * @param queued The number of tasks of any kind queued on the executor service,
+     *               or {@code -1} should the executor service not expose its queue
+     */
+    default void tasksQueued(final int inFlight, final int queued) {
+    }
+
+    /**
+     * Called once an output jar has been repacked, so that its manifest is
+     * the first entry.
+     *
+     * @param jar The output jar
+     * @param nanos The time taken to repack the jar, in nanoseconds
+     */
+    default void repacked(final Path jar, final long nanos) {
+    }
+
+    /**
+     * Called once the transformation of the given jar has completed, whether
+     * successfully or not.
+     *
+     * @param jar The jar, or {@code null} should it be a {@link JarStream}
+     * @param nanos The time taken by the whole transformation, in nanoseconds
+     * @param failure The cause of the transformation's failure, or {@code null}
+     *                should it have succeeded
+     */
+    default void completed(final JarFile jar, final long nanos, final Throwable failure) {
+    }
+
+}
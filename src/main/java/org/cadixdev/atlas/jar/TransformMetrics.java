@@ -0,0 +1,396 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link TransformListener listener} that aggregates the metrics of any
+ * number of transformations - per-stage latencies, per-transformer CPU time,
+ * bytes read and written, and throughput.
+ * <p>
+ * Transformers are told apart by their class, so the metrics of the same
+ * transformer across many jars (or {@link org.cadixdev.atlas.Atlas} runs)
+ * are combined.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class TransformMetrics implements TransformListener {
+
+    private final Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+    private final Map<String, Transformer> transformers = new ConcurrentHashMap<>();
+
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger(-1);
+
+    // The time spent with any transformation running, for throughput
+    private final Object lock = new Object();
+    private int running;
+    private long runningSince;
+    private long elapsed;
+
+    public TransformMetrics() {
+        for (final Stage stage : Stage.values()) {
+            this.stages.put(stage, new Histogram());
+        }
+    }
+
+    /**
+     * Gets the latencies of the given stage.
+     *
+     * @param stage The stage
+     * @return The latencies
+     */
+    public Histogram getLatency(final Stage stage) {
+        return this.stages.get(stage);
+    }
+
+    /**
+     * Gets the cumulative CPU time of each transformer, by the name of its
+     * class - in the order they were first run.
+     *
+     * @param unit The unit of time
+     * @return The CPU time of each transformer
+     */
+    public Map<String, Long> getTransformerCpuTime(final TimeUnit unit) {
+        final Map<String, Long> times = new LinkedHashMap<>();
+        this.transformers.values().stream()
+                .sorted((a, b) -> Integer.compare(a.order, b.order))
+                .forEach(transformer -> times.put(transformer.name, unit.convert(transformer.cpuNanos.sum(), TimeUnit.NANOSECONDS)));
+        return Collections.unmodifiableMap(times);
+    }
+
+    /**
+     * Gets the (wall-clock) latencies of each transformer, by the name of its
+     * class - in the order they were first run.
+     *
+     * @return The latencies of each transformer
+     */
+    public Map<String, Histogram> getTransformerLatency() {
+        final Map<String, Histogram> latencies = new LinkedHashMap<>();
+        this.transformers.values().stream()
+                .sorted((a, b) -> Integer.compare(a.order, b.order))
+                .forEach(transformer -> latencies.put(transformer.name, transformer.latency));
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    /**
+     * Gets the number of entries handled, whether transformed or copied.
+     *
+     * @return The number of entries
+     */
+    public long getEntries() {
+        return this.entries.sum();
+    }
+
+    /**
+     * Gets the number of (uncompressed) bytes read from input jars.
+     *
+     * @return The bytes read
+     */
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    /**
+     * Gets the number of (compressed) bytes written to output jars, including
+     * those of copied entries.
+     *
+     * @return The bytes written
+     */
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    /**
+     * Gets the number of entries served from the {@link TransformCache transform cache}.
+     *
+     * @return The number of hits
+     */
+    public long getCacheHits() {
+        return this.cacheHits.sum();
+    }
+
+    /**
+     * Gets the number of entries looked up in, but not served from, the
+     * {@link TransformCache transform cache}.
+     *
+     * @return The number of misses
+     */
+    public long getCacheMisses() {
+        return this.cacheMisses.sum();
+    }
+
+    /**
+     * Gets the greatest number of tasks a single transformation has had in
+     * flight at once.
+     *
+     * @return The greatest number of tasks in flight
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight.get();
+    }
+
+    /**
+     * Gets the greatest depth of the executor service's queue, seen when
+     * submitting tasks.
+     *
+     * @return The greatest queue depth, or {@code -1} should the executor
+     *         service not expose its queue
+     */
+    public int getMaxQueueDepth() {
+        return this.maxQueued.get();
+    }
+
+    /**
+     * Gets the time spent with any transformation running.
+     *
+     * @param unit The unit of time
+     * @return The elapsed time
+     */
+    public long getElapsed(final TimeUnit unit) {
+        synchronized (this.lock) {
+            long elapsed = this.elapsed;
+            if (this.running != 0) elapsed += System.nanoTime() - this.runningSince;
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gets the throughput of entries, over the time spent with any
+     * transformation running.
+     *
+     * @return The number of entries handled per second
+     */
+    public double getEntriesPerSecond() {
+        final long elapsed = this.getElapsed(TimeUnit.NANOSECONDS);
+        return elapsed == 0 ? 0 : this.getEntries() * 1e9 / elapsed;
+    }
+
+    @Override
+    public void started(final JarFile jar) {
+        synchronized (this.lock) {
+            if (this.running++ == 0) this.runningSince = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void entryRead(final JarPath path, final long nanos, final long bytes) {
+        this.stages.get(Stage.READ).record(nanos);
+        this.bytesRead.add(bytes);
+    }
+
+    @Override
+    public void entryTransformed(final JarPath path, final JarEntryTransformer transformer,
+                                 final long nanos, final long cpuNanos) {
+        final Transformer metrics = this.transformers.computeIfAbsent(transformer.getClass().getName(),
+                name -> new Transformer(name, this.transformers.size()));
+        metrics.latency.record(nanos);
+        if (cpuNanos >= 0) metrics.cpuNanos.add(cpuNanos);
+        this.stages.get(Stage.TRANSFORM).record(nanos);
+    }
+
+    @Override
+    public void entryWritten(final JarPath path, final long nanos, final long bytes) {
+        this.stages.get(Stage.WRITE).record(nanos);
+        this.bytesWritten.add(bytes);
+        this.entries.increment();
+    }
+
+    @Override
+    public void entryCopied(final JarPath path, final long nanos, final long bytes) {
+        this.stages.get(Stage.COPY).record(nanos);
+        this.bytesWritten.add(bytes);
+        this.entries.increment();
+    }
+
+    @Override
+    public void cacheLookup(final JarPath path, final boolean hit) {
+        (hit ? this.cacheHits : this.cacheMisses).increment();
+    }
+
+    @Override
+    public void tasksQueued(final int inFlight, final int queued) {
+        this.maxInFlight.accumulateAndGet(inFlight, Math::max);
+        this.maxQueued.accumulateAndGet(queued, Math::max);
+    }
+
+    @Override
+    public void repacked(final Path jar, final long nanos) {
+        this.stages.get(Stage.REPACK).record(nanos);
+    }
+
+    @Override
+    public void completed(final JarFile jar, final long nanos, final Throwable failure) {
+        synchronized (this.lock) {
+            if (--this.running == 0) this.elapsed += System.nanoTime() - this.runningSince;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder()
+                .append(String.format("entries=%d (%.1f/s), read=%d bytes, written=%d bytes, cache hits=%d, misses=%d, max in flight=%d, max queue depth=%d%n",
+                        this.getEntries(), this.getEntriesPerSecond(), this.getBytesRead(), this.getBytesWritten(),
+                        this.getCacheHits(), this.getCacheMisses(), this.getMaxInFlight(), this.getMaxQueueDepth()));
+        for (final Stage stage : Stage.values()) {
+            builder.append(String.format("  %-9s %s%n", stage.name().toLowerCase(), this.stages.get(stage)));
+        }
+        final Map<String, Long> cpu = this.getTransformerCpuTime(TimeUnit.MILLISECONDS);
+        this.getTransformerLatency().forEach((name, latency) ->
+                builder.append(String.format("  %s: cpu=%dms %s%n", name, cpu.get(name), latency)));
+        return builder.toString();
+    }
+
+    /**
+     * A stage of a transformation.
+     */
+    public enum Stage {
+
+        /**
+         * Reading, and decompressing, an entry.
+         */
+        READ,
+        /**
+         * Running a transformer on an entry.
+         */
+        TRANSFORM,
+        /**
+         * Compressing, and writing, a transformed entry.
+         */
+        WRITE,
+        /**
+         * Copying an entry as it was.
+         */
+        COPY,
+        /**
+         * Repacking an output jar.
+         */
+        REPACK
+
+    }
+
+    /**
+     * A histogram of latencies, in buckets of powers of two nanoseconds.
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram() {
+        }
+
+        void record(final long nanos) {
+            final long value = Math.max(0, nanos);
+            this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value) - (value == 0 ? 0 : 1));
+            this.count.increment();
+            this.total.add(value);
+            this.max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * Gets the number of latencies recorded.
+         *
+         * @return The count
+         */
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        /**
+         * Gets the sum of the latencies recorded.
+         *
+         * @param unit The unit of time
+         * @return The total
+         */
+        public long getTotal(final TimeUnit unit) {
+            return unit.convert(this.total.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Gets the greatest latency recorded.
+         *
+         * @param unit The unit of time
+         * @return The maximum
+         */
+        public long getMax(final TimeUnit unit) {
+            return unit.convert(this.max.get(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Gets an upper bound for the given percentile of latencies, accurate
+         * to within a factor of two.
+         *
+         * @param percentile The percentile, between {@code 0} and {@code 100}
+         * @param unit The unit of time
+         * @return The percentile
+         */
+        public long getPercentile(final double percentile, final TimeUnit unit) {
+            final long count = this.getCount();
+            if (count == 0) return 0;
+
+            final long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= rank && seen != 0) {
+                    final long bound = i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                    return unit.convert(Math.min(bound, this.max.get()), TimeUnit.NANOSECONDS);
+                }
+            }
+            return unit.convert(this.max.get(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, total=%dms, p50=%dus, p99=%dus, max=%dus",
+                    this.getCount(), this.getTotal(TimeUnit.MILLISECONDS),
+                    this.getPercentile(50, TimeUnit.MICROSECONDS), this.getPercentile(99, TimeUnit.MICROSECONDS),
+                    this.getMax(TimeUnit.MICROSECONDS));
+        }
+
+    }
+
+    /**
+     * The metrics of a single transformer.
+     */
+    private static final class Transformer {
+
+        private final String name;
+        private final int order;
+        private final Histogram latency = new Histogram();
+        private final LongAdder cpuNanos = new LongAdder();
+
+        Transformer(final String name, final int order) {
+            this.name = name;
+            this.order = order;
+        }
+
+    }
+
+}
@@ -0,0 +1,502 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.time.Duration;
+import java.util.zip.Deflater;
+
+/**
+ * Options for how a {@link JarFile jar} is {@link JarFile#transform(java.nio.file.Path,
+ * java.util.concurrent.ExecutorService, TransformOptions, JarEntryTransformer...) transformed},
+ * or {@link JarFile#process(java.util.concurrent.ExecutorService, TransformOptions,
+ * JarEntryTransformer...) processed}.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class TransformOptions {
+
+    private int maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+    private int batchSize = 64;
+    private long batchBytes = 64 * 1024;
+    private TransformCache transformCache;
+    private String classpathFingerprint;
+    private TransformListener listener;
+    private boolean fuseClassVisitors = true;
+    private JarPathFilter nestedJars;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private JarPathFilter storedEntries;
+    private boolean keepCompressionMethod;
+    private boolean largestFirst;
+    private Duration timeout;
+    private Duration entryTimeout;
+    private long retainedBytes = Runtime.getRuntime().maxMemory() / 8;
+    private MemoryBudget memoryBudget;
+
+    /**
+     * Creates a set of options, with the defaults.
+     */
+    public TransformOptions() {
+    }
+
+    /**
+     * Creates a copy of the given set of options.
+     *
+     * @param options The options to copy
+     */
+    public TransformOptions(final TransformOptions options) {
+        this.maxInFlight = options.maxInFlight;
+        this.batchSize = options.batchSize;
+        this.batchBytes = options.batchBytes;
+        this.transformCache = options.transformCache;
+        this.classpathFingerprint = options.classpathFingerprint;
+        this.listener = options.listener;
+        this.fuseClassVisitors = options.fuseClassVisitors;
+        this.nestedJars = options.nestedJars;
+        this.compressionLevel = options.compressionLevel;
+        this.storedEntries = options.storedEntries;
+        this.keepCompressionMethod = options.keepCompressionMethod;
+        this.largestFirst = options.largestFirst;
+        this.timeout = options.timeout;
+        this.entryTimeout = options.entryTimeout;
+        this.retainedBytes = options.retainedBytes;
+        this.memoryBudget = options.memoryBudget;
+    }
+
+    /**
+     * Gets the maximum number of tasks that may be queued, or running, on the
+     * executor service at any one time.
+     *
+     * @return The maximum number of tasks in flight
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * Sets the maximum number of tasks that may be queued, or running, on the
+     * executor service at any one time - bounding the number of entries held
+     * in memory, regardless of the size of the jar.
+     *
+     * @param maxInFlight The maximum number of tasks in flight
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setMaxInFlight(final int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of entries handled by a single task.
+     *
+     * @return The maximum number of entries per task
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Sets the maximum number of entries handled by a single task.
+     *
+     * @param batchSize The maximum number of entries per task
+     * @return {@code this}, for chaining
+     * @see #setBatchBytes(long)
+     */
+    public TransformOptions setBatchSize(final int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Gets the (uncompressed) number of bytes of entries, after which no
+     * more entries are added to a task.
+     *
+     * @return The size of a batch, in bytes
+     */
+    public long getBatchBytes() {
+        return this.batchBytes;
+    }
+
+    /**
+     * Sets the (uncompressed) number of bytes of entries, after which no
+     * more entries are added to a task.
+     * <p>
+     * Small entries are batched together into a single task, to save on
+     * scheduling overhead - while large entries are given a task of their own.
+     *
+     * @param batchBytes The size of a batch, in bytes
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setBatchBytes(final long batchBytes) {
+        if (batchBytes < 0) throw new IllegalArgumentException("batchBytes must not be negative");
+        this.batchBytes = batchBytes;
+        return this;
+    }
+
+    /**
+     * Gets the {@link TransformCache transform cache} used to skip transforming
+     * unchanged entries.
+     *
+     * @return The transform cache, or {@code null} if none is used
+     */
+    public TransformCache getTransformCache() {
+        return this.transformCache;
+    }
+
+    /**
+     * Sets the {@link TransformCache transform cache} used to skip transforming
+     * unchanged entries.
+     * <p>
+     * The cache is only used should every transformer be
+     * {@link FingerprintedJarEntryTransformer fingerprinted}.
+     *
+     * @param transformCache The transform cache, or {@code null} to use none
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setTransformCache(final TransformCache transformCache) {
+        this.transformCache = transformCache;
+        return this;
+    }
+
+    /**
+     * Gets the fingerprint of the classpath the transformers see, which forms
+     * part of the key of every entry in the {@link #getTransformCache() transform cache}.
+     *
+     * @return The classpath fingerprint, or {@code null} if there is none
+     */
+    public String getClasspathFingerprint() {
+        return this.classpathFingerprint;
+    }
+
+    /**
+     * Sets the fingerprint of the classpath the transformers see, which forms
+     * part of the key of every entry in the {@link #getTransformCache() transform cache}.
+     * <p>
+     * The {@link org.cadixdev.atlas.Atlas} sets this for each run, from the
+     * {@link org.cadixdev.atlas.ClasspathSession#fingerprint() fingerprints}
+     * of its classpath.
+     *
+     * @param classpathFingerprint The classpath fingerprint
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setClasspathFingerprint(final String classpathFingerprint) {
+        this.classpathFingerprint = classpathFingerprint;
+        return this;
+    }
+
+    /**
+     * Gets the {@link TransformListener listener} told of each stage of the
+     * transformation.
+     *
+     * @return The listener, or {@code null} if there is none
+     */
+    public TransformListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * Sets the {@link TransformListener listener} told of each stage of the
+     * transformation - such as {@link TransformMetrics}.
+     * <p>
+     * Stages are only timed should there be a listener, use
+     * {@link TransformListener#of(TransformListener...)} for many listeners.
+     *
+     * @param listener The listener, or {@code null} for none
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setListener(final TransformListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Gets whether consecutive {@link ClassVisitorTransformer class visitor transformers}
+     * are chained together, so each class is read and written only once.
+     *
+     * @return {@code true} if class visitors are chained
+     */
+    public boolean isFuseClassVisitors() {
+        return this.fuseClassVisitors;
+    }
+
+    /**
+     * Sets whether consecutive {@link ClassVisitorTransformer class visitor transformers}
+     * are chained together, so each class is read and written only once.
+     * <p>
+     * This is enabled by default. As the chained transformers run together,
+     * a {@link #getListener() listener} is told that each took an equal
+     * share of their time - disable chaining to measure them individually.
+     *
+     * @param fuseClassVisitors {@code true} to chain class visitors
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setFuseClassVisitors(final boolean fuseClassVisitors) {
+        this.fuseClassVisitors = fuseClassVisitors;
+        return this;
+    }
+
+    /**
+     * Gets the filter of entries that are themselves jars, to be transformed
+     * along with the jar that holds them.
+     *
+     * @return The filter of nested jars, or {@code null} should nested jars
+     *         be left as they are
+     */
+    public JarPathFilter getNestedJars() {
+        return this.nestedJars;
+    }
+
+    /**
+     * Sets the filter of entries that are themselves jars - such as
+     * {@code META-INF/jars/*.jar} - to be transformed along with the jar that
+     * holds them.
+     * <p>
+     * Each nested jar is opened in memory, and its entries transformed on the
+     * same executor service as those of the outer jar, by the same transformers.
+     * The result is written in place of the original entry, with the same
+     * compression method. Nested jars are handled recursively, by the same
+     * filter, though only the outermost jar is given the transformers'
+     * {@link JarEntryTransformer#additions() additions}.
+     *
+     * @param nestedJars The filter of nested jars, or {@code null} to leave
+     *                   nested jars as they are
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setNestedJars(final JarPathFilter nestedJars) {
+        this.nestedJars = nestedJars;
+        return this;
+    }
+
+    /**
+     * Gets the level that written entries are deflated at.
+     *
+     * @return The compression level
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Sets the level that written entries are deflated at, from
+     * {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION} - or
+     * {@link Deflater#DEFAULT_COMPRESSION}, the default.
+     * <p>
+     * Entries are deflated by the executor service's threads, as they're
+     * transformed, so a lower level trades the size of the output for the time
+     * taken by each entry. Entries copied as they are, without being
+     * transformed, are never recompressed.
+     *
+     * @param compressionLevel The compression level
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setCompressionLevel(final int compressionLevel) {
+        if ((compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+                && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * Gets the filter of entries that are written without compression.
+     *
+     * @return The filter of stored entries, or {@code null} should every
+     *         entry be compressed
+     */
+    public JarPathFilter getStoredEntries() {
+        return this.storedEntries;
+    }
+
+    /**
+     * Sets the filter of entries that are written without compression, as
+     * {@link java.util.zip.ZipEntry#STORED} - such as {@link JarPathFilter#all()},
+     * for intermediate jars that are only read by the next step of a build.
+     * <p>
+     * Matching entries that are copied as they are, without being transformed,
+     * are decompressed should they have been compressed.
+     *
+     * @param storedEntries The filter of stored entries, or {@code null} to
+     *                      compress every entry
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setStoredEntries(final JarPathFilter storedEntries) {
+        this.storedEntries = storedEntries;
+        return this;
+    }
+
+    /**
+     * Gets whether transformed entries keep the compression method they were
+     * read with.
+     *
+     * @return {@code true} if the compression method is kept
+     */
+    public boolean isKeepCompressionMethod() {
+        return this.keepCompressionMethod;
+    }
+
+    /**
+     * Sets whether transformed entries keep the compression method they were
+     * read with, such that entries stored without compression remain so. By
+     * default, every transformed entry is deflated.
+     * <p>
+     * Entries matching the {@link #getStoredEntries() stored entries} are
+     * always written without compression.
+     *
+     * @param keepCompressionMethod {@code true} to keep the compression method
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setKeepCompressionMethod(final boolean keepCompressionMethod) {
+        this.keepCompressionMethod = keepCompressionMethod;
+        return this;
+    }
+
+    /**
+     * Gets whether the costliest entries are scheduled first, rather than in
+     * the order they're stored within the jar.
+     *
+     * @return {@code true} if the costliest entries are scheduled first
+     */
+    public boolean isLargestFirst() {
+        return this.largestFirst;
+    }
+
+    /**
+     * Sets whether the costliest entries are scheduled first, rather than in
+     * the order they're stored within the jar - so a large entry stored last
+     * doesn't leave one thread busy while the others sit idle.
+     * <p>
+     * An entry costs its uncompressed size for each transformer that applies
+     * to it, unless the transformer gives a {@link CostedJarEntryTransformer
+     * cost of its own}. Entries that are only copied cost nothing, and are
+     * scheduled last. As the entries must be ordered before any are
+     * scheduled, this has no effect on a {@link JarStream}.
+     *
+     * @param largestFirst {@code true} to schedule the costliest entries first
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setLargestFirst(final boolean largestFirst) {
+        this.largestFirst = largestFirst;
+        return this;
+    }
+
+    /**
+     * Gets the time a whole run may take, before it is cancelled.
+     *
+     * @return The timeout, or {@code null} for none
+     */
+    public Duration getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Sets the time a whole run may take, including that of any nested jars,
+     * before it is cancelled - failing with an {@link java.io.InterruptedIOException}.
+     * <p>
+     * Once cancelled, no further entries are started, and the threads running
+     * entries are interrupted. As transformers rarely check for interrupts, an
+     * entry already running may well run to completion - its result is
+     * discarded, and the run only fails once it has stopped, so nothing is
+     * left reading from the jar.
+     *
+     * @param timeout The timeout, or {@code null} for none
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setTimeout(final Duration timeout) {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Gets the time a single entry may take, before the run is cancelled.
+     *
+     * @return The timeout of each entry, or {@code null} for none
+     */
+    public Duration getEntryTimeout() {
+        return this.entryTimeout;
+    }
+
+    /**
+     * Sets the time a single entry may take to be read, transformed and
+     * written, before the run is cancelled - as with {@link #setTimeout(Duration)}.
+     *
+     * @param entryTimeout The timeout of each entry, or {@code null} for none
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setEntryTimeout(final Duration entryTimeout) {
+        if (entryTimeout != null && (entryTimeout.isNegative() || entryTimeout.isZero())) {
+            throw new IllegalArgumentException("entryTimeout must be positive");
+        }
+        this.entryTimeout = entryTimeout;
+        return this;
+    }
+
+    /**
+     * Gets the (uncompressed) number of bytes of entries that an
+     * {@link JarFile#analyze(java.util.concurrent.ExecutorService, TransformOptions, JarEntryTransformer...) analysis}
+     * retains for its transformation.
+     *
+     * @return The retained bytes
+     */
+    public long getRetainedBytes() {
+        return this.retainedBytes;
+    }
+
+    /**
+     * Sets the (uncompressed) number of bytes of entries that an
+     * {@link JarFile#analyze(java.util.concurrent.ExecutorService, TransformOptions, JarEntryTransformer...) analysis}
+     * retains for its transformation. Entries read beyond that are read
+     * again, once transformed.
+     * <p>
+     * As retained entries are held inflated, by default no more than an eighth
+     * of the maximum heap is retained - so that analysing a large jar doesn't
+     * exhaust the heap. Should the options have a {@link #getMemoryBudget() memory budget},
+     * the retained entries draw from it as well.
+     *
+     * @param retainedBytes The retained bytes
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setRetainedBytes(final long retainedBytes) {
+        if (retainedBytes < 0) throw new IllegalArgumentException("retainedBytes must not be negative");
+        this.retainedBytes = retainedBytes;
+        return this;
+    }
+
+    /**
+     * Gets the budget of heap that the entries in flight, and those retained
+     * or nested, draw from.
+     *
+     * @return The memory budget, or {@code null} for none
+     */
+    public MemoryBudget getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    /**
+     * Sets the budget of heap that the entries in flight, and those retained
+     * or nested, draw from - see {@link MemoryBudget}.
+     * <p>
+     * The same budget may be set on the options of many runs, and on the
+     * {@link ClassCachePolicy#withBudget(MemoryBudget) class cache policies}
+     * of their jars, bounding them all as one.
+     *
+     * @param memoryBudget The memory budget, or {@code null} for none
+     * @return {@code this}, for chaining
+     */
+    public TransformOptions setMemoryBudget(final MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+}
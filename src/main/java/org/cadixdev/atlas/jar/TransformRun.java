@@ -0,0 +1,280 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.atlas.util.FutureHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state shared by every task of a single run over a jar - including
+ * those of its nested jars - through which the run is cancelled.
+ * <p>
+ * Once cancelled, whether by a failing entry, a timeout, or the caller, no
+ * further entries are started and the threads running entries are
+ * interrupted. Each pipeline of the run completes exceptionally straight
+ * away, rather than once the entries in flight have finished - so anything
+ * those entries still read from, or write to, is only closed once the run
+ * has {@link #drained() drained}.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class TransformRun {
+
+    private final Duration entryTimeout;
+    private final ScheduledFuture<?> deadline;
+    private final Set<CompletableFuture<?>> futures = new HashSet<>();
+    private final Set<Thread> running = new HashSet<>();
+    private final Set<Thread> interrupted = new HashSet<>();
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+    private int active;
+    private boolean finished;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a run, with the timeouts of the given options.
+     *
+     * @param options The transform options
+     */
+    TransformRun(final TransformOptions options) {
+        this.entryTimeout = options.getEntryTimeout();
+        final Duration timeout = options.getTimeout();
+        this.deadline = timeout == null ? null : _schedule(() -> this.cancel(new InterruptedIOException(
+                "timed out after " + timeout.toMillis() + "ms")), timeout);
+    }
+
+    /**
+     * Gets whether the run has been cancelled.
+     *
+     * @return {@code true} if the run has been cancelled
+     */
+    boolean isCancelled() {
+        return this.failure != null;
+    }
+
+    /**
+     * Gets the reason the run was cancelled.
+     *
+     * @return The reason, or {@code null} should the run not have been
+     *         cancelled
+     */
+    Throwable getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Attaches the given future to the run, such that it completes
+     * exceptionally should the run be cancelled.
+     *
+     * @param future The future
+     * @param <F> The type of the future
+     * @return The future
+     */
+    <F extends CompletableFuture<?>> F attach(final F future) {
+        synchronized (this) {
+            if (this.failure == null) {
+                this.futures.add(future);
+                return future;
+            }
+        }
+        future.completeExceptionally(this.failure);
+        return future;
+    }
+
+    /**
+     * Runs the given task for the given entry, on the current thread - which
+     * is interrupted should the run be cancelled while the task is running.
+     *
+     * @param entry The entry
+     * @param task The task
+     * @param <T> The type of the entry
+     * @throws IOException Should the task fail
+     */
+    <T> void run(final T entry, final EntryPipeline.EntryTask<T> task) throws IOException {
+        final Thread thread = Thread.currentThread();
+        synchronized (this) {
+            if (this.failure != null) return;
+            this.running.add(thread);
+            this.active++;
+        }
+
+        final ScheduledFuture<?> timeout = this.entryTimeout == null ? null : _schedule(() -> this.cancel(
+                new InterruptedIOException(entry + " timed out after " + this.entryTimeout.toMillis() + "ms")),
+                this.entryTimeout);
+        try {
+            task.run(entry);
+        }
+        finally {
+            if (timeout != null) timeout.cancel(false);
+            synchronized (this) {
+                this.running.remove(thread);
+                // Don't leave an interrupt meant for this run to the executor's
+                // next task
+                if (this.interrupted.remove(thread)) Thread.interrupted();
+            }
+            this.exit();
+        }
+    }
+
+    /**
+     * Marks the start of a task of the run that isn't run through
+     * {@link #run(Object, EntryPipeline.EntryTask)} - such as a batch of
+     * entries, or the opening of a nested jar - which the run is not
+     * {@link #drained() drained} until {@link #exit() exits}.
+     *
+     * @return {@code true} if the task may start, or {@code false} should
+     *         the run have been cancelled
+     */
+    boolean enter() {
+        synchronized (this) {
+            if (this.failure != null) return false;
+            this.active++;
+            return true;
+        }
+    }
+
+    /**
+     * Marks the end of a task that {@link #enter() entered} the run.
+     */
+    void exit() {
+        final boolean drained;
+        synchronized (this) {
+            this.active--;
+            drained = this.isDrained();
+        }
+        if (drained) this.drained.complete(null);
+    }
+
+    /**
+     * Gets a future completed once the run has been cancelled or finished,
+     * and none of its tasks are still running.
+     *
+     * @return The future
+     */
+    CompletableFuture<Void> drained() {
+        return this.drained;
+    }
+
+    /**
+     * Closes the given resource once the given stage completes, completing
+     * as it does. Should the stage fail, the run is cancelled - and the
+     * resource only closed once the run has {@link #drained() drained}, as
+     * the tasks cancelled may well still be using it.
+     *
+     * @param stage The stage
+     * @param resource The resource to close
+     * @return A future, completed once the resource has been closed
+     */
+    CompletableFuture<Void> closeAfter(final CompletableFuture<Void> stage, final Closeable resource) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        stage.whenComplete((v, ex) -> {
+            if (ex == null) {
+                _close(resource, null, result);
+                return;
+            }
+            this.cancel(FutureHelper.unwrap(ex));
+            this.drained.whenComplete((d, ignored) -> _close(resource, ex, result));
+        });
+        return result;
+    }
+
+    private static void _close(final Closeable resource, final Throwable failure, final CompletableFuture<Void> result) {
+        try {
+            resource.close();
+        }
+        catch (final IOException ex) {
+            if (failure == null) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            failure.addSuppressed(ex);
+        }
+        if (failure != null) result.completeExceptionally(failure);
+        else result.complete(null);
+    }
+
+    private boolean isDrained() {
+        return (this.failure != null || this.finished) && this.active == 0;
+    }
+
+    /**
+     * Cancels the run, should it not have been already.
+     *
+     * @param cause The reason the run was cancelled
+     */
+    void cancel(final Throwable cause) {
+        final List<CompletableFuture<?>> futures;
+        synchronized (this) {
+            if (this.failure != null) return;
+            this.failure = cause;
+
+            for (final Thread thread : this.running) {
+                thread.interrupt();
+                this.interrupted.add(thread);
+            }
+            futures = new ArrayList<>(this.futures);
+            this.futures.clear();
+        }
+
+        if (this.deadline != null) this.deadline.cancel(false);
+        for (final CompletableFuture<?> future : futures) {
+            future.completeExceptionally(cause);
+        }
+        synchronized (this) {
+            if (!this.isDrained()) return;
+        }
+        this.drained.complete(null);
+    }
+
+    /**
+     * Marks the run as finished, so its timeout no longer applies.
+     */
+    void finish() {
+        if (this.deadline != null) this.deadline.cancel(false);
+        final boolean drained;
+        synchronized (this) {
+            this.futures.clear();
+            this.finished = true;
+            drained = this.isDrained();
+        }
+        if (drained) this.drained.complete(null);
+    }
+
+    private static ScheduledFuture<?> _schedule(final Runnable task, final Duration delay) {
+        return Timer.INSTANCE.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The timer shared by every run, created on first use.
+     */
+    private static final class Timer {
+
+        static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, task -> {
+            final Thread thread = new Thread(task, "Atlas Timeout Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.zip.ZipEntry;
+
+/**
+ * The state of a single transformation of a jar, shared by each of its
+ * entries - wherever those entries are read from.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class Transformation {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+    final JarWriter writer;
+    final JarFile input;
+    final TransformListener listener;
+    private final TransformCache cache;
+    private final byte[] key;
+    private final boolean fuse;
+    private final JarEntryTransformer[] transformers;
+    final int level;
+    private final JarPathFilter stored;
+    private final boolean keepMethod;
+
+    /**
+     * Creates a transformation of the given jar, writing to the given writer.
+     *
+     * @param writer The writer of the output jar
+     * @param input The jar being transformed - the outermost, should it be
+     *              nested - or {@code null} should its entries not be known
+     *              up front
+     * @param options The transform options
+     * @param transformers The transformers to use
+     */
+    Transformation(final JarWriter writer, final JarFile input, final TransformOptions options,
+                   final JarEntryTransformer[] transformers) {
+        this.writer = writer;
+        this.input = input;
+        this.listener = options.getListener();
+        this.cache = options.getTransformCache();
+        // Results are only cached should every transformer be fingerprinted,
+        // and are only valid for the jar that the transformers see
+        this.key = this.cache == null ? null :
+                TransformCache.key(transformers, options.getClasspathFingerprint(), input);
+        this.fuse = options.isFuseClassVisitors();
+        this.transformers = transformers;
+        this.level = options.getCompressionLevel();
+        this.stored = options.getStoredEntries();
+        this.keepMethod = options.isKeepCompressionMethod();
+    }
+
+    /**
+     * Transforms the given entry, handing the result to the writer.
+     *
+     * @param path The path of the entry
+     * @param source The source of the entry
+     * @throws IOException Should an issue occur reading, transforming, or
+     *                     writing the entry
+     */
+    void transform(final JarPath path, final Source source) throws IOException {
+        long start = this.listener == null ? 0 : System.nanoTime();
+
+        // Entries that no transformer applies to are copied as they are,
+        // without ever being decompressed - unless they're to be stored
+        if (!_appliesTo(path, this.transformers)) {
+            final EncodedEntry raw = source.raw();
+            final EncodedEntry copy = this.stored != null && this.stored.matches(path) ?
+                    this.conform(raw, raw.method) :
+                    raw;
+            this.writer.write(copy);
+            if (this.listener != null) {
+                this.listener.entryCopied(path, System.nanoTime() - start, copy.data.remaining());
+            }
+            return;
+        }
+
+        // Entries that haven't changed since they were last transformed are
+        // served from the cache - the entry is only read as it is stored
+        // should it be needed for the key, as for an unmapped jar that reads
+        // all of its data
+        final int method = source.method();
+        final String key = this.key == null ? null : TransformCache.key(this.key, source.raw());
+        if (key != null) {
+            final TransformCache.Result cached = this.cache.get(key);
+            if (this.listener != null) this.listener.cacheLookup(path, cached != null);
+            if (cached != null) {
+                if (cached.entry != null) {
+                    // The result may have been cached under other compression
+                    // options
+                    final EncodedEntry entry = this.conform(cached.entry, method);
+                    this.writer.write(entry);
+                    if (this.listener != null) {
+                        this.listener.entryWritten(path, System.nanoTime() - start, entry.data.remaining());
+                    }
+                }
+                return;
+            }
+        }
+
+        // Hand the result to the writer, compressing it on this thread
+        final AbstractJarEntry entry = transform(path, source, this.listener, this.fuse, this.transformers);
+        if (this.listener != null) start = System.nanoTime();
+        final EncodedEntry encoded = entry == null ? null :
+                this.encode(entry.getName(), entry.getTime(), entry.getContents(), method);
+        if (key != null) this.cache.put(key, encoded);
+        if (encoded != null) {
+            this.writer.write(encoded);
+            if (this.listener != null) this.listener.entryWritten(path, System.nanoTime() - start, encoded.data.remaining());
+        }
+    }
+
+    /**
+     * Writes the additions of each transformer, which replace any entry of
+     * the same name.
+     *
+     * @throws IOException Should an issue occur writing the additions
+     */
+    void writeAdditions() throws IOException {
+        for (final JarEntryTransformer transformer : this.transformers) {
+            for (final AbstractJarEntry addition : transformer.additions()) {
+                this.writer.replace(this.encode(addition.getName(), addition.getTime(), addition.getContents(),
+                        ZipEntry.DEFLATED));
+            }
+        }
+    }
+
+    /**
+     * Compresses an entry of the given contents, as the transform options
+     * dictate.
+     * <p>
+     * A compressed entry's data is {@link JarWriter#encodeBorrowed(String, long, byte[], int) borrowed}
+     * from the calling thread, so must be written before the thread encodes
+     * another entry.
+     *
+     * @param name The name of the entry
+     * @param time The last modified time of the entry
+     * @param contents The uncompressed contents of the entry
+     * @param method The compression method the entry was read with
+     * @return The encoded entry
+     * @throws IOException Should an issue occur compressing the entry
+     */
+    EncodedEntry encode(final String name, final long time, final byte[] contents, final int method)
+            throws IOException {
+        if (this.isStored(new JarPath(name), method)) return JarWriter.store(name, time, contents);
+        return JarWriter.encodeBorrowed(name, time, contents, this.level);
+    }
+
+    /**
+     * Re-encodes the given, already encoded, entry should it not be
+     * compressed as the transform options dictate. Compressed entries aren't
+     * recompressed at another level.
+     */
+    private EncodedEntry conform(final EncodedEntry entry, final int method) throws IOException {
+        final boolean stored = this.isStored(new JarPath(entry.name), method);
+        if (stored == (entry.method == ZipEntry.STORED)) return entry;
+
+        final byte[] contents = CentralDirectory.inflate(entry.name, entry.method, entry.size, entry.data());
+        return stored ? JarWriter.store(entry.name, entry.time, contents) :
+                JarWriter.encodeBorrowed(entry.name, entry.time, contents, this.level);
+    }
+
+    /**
+     * Gets whether an entry is to be stored, rather than compressed.
+     *
+     * @param path The path of the entry
+     * @param method The compression method the entry was read with
+     * @return {@code true} if the entry is to be stored
+     */
+    boolean isStored(final JarPath path, final int method) {
+        return (this.stored != null && this.stored.matches(path)) || (this.keepMethod && method == ZipEntry.STORED);
+    }
+
+    /**
+     * Reads, and transforms, the given entry.
+     *
+     * @param path The path of the entry
+     * @param source The source of the entry
+     * @param listener The listener to report to, or {@code null}
+     * @param fuse Whether to chain consecutive class visitor transformers
+     * @param transformers The transformers to use
+     * @return The transformed entry, or {@code null} should it have been removed
+     * @throws IOException Should an issue occur reading the entry
+     */
+    static AbstractJarEntry transform(final JarPath path, final Source source, final TransformListener listener,
+                                      final boolean fuse, final JarEntryTransformer[] transformers) throws IOException {
+        // Get the entry
+        final long start = listener == null ? 0 : System.nanoTime();
+        AbstractJarEntry entry = source.read();
+        if (entry == null) return null;
+        if (listener != null) listener.entryRead(path, System.nanoTime() - start, source.size());
+
+        // Transform the entry
+        int i = 0;
+        while (i < transformers.length) {
+            // Consecutive class visitors are chained, so the class is only
+            // read and written once
+            final int end = fuse && entry instanceof JarClassEntry ? ClassVisitorChain.end(transformers, i) : i;
+            final boolean chain = end - i > 1;
+
+            final long cpuStart = listener == null ? 0 : _cpuTime();
+            final long transformStart = listener == null ? 0 : System.nanoTime();
+            if (chain) {
+                entry = ClassVisitorChain.transform((JarClassEntry) entry, transformers, i, end);
+            }
+            else {
+                entry = entry.accept(transformers[i]);
+            }
+
+            final int next = chain ? end : i + 1;
+            if (listener != null) {
+                // Chained transformers are given an equal share of their time
+                final long nanos = (System.nanoTime() - transformStart) / (next - i);
+                final long cpuNanos = cpuStart == -1 ? -1 : (_cpuTime() - cpuStart) / (next - i);
+                for (int j = i; j < next; j++) {
+                    listener.entryTransformed(path, transformers[j], nanos, cpuNanos);
+                }
+            }
+            if (entry == null) return null;
+            i = next;
+        }
+
+        return entry;
+    }
+
+    private static long _cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Estimates the cost of transforming the given entry, with the given
+     * transformers.
+     *
+     * @param path The path of the entry
+     * @param size The uncompressed size of the entry
+     * @param transformers The transformers to use
+     * @return The estimated cost, which is zero should no transformer apply
+     * @see CostedJarEntryTransformer
+     */
+    static long cost(final JarPath path, final long size, final JarEntryTransformer[] transformers) {
+        long cost = 0;
+        for (final JarEntryTransformer transformer : transformers) {
+            if (transformer instanceof ScopedJarEntryTransformer
+                    && !((ScopedJarEntryTransformer) transformer).appliesTo(path)) continue;
+            cost += transformer instanceof CostedJarEntryTransformer ?
+                    ((CostedJarEntryTransformer) transformer).cost(path, size) :
+                    size;
+        }
+        return cost;
+    }
+
+    private static boolean _appliesTo(final JarPath path, final JarEntryTransformer[] transformers) {
+        for (final JarEntryTransformer transformer : transformers) {
+            if (!(transformer instanceof ScopedJarEntryTransformer)) return true;
+            if (((ScopedJarEntryTransformer) transformer).appliesTo(path)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Where an entry being transformed is read from.
+     */
+    interface Source {
+
+        /**
+         * Gets the entry, as it is stored within the jar.
+         *
+         * @return The encoded entry
+         * @throws IOException Should an issue occur reading the entry
+         */
+        EncodedEntry raw() throws IOException;
+
+        /**
+         * Gets the compression method the entry is stored with, without
+         * reading it.
+         *
+         * @return The compression method
+         */
+        int method();
+
+        /**
+         * Reads the entry.
+         *
+         * @return The entry, or {@code null} should it not exist
+         * @throws IOException Should an issue occur reading the entry
+         */
+        AbstractJarEntry read() throws IOException;
+
+        /**
+         * Gets the uncompressed size of the entry.
+         *
+         * @return The size, in bytes
+         */
+        long size();
+
+        /**
+         * Releases anything held for the entry, once it has been transformed.
+         */
+        default void release() {
+        }
+
+        /**
+         * Creates a source of the given, already read, entry.
+         *
+         * @param entry The encoded entry
+         * @return The source
+         */
+        static Source of(final EncodedEntry entry) {
+            return new Source() {
+                @Override
+                public EncodedEntry raw() {
+                    return entry;
+                }
+
+                @Override
+                public int method() {
+                    return entry.method;
+                }
+
+                @Override
+                public AbstractJarEntry read() throws IOException {
+                    return entry.decode();
+                }
+
+                @Override
+                public long size() {
+                    return entry.size;
+                }
+            };
+        }
+
+    }
+
+}
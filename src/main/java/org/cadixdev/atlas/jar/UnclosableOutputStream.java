@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that is flushed, rather than closed, as a JAR written to
+ * it is finished - leaving the caller's stream open.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class UnclosableOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    UnclosableOutputStream(final OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.out.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        this.out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.flush();
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the entries of a zip archive sequentially, by their local headers,
+ * as the archive arrives from a stream.
+ * <p>
+ * Entries are read as they are stored, without being decompressed - unless
+ * their size is only given after their data, in which case they're inflated
+ * to find where they end. Directories are skipped, as {@link JarWriter}
+ * recreates them.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+final class ZipStreamReader implements Iterator<EncodedEntry> {
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int EXT_SIG = 0x08074b50;
+
+    private static final int EXTID_ZIP64 = 0x0001;
+    private static final int EXTID_EXTT = 0x5455;
+
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final int FLAG_DESCRIPTOR = 0x0008;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final PushbackInputStream in;
+    private final byte[] header = new byte[30];
+    private final byte[] inflated = new byte[CHUNK_SIZE];
+    private EncodedEntry next;
+    private boolean finished;
+
+    ZipStreamReader(final InputStream in) {
+        this.in = new PushbackInputStream(in, CHUNK_SIZE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null && !this.finished) {
+            try {
+                this.next = this.read();
+            }
+            catch (final IOException ex) {
+                throw new CompletionException(ex);
+            }
+            if (this.next == null) this.finished = true;
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public EncodedEntry next() {
+        if (!this.hasNext()) throw new NoSuchElementException();
+        final EncodedEntry entry = this.next;
+        this.next = null;
+        return entry;
+    }
+
+    private EncodedEntry read() throws IOException {
+        while (true) {
+            // The archive ends at the central directory, which is of no use
+            // to a sequential reader
+            if (!this.readFully(this.header, 0, 4, true)) return null;
+            final int signature = _get32(this.header, 0);
+            if (signature == CEN_SIG || signature == END_SIG) return null;
+            if (signature != LOC_SIG) throw new ZipException("invalid LOC header (bad signature)");
+
+            this.readFully(this.header, 4, 26, false);
+            final int flags = _get16(this.header, 6);
+            final int method = _get16(this.header, 8);
+            final int dosTime = _get32(this.header, 10);
+            int crc = _get32(this.header, 14);
+            long compressedSize = _get32(this.header, 18) & ZIP64_MAGIC;
+            long size = _get32(this.header, 22) & ZIP64_MAGIC;
+            final byte[] rawName = new byte[_get16(this.header, 26)];
+            final byte[] extra = new byte[_get16(this.header, 28)];
+            this.readFully(rawName, 0, rawName.length, false);
+            this.readFully(extra, 0, extra.length, false);
+
+            final String name = new String(rawName, StandardCharsets.UTF_8);
+            if ((flags & FLAG_ENCRYPTED) != 0) throw new ZipException("encrypted entry: " + name);
+
+            // Read the extra fields, for zip64 sizes and the extended timestamp
+            long time = -1;
+            boolean zip64 = false;
+            int pos = 0;
+            while (pos + 4 <= extra.length) {
+                final int id = _get16(extra, pos);
+                final int length = _get16(extra, pos + 2);
+                final int data = pos + 4;
+                if (data + length > extra.length) break;
+
+                if (id == EXTID_ZIP64) {
+                    zip64 = true;
+                    if (length >= 16) {
+                        size = _get64(extra, data);
+                        compressedSize = _get64(extra, data + 8);
+                    }
+                }
+                else if (id == EXTID_EXTT && length >= 5 && (extra[data] & 0x1) != 0) {
+                    time = TimeUnit.SECONDS.toMillis(_get32(extra, data + 1) & ZIP64_MAGIC);
+                }
+                pos = data + length;
+            }
+            if (time == -1) time = DosTime.toJava(dosTime);
+
+            final ByteBuffer data;
+            if ((flags & FLAG_DESCRIPTOR) == 0) {
+                if (compressedSize > Integer.MAX_VALUE - 8) throw new ZipException("entry too large: " + name);
+                final byte[] raw = new byte[(int) compressedSize];
+                this.readFully(raw, 0, raw.length, false);
+                data = ByteBuffer.wrap(raw);
+            }
+            else {
+                // The sizes follow the data, so the data is inflated to find
+                // where it ends
+                if (method != ZipEntry.DEFLATED) {
+                    throw new ZipException("only DEFLATED entries can have EXT descriptor: " + name);
+                }
+                final ThreadBuffers buffers = ThreadBuffers.get();
+                final CRC32 checksum = buffers.crc();
+                final Inflater inflater = buffers.inflater();
+                data = this.readDeflated(name, inflater, buffers.chunk(), checksum);
+                size = inflater.getBytesWritten();
+
+                // The descriptor's signature is optional
+                this.readFully(this.header, 0, 4, false);
+                if (_get32(this.header, 0) == EXT_SIG) this.readFully(this.header, 0, 4, false);
+                crc = _get32(this.header, 0);
+                this.readFully(this.header, 4, zip64 ? 16 : 8, false);
+                compressedSize = zip64 ? _get64(this.header, 4) : _get32(this.header, 4) & ZIP64_MAGIC;
+                final long expectedSize = zip64 ? _get64(this.header, 12) : _get32(this.header, 8) & ZIP64_MAGIC;
+                if (compressedSize != data.remaining() || expectedSize != size || crc != (int) checksum.getValue()) {
+                    throw new ZipException("invalid EXT descriptor: " + name);
+                }
+            }
+
+            if (name.endsWith("/")) continue;
+            return new EncodedEntry(name, time, method, crc, size, data);
+        }
+    }
+
+    private ByteBuffer readDeflated(final String name, final Inflater inflater, final byte[] chunk,
+                                    final CRC32 checksum) throws IOException {
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    length = this.in.read(chunk);
+                    if (length == -1) throw new EOFException("unexpected end of zip stream");
+                    inflater.setInput(chunk, 0, length);
+                    raw.write(chunk, 0, length);
+                }
+
+                final int n = inflater.inflate(this.inflated);
+                if (n == 0 && inflater.needsDictionary()) throw new ZipException("invalid DEFLATED entry: " + name);
+                checksum.update(this.inflated, 0, n);
+            }
+        }
+        catch (final DataFormatException ex) {
+            throw new ZipException("invalid DEFLATED entry: " + name + " (" + ex.getMessage() + ")");
+        }
+
+        // Hand back whatever was read beyond the end of the data
+        final int remaining = inflater.getRemaining();
+        this.in.unread(chunk, length - remaining, remaining);
+        return ByteBuffer.wrap(raw.toByteArray(), 0, raw.size() - remaining);
+    }
+
+    private boolean readFully(final byte[] buffer, final int offset, final int length, final boolean eofAllowed)
+            throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int n = this.in.read(buffer, offset + read, length - read);
+            if (n == -1) {
+                if (read == 0 && eofAllowed) return false;
+                throw new EOFException("unexpected end of zip stream");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    private static int _get16(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int _get32(final byte[] buffer, final int offset) {
+        return _get16(buffer, offset) | _get16(buffer, offset + 2) << 16;
+    }
+
+    private static long _get64(final byte[] buffer, final int offset) {
+        return (_get32(buffer, offset) & ZIP64_MAGIC) | (long) _get32(buffer, offset + 4) << 32;
+    }
+
+}
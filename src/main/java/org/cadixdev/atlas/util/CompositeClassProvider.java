@@ -6,12 +6,26 @@
 
 package org.cadixdev.atlas.util;
 
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.jar.JarVisitOption;
 import org.cadixdev.bombe.provider.ClassProvider;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * A {@link ClassProvider class provider} backed by many other class providers.
+ * <p>
+ * The classes of any {@link JarFile jars} are indexed upon construction, so
+ * lookups needn't probe every provider - and, should every provider be a jar,
+ * a class that none of them have is known to be missing without asking any of
+ * them. Other providers may be dynamic, so are always asked.
  *
  * @author Jamie Mansfield
  * @since 0.1.0
@@ -19,18 +33,79 @@
 public class CompositeClassProvider implements ClassProvider {
 
     private final List<ClassProvider> providers;
+    private final boolean[] indexed;
+    private final Map<String, Integer> owners = new HashMap<>();
 
+    /**
+     * Creates a class provider backed by the given providers, which are asked
+     * for classes in order.
+     * <p>
+     * The list is copied, as the providers are indexed by their position - so
+     * later changes to it aren't seen by the class provider.
+     *
+     * @param providers The class providers
+     */
     public CompositeClassProvider(final List<ClassProvider> providers) {
-        this.providers = providers;
+        this.providers = new ArrayList<>(providers);
+        this.indexed = new boolean[this.providers.size()];
+
+        // Index the providers in parallel, and then merge them in order - so
+        // the first provider of a class is its owner
+        final List<List<String>> classes = IntStream.range(0, this.providers.size()).parallel()
+                .mapToObj(i -> _classes(this.providers.get(i)))
+                .collect(Collectors.toList());
+        for (int i = 0; i < classes.size(); i++) {
+            if (classes.get(i) == null) continue;
+
+            this.indexed[i] = true;
+            for (final String klass : classes.get(i)) {
+                this.owners.putIfAbsent(klass, i);
+            }
+        }
     }
 
     @Override
     public byte[] get(final String klass) {
-        for (final ClassProvider provider : this.providers) {
-            final byte[] raw = provider.get(klass);
+        // Providers that couldn't be indexed are still consulted, should they
+        // come before the owner
+        final Integer owner = this.owners.get(klass);
+        final int bound = owner == null ? this.providers.size() : owner;
+        for (int i = 0; i < bound; i++) {
+            if (this.indexed[i]) continue;
+
+            final byte[] raw = this.providers.get(i).get(klass);
             if (raw != null) return raw;
         }
+
+        if (owner != null) {
+            // Ask the owner, falling back to the remaining providers should it
+            // fail to read the class
+            for (int i = owner; i < this.providers.size(); i++) {
+                final byte[] raw = this.providers.get(i).get(klass);
+                if (raw != null) return raw;
+            }
+        }
+
         return null;
     }
 
+    private static List<String> _classes(final ClassProvider provider) {
+        if (!(provider instanceof JarFile)) return null;
+
+        final JarVisitOption[] options = {
+                JarVisitOption.IGNORE_MANIFESTS,
+                JarVisitOption.IGNORE_SERVICE_PROVIDER_CONFIGURATIONS,
+                JarVisitOption.IGNORE_RESOURCES
+        };
+        try (final Stream<String> classes = ((JarFile) provider).walk(options).map(path -> {
+            final String name = path.getName();
+            return name.substring(0, name.length() - ".class".length());
+        })) {
+            return classes.collect(Collectors.toList());
+        }
+        catch (final IOException ignored) {
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.util;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link InheritanceProvider inheritance provider} that caches the results
+ * of another, and may be queried by many threads at once - as the entries of a
+ * jar are transformed in parallel.
+ * <p>
+ * Two threads may occasionally look up the same class, but only one result
+ * will be cached.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public class ConcurrentCachingInheritanceProvider implements InheritanceProvider {
+
+    private final InheritanceProvider provider;
+    private final Map<String, Optional<ClassInfo>> cache = new ConcurrentHashMap<>();
+
+    public ConcurrentCachingInheritanceProvider(final InheritanceProvider provider) {
+        this.provider = provider;
+    }
+
+    @Override
+    public Optional<ClassInfo> provide(final String klass) {
+        final Optional<ClassInfo> cached = this.cache.get(klass);
+        if (cached != null) return cached;
+
+        // Look the class up outside of the map, as the provider may well
+        // look up other classes in turn
+        final Optional<ClassInfo> info = this.provider.provide(klass);
+        final Optional<ClassInfo> existing = this.cache.putIfAbsent(klass, info);
+        return existing != null ? existing : info;
+    }
+
+}
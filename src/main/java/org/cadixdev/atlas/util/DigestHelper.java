@@ -0,0 +1,50 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.util;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A helper class for the message digests Atlas fingerprints its inputs
+ * with.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class DigestHelper {
+
+    /**
+     * Creates a SHA-256 message digest.
+     *
+     * @return The message digest
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Gets the hexadecimal form of the given digest.
+     *
+     * @param digest The digest
+     * @return The digest, in hexadecimal
+     */
+    public static String toHex(final byte[] digest) {
+        return String.format("%0" + digest.length * 2 + "x", new BigInteger(1, digest));
+    }
+
+    private DigestHelper() {
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * A helper class for waiting on the futures of asynchronous runs.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class FutureHelper {
+
+    /**
+     * Waits for the given future to complete, rethrowing its failure.
+     * <p>
+     * Should the waiting thread be interrupted, the future is cancelled -
+     * rather than left running unobserved.
+     *
+     * @param future The future to wait for
+     * @throws IOException Should the future fail with an {@link IOException},
+     *                     or the waiting thread be interrupted
+     */
+    public static void await(final CompletableFuture<?> future) throws IOException {
+        try {
+            future.get();
+        }
+        catch (final InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the run to complete");
+        }
+        catch (final ExecutionException ex) {
+            try {
+                throw ex.getCause();
+            }
+            catch (final IOException ioe) {
+                throw ioe;
+            }
+            catch (final Throwable cause) {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Waits for the given future to complete, rethrowing its failure.
+     * <p>
+     * Should the waiting thread be interrupted, the future is cancelled - and
+     * this only returns once the run has drained, as a cancelled future
+     * completes straight away while the tasks it had in flight may still be
+     * running.
+     *
+     * @param future The future to wait for
+     * @param drained The future completed once the run has drained
+     * @throws IOException Should the future fail with an {@link IOException},
+     *                     or the waiting thread be interrupted
+     */
+    public static void await(final CompletableFuture<?> future, final Supplier<? extends CompletableFuture<?>> drained)
+            throws IOException {
+        try {
+            await(future);
+        }
+        catch (final InterruptedIOException ex) {
+            // Joining can't be interrupted, so this waits however many times
+            // the thread is interrupted
+            drained.get().handle((v, failure) -> null).join();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the cause of the given failure, should it be a {@link CompletionException}
+     * wrapping it.
+     *
+     * @param ex The failure
+     * @return The cause of the failure
+     */
+    public static Throwable unwrap(final Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private FutureHelper() {
+    }
+
+}
@@ -42,9 +42,10 @@ private JarRepacker() {
      * the output jar has any manifest file at all, and if it does, if it is retrievable by {@link JarInputStream}.
      * <p>
      * If the output jar does have a manifest file that {@link JarInputStream} can't access, then this method will repack
-     * the jar to fix the issue. For performance reasons Atlas remapping process remaps jar entries in parallel, and it
-     * uses the NIO zip file system API, which we have no control of. Since this repacking process is a simple copy it is
-     * still very fast (compared to the remapping operation).
+     * the jar to fix the issue. Atlas writes the manifest first wherever it can, so this is only needed should the
+     * manifest not be known until after the other entries were written (such as when provided by a transformer's
+     * additions). Since this repacking process is a simple copy it is still very fast (compared to the remapping
+     * operation).
      *
      * @param outputJar The jar produced by the atlas transformation.
      * @throws IOException If an IO error occurs.
@@ -0,0 +1,181 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.jar.JarPath;
+import org.cadixdev.atlas.jar.TestJars;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that an {@link AtlasDaemon} runs jobs against the classpaths it keeps
+ * open, closes them as they go idle, and serves its protocol.
+ */
+public final class AtlasDaemonTest {
+
+    @TempDir
+    Path temp;
+
+    private ExecutorService executorService;
+    private AtlasDaemon daemon;
+    private Path input;
+    private Path first;
+    private Path second;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executorService = Executors.newFixedThreadPool(4);
+        // Classpaths are only closed by the limits each test sets
+        this.daemon = new AtlasDaemon(this.executorService).setMemoryThreshold(1);
+        this.daemon.register("upper", context -> new JarEntryTransformer() {
+            @Override
+            public JarResourceEntry transform(final JarResourceEntry entry) {
+                // The parent of the class is known from the classpath
+                final InheritanceProvider provider = context.inheritanceProvider();
+                final String parent = provider.provide("a/A")
+                        .map(info -> info.getSuperName() + ":" + provider.provide(info.getSuperName()).isPresent())
+                        .orElse("none");
+                final String text = new String(entry.getContents(), StandardCharsets.UTF_8);
+                return new JarResourceEntry(entry.getName(), entry.getTime(),
+                        (text.toUpperCase() + " " + parent).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/A.class", TestJars.klass("a/A", "lib/Base"));
+        entries.put("a/resource.txt", "resource".getBytes(StandardCharsets.UTF_8));
+        this.input = Files.write(this.temp.resolve("input.jar"), TestJars.jar(entries));
+        this.first = Files.write(this.temp.resolve("first.jar"), TestJars.jar(Collections.singletonMap(
+                "lib/Base.class", TestJars.klass("lib/Base", "java/lang/Object"))));
+        this.second = Files.write(this.temp.resolve("second.jar"), TestJars.jar(Collections.singletonMap(
+                "lib/Other.class", TestJars.klass("lib/Other", "java/lang/Object"))));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.daemon.close();
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void keepsClasspathsWarmBetweenJobs() throws IOException {
+        final Path output = this.temp.resolve("output.jar");
+        this.daemon.run(new AtlasDaemon.Job(this.input, output, Collections.singletonList(this.first),
+                Collections.singletonList("upper")));
+        assertEquals("RESOURCE lib/Base:true", _resource(output));
+
+        // The same classpath, named another way, is reused
+        final Path relative = this.temp.resolve("sub").resolve("..").resolve("first.jar");
+        this.daemon.run(new AtlasDaemon.Job(this.input, this.temp.resolve("again.jar"),
+                Collections.singletonList(relative), Collections.singletonList("upper")));
+        assertEquals(Collections.singletonList(Collections.singletonList(this.first.toAbsolutePath().normalize())),
+                this.daemon.getOpenClasspaths());
+
+        assertEquals(1, this.daemon.evict());
+        assertEquals(Collections.emptyList(), this.daemon.getOpenClasspaths());
+    }
+
+    @Test
+    public void unknownTransformersFailFast() {
+        final IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> this.daemon.run(
+                new AtlasDaemon.Job(this.input, this.temp.resolve("output.jar"), Collections.singletonList(this.first),
+                        Arrays.asList("upper", "missing"))));
+        assertEquals("unknown transformer: missing", ex.getMessage());
+        assertEquals(Collections.emptyList(), this.daemon.getOpenClasspaths());
+    }
+
+    @Test
+    public void closesTheLeastRecentlyUsedClasspaths() throws IOException {
+        this.daemon.setMaxClasspaths(1);
+        this.run(this.first);
+        this.run(this.second);
+        assertEquals(Collections.singletonList(Collections.singletonList(this.second)), this.daemon.getOpenClasspaths());
+    }
+
+    @Test
+    public void closesIdleClasspaths() throws IOException {
+        this.daemon.setIdleTimeout(Duration.ZERO);
+        this.run(this.first);
+        assertEquals(Collections.emptyList(), this.daemon.getOpenClasspaths());
+    }
+
+    @Test
+    public void closesClasspathsUnderMemoryPressure() throws IOException {
+        // Any use of the heap is pressure - though its use is only known once
+        // it has been collected
+        this.daemon.setMemoryThreshold(0);
+        System.gc();
+        this.run(this.first);
+        assertEquals(Collections.emptyList(), this.daemon.getOpenClasspaths());
+    }
+
+    @Test
+    public void servesTheProtocol() throws IOException {
+        final Path output = this.temp.resolve("output.jar");
+        final String requests = String.join("\n",
+                "1\ttransform\tin=" + this.input + "\tout=" + output + "\tcp=" + this.first + File.pathSeparator
+                        + "\twith=upper",
+                "",
+                "2\tping",
+                "3\tbogus",
+                "4\ttransform\tin=" + this.input,
+                "5\ttransform\tin=" + this.input + "\tout=" + output + "\twith=missing",
+                "6\tshutdown",
+                "7\tping"
+        ) + "\n";
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.daemon.serve(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), out);
+
+        final List<String> responses = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+        assertEquals(6, responses.size(), responses::toString);
+        assertEquals("6\tok", responses.get(responses.size() - 1), responses::toString);
+        assertTrue(responses.contains("2\tok"), responses::toString);
+        assertTrue(responses.contains("3\terror\tunknown command: bogus"), responses::toString);
+        assertTrue(responses.contains("4\terror\tmissing argument: out"), responses::toString);
+        assertTrue(responses.contains("5\terror\tunknown transformer: missing"), responses::toString);
+        assertTrue(responses.stream().anyMatch(response -> response.matches("1\tok\t\\d+ms")), responses::toString);
+        assertEquals("RESOURCE lib/Base:true", _resource(output));
+    }
+
+    private void run(final Path classpath) throws IOException {
+        this.daemon.run(new AtlasDaemon.Job(this.input, this.temp.resolve("output.jar"),
+                Collections.singletonList(classpath), Collections.singletonList("upper")));
+    }
+
+    private static String _resource(final Path jar) throws IOException {
+        try (final JarFile result = new JarFile(jar)) {
+            return new String(result.get(new JarPath("a/resource.txt")).getContents(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
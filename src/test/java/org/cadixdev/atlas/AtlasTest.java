@@ -0,0 +1,110 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.jar.TestJars;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks that a run of the {@link Atlas} only returns once nothing is still
+ * reading from its classpath.
+ */
+public final class AtlasTest {
+
+    private ExecutorService executorService;
+    private JarFile jar;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executorService = Executors.newFixedThreadPool(2);
+
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 16; i++) {
+            entries.put("C" + i + ".class", TestJars.klass("C" + i, "java/lang/Object"));
+        }
+        this.jar = new JarFile("test.jar", TestJars.jar(entries));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.jar.close();
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void interruptedRunWaitsForEntriesInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger active = new AtomicInteger();
+        final Atlas atlas = new Atlas(this.executorService);
+        atlas.getTransformOptions().setBatchSize(1);
+        atlas.install(context -> new JarEntryTransformer() {
+            @Override
+            public JarClassEntry transform(final JarClassEntry entry) {
+                active.incrementAndGet();
+                started.countDown();
+                // Transformers rarely check for interrupts
+                _sleepUninterruptibly(200);
+                active.decrementAndGet();
+                return entry;
+            }
+        });
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicInteger activeOnReturn = new AtomicInteger(-1);
+        final Thread thread = new Thread(() -> {
+            try {
+                atlas.run(this.jar, new ByteArrayOutputStream());
+            }
+            catch (final IOException | RuntimeException ex) {
+                failure.set(ex);
+            }
+            activeOnReturn.set(active.get());
+        });
+        thread.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        thread.interrupt();
+        thread.join(5_000);
+
+        assertTrue(failure.get() instanceof InterruptedIOException);
+        assertEquals(0, activeOnReturn.get());
+    }
+
+    private static void _sleepUninterruptibly(final long millis) {
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        boolean interrupted = false;
+        for (long remaining = millis; remaining > 0; remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime())) {
+            try {
+                Thread.sleep(remaining);
+            }
+            catch (final InterruptedException ignored) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+}
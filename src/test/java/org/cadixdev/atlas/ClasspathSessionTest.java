@@ -0,0 +1,107 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.atlas.jar.TestJars;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Checks that a {@link ClasspathSession}'s fingerprint describes the contents
+ * of its jars.
+ */
+public final class ClasspathSessionTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    public void fingerprintIgnoresPathAndModifiedTime() throws IOException {
+        final byte[] jar = _jar("java/lang/Object");
+        final Path first = Files.write(Files.createDirectories(this.temp.resolve("first")).resolve("a.jar"), jar);
+        final Path second = Files.write(Files.createDirectories(this.temp.resolve("second")).resolve("b.jar"), jar);
+        Files.setLastModifiedTime(second, FileTime.fromMillis(Files.getLastModifiedTime(first).toMillis() + 60_000));
+
+        try (final ClasspathSession a = new ClasspathSession(Collections.singletonList(first));
+             final ClasspathSession b = new ClasspathSession(Collections.singletonList(second))) {
+            assertEquals(a.fingerprint(), b.fingerprint());
+        }
+    }
+
+    @Test
+    public void fingerprintIgnoresEntryTimes() throws IOException {
+        final Path first = Files.write(this.temp.resolve("a.jar"), _jar("java/lang/Object"));
+        final Path second = Files.write(this.temp.resolve("b.jar"), TestJars.jar(
+                Collections.singletonMap("A.class", TestJars.klass("A", "java/lang/Object")), TestJars.TIME + 60_000));
+
+        try (final ClasspathSession a = new ClasspathSession(Collections.singletonList(first));
+             final ClasspathSession b = new ClasspathSession(Collections.singletonList(second))) {
+            assertEquals(a.fingerprint(), b.fingerprint());
+        }
+    }
+
+    @Test
+    public void fingerprintChangesWithContents() throws IOException {
+        final Path path = Files.write(this.temp.resolve("a.jar"), _jar("java/lang/Object"));
+        try (final ClasspathSession session = new ClasspathSession(Collections.singletonList(path))) {
+            final String before = session.fingerprint();
+
+            // Only the supertype of a class changes
+            Files.write(path, _jar("java/lang/Number"));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            assertTrue(session.refresh());
+            assertNotEquals(before, session.fingerprint());
+        }
+    }
+
+    @Test
+    public void failedRefreshLeavesSessionUnchanged() throws IOException {
+        final Path first = Files.write(this.temp.resolve("a.jar"), _jar("java/lang/Object"));
+        final Path second = Files.write(this.temp.resolve("b.jar"), _jar("java/lang/Number"));
+        try (final ClasspathSession session = new ClasspathSession(Arrays.asList(first, second))) {
+            final String before = session.fingerprint();
+            final byte[] klass = session.get("A");
+            assertNotNull(klass);
+
+            // The first jar changes, and could be reopened - but the second
+            // can't be
+            Files.write(first, _jar("java/lang/Number"));
+            Files.setLastModifiedTime(first, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            Files.write(second, new byte[] { 1, 2, 3 });
+            Files.setLastModifiedTime(second, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            assertThrows(IOException.class, session::refresh);
+
+            assertEquals(before, session.fingerprint());
+            assertArrayEquals(klass, session.get("A"));
+            assertTrue(session.inheritanceProvider().provide("A").isPresent());
+
+            // Deleting a jar fails the refresh as it checks the jar
+            Files.delete(second);
+            assertThrows(IOException.class, session::refresh);
+            assertArrayEquals(klass, session.get("A"));
+        }
+    }
+
+    private static byte[] _jar(final String superName) throws IOException {
+        return TestJars.jar(Collections.singletonMap("A.class", TestJars.klass("A", superName)));
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the entries retained by a {@link JarFile.Analysis} are returned
+ * to the {@link MemoryBudget memory budget} - exactly once.
+ */
+public final class AnalysisTest {
+
+    private static final int CLASSES = 32;
+
+    private ExecutorService executorService;
+    private MemoryBudget budget;
+    private JarFile jar;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executorService = Executors.newFixedThreadPool(4);
+        this.budget = new MemoryBudget(1 << 20);
+
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < CLASSES; i++) {
+            entries.put("C" + i + ".class", TestJars.klass("C" + i, "java/lang/Object"));
+        }
+        this.jar = new JarFile("test.jar", TestJars.jar(entries));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.jar.close();
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void transformReleasesRetainedEntries() throws IOException {
+        final JarFile.Analysis analysis = this.analyze(new TransformOptions().setMemoryBudget(this.budget));
+        assertTrue(analysis.getRetainedBytes() > 0);
+        assertEquals(analysis.getRetainedBytes(), this.budget.getUsedBytes());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        analysis.transform(out, new JarEntryTransformer() {});
+        this.assertReleased(analysis);
+        assertEquals(CLASSES, _count(out.toByteArray()));
+    }
+
+    @Test
+    public void discardReleasesRetainedEntries() throws IOException {
+        final JarFile.Analysis analysis = this.analyze(new TransformOptions().setMemoryBudget(this.budget));
+        analysis.discard();
+        this.assertReleased(analysis);
+    }
+
+    @Test
+    public void failedTransformReleasesRetainedEntries() throws IOException {
+        final JarFile.Analysis analysis = this.analyze(new TransformOptions().setMemoryBudget(this.budget).setBatchSize(1));
+        assertThrows(RuntimeException.class, () -> analysis.transform(new ByteArrayOutputStream(), new JarEntryTransformer() {
+            @Override
+            public JarClassEntry transform(final JarClassEntry entry) {
+                if (entry.getName().equals("C" + CLASSES / 2 + ".class")) throw new IllegalStateException("failed");
+                return entry;
+            }
+        }));
+        this.assertReleased(analysis);
+    }
+
+    @Test
+    public void retainsNoMoreThanRetainedBytes() throws IOException {
+        final long limit = TestJars.klass("C0", "java/lang/Object").length * 4;
+        final JarFile.Analysis analysis = this.analyze(new TransformOptions().setMemoryBudget(this.budget)
+                .setRetainedBytes(limit));
+        assertTrue(analysis.getRetainedBytes() > 0);
+        assertTrue(analysis.getRetainedBytes() <= limit);
+
+        // Entries beyond the limit are read again
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        analysis.transform(out, new JarEntryTransformer() {});
+        this.assertReleased(analysis);
+        assertEquals(CLASSES, _count(out.toByteArray()));
+    }
+
+    private JarFile.Analysis analyze(final TransformOptions options) throws IOException {
+        return this.jar.analyze(this.executorService, options, new JarEntryTransformer() {});
+    }
+
+    private void assertReleased(final JarFile.Analysis analysis) {
+        assertEquals(0, analysis.getRetainedBytes());
+        assertEquals(0, this.budget.getUsedBytes());
+    }
+
+    private static long _count(final byte[] jar) throws IOException {
+        try (final JarFile read = new JarFile("out.jar", jar);
+             final Stream<JarPath> paths = read.walk()) {
+            return paths.count();
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a failed, timed out, or cancelled run stops the entries it has
+ * yet to start - and only completes once those it had started have stopped.
+ */
+public final class CancellationTest {
+
+    private static final int CLASSES = 64;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger transformed = new AtomicInteger();
+    private ExecutorService executorService;
+    private JarFile jar;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executorService = Executors.newFixedThreadPool(2);
+
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < CLASSES; i++) {
+            entries.put("C" + i + ".class", TestJars.klass("C" + i, "java/lang/Object"));
+        }
+        this.jar = new JarFile("test.jar", TestJars.jar(entries));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.jar.close();
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void failedEntryFailsTheRun() {
+        final RuntimeException ex = assertThrows(RuntimeException.class, () -> this.transform(new TransformOptions(), entry -> {
+            if (entry.getName().equals("C1.class")) throw new IllegalStateException("failed");
+        }));
+        assertEquals("failed", ex.getCause().getMessage());
+        this.assertStopped();
+    }
+
+    @Test
+    public void entryTimeoutCancelsTheRun() {
+        final long start = System.nanoTime();
+        assertThrows(InterruptedIOException.class, () -> this.transform(new TransformOptions()
+                .setEntryTimeout(Duration.ofMillis(200)), entry -> {
+            if (entry.getName().equals("C1.class")) Thread.sleep(10_000);
+        }));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        this.assertStopped();
+    }
+
+    @Test
+    public void timeoutCancelsTheRun() {
+        final long start = System.nanoTime();
+        assertThrows(InterruptedIOException.class, () -> this.transform(new TransformOptions()
+                .setTimeout(Duration.ofMillis(300)).setBatchSize(1), entry -> Thread.sleep(100)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        this.assertStopped();
+    }
+
+    @Test
+    public void cancellingTheFutureCancelsTheRun() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletableFuture<Void> future = this.jar.transformAsync(new ByteArrayOutputStream(), this.executorService,
+                new TransformOptions().setBatchSize(1), this.transformer(entry -> {
+                    started.countDown();
+                    Thread.sleep(50);
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        future.cancel(true);
+
+        // The future completes straight away, the run once its entries stop
+        this.jar.drained().get(5, TimeUnit.SECONDS);
+        this.assertStopped();
+    }
+
+    private void transform(final TransformOptions options, final EntryTask task) throws IOException {
+        this.jar.transform(new ByteArrayOutputStream(), this.executorService, options, this.transformer(task));
+    }
+
+    private JarEntryTransformer transformer(final EntryTask task) {
+        return new JarEntryTransformer() {
+            @Override
+            public JarClassEntry transform(final JarClassEntry entry) {
+                CancellationTest.this.active.incrementAndGet();
+                try {
+                    task.run(entry);
+                    CancellationTest.this.transformed.incrementAndGet();
+                    return entry;
+                }
+                catch (final InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                finally {
+                    CancellationTest.this.active.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    private void assertStopped() {
+        // Nothing is still running, and not every entry was started
+        assertEquals(0, this.active.get());
+        assertTrue(this.transformed.get() < CLASSES);
+    }
+
+    @FunctionalInterface
+    private interface EntryTask {
+
+        void run(final JarClassEntry entry) throws InterruptedException;
+
+    }
+
+}
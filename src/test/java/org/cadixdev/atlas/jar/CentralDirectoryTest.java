@@ -0,0 +1,110 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * Checks that a {@link CentralDirectory} reads the same entries, whether the
+ * archive is mapped, read through its channel, or held on the heap.
+ */
+public final class CentralDirectoryTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    public void readsMappedUnmappedAndHeapArchivesAlike() throws IOException {
+        final Map<String, byte[]> entries = _entries();
+        final byte[] jar = TestJars.jar(entries);
+        final Path path = Files.write(this.temp.resolve("test.jar"), jar);
+
+        try (final CentralDirectory mapped = CentralDirectory.open(path);
+             final CentralDirectory unmapped = CentralDirectory.openUnmapped(path);
+             final CentralDirectory heap = CentralDirectory.read(ByteBuffer.wrap(jar))) {
+            for (final CentralDirectory directory : Arrays.asList(mapped, unmapped, heap)) {
+                _assertEntries(entries, directory);
+            }
+        }
+    }
+
+    @Test
+    public void readsArchivesWithPrependedData() throws IOException {
+        // Such as a launcher script, which shifts every offset in the archive
+        final Map<String, byte[]> entries = _entries();
+        final byte[] script = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+        final byte[] jar = TestJars.jar(entries);
+        final byte[] executable = Arrays.copyOf(script, script.length + jar.length);
+        System.arraycopy(jar, 0, executable, script.length, jar.length);
+        final Path path = Files.write(this.temp.resolve("test.jar"), executable);
+
+        try (final CentralDirectory mapped = CentralDirectory.open(path);
+             final CentralDirectory unmapped = CentralDirectory.openUnmapped(path)) {
+            _assertEntries(entries, mapped);
+            _assertEntries(entries, unmapped);
+        }
+    }
+
+    @Test
+    public void readsArchivesOfOverTwoGigabytes() throws IOException {
+        // The archive is written past a hole, so the file is sparse - and
+        // too large to map
+        final Map<String, byte[]> entries = _entries();
+        final Path path = this.temp.resolve("large.jar");
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(TestJars.jar(entries)), 1L << 31);
+        }
+
+        try (final CentralDirectory directory = CentralDirectory.open(path)) {
+            _assertEntries(entries, directory);
+        }
+    }
+
+    @Test
+    public void rejectsArchivesWithoutEndHeader() {
+        assertThrows(ZipException.class, () -> CentralDirectory.read(ByteBuffer.wrap(new byte[64])));
+    }
+
+    private static Map<String, byte[]> _entries() {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("A.class", TestJars.klass("A", "java/lang/Object"));
+        entries.put("b/B.class", TestJars.klass("b/B", "A"));
+        entries.put("b/resource.txt", "resource".getBytes(StandardCharsets.UTF_8));
+        return entries;
+    }
+
+    private static void _assertEntries(final Map<String, byte[]> entries, final CentralDirectory directory)
+            throws IOException {
+        // The parent directory of b/ is also written
+        assertEquals(entries.size() + 1, directory.size());
+        for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            final int index = directory.indexOf(entry.getKey());
+            assertEquals(entry.getValue().length, directory.getSize(index));
+            assertEquals(TestJars.TIME, directory.getTime(index));
+            assertArrayEquals(entry.getValue(), directory.read(index));
+        }
+        assertEquals(-1, directory.indexOf("missing.txt"));
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Checks that a {@link ClassCache} holds, and evicts, the classes its
+ * {@link ClassCachePolicy policy} says to.
+ */
+public final class ClassCacheTest {
+
+    private final List<String> loaded = new ArrayList<>();
+    private final Function<JarPath, JarClassEntry> loader = path -> {
+        this.loaded.add(path.getName());
+        if (path.getName().startsWith("Missing")) return null;
+        // Classes weigh 100 bytes, other than those named large
+        final byte[] contents = new byte[path.getName().startsWith("Large") ? 300 : 100];
+        contents[0] = (byte) path.getName().charAt(0);
+        return new JarClassEntry(path.getName(), TestJars.TIME, contents);
+    };
+
+    @Test
+    public void unboundedCacheKeepsEveryClass() {
+        final ClassCache cache = ClassCache.of(ClassCachePolicy.unbounded());
+        final JarClassEntry a = this.get(cache, "A.class");
+        assertSame(a, this.get(cache, "A.class"));
+        this.get(cache, "B.class");
+        assertNull(this.get(cache, "Missing.class"));
+
+        assertEquals(Arrays.asList("A.class", "B.class", "Missing.class"), this.loaded);
+        _assertStats(cache, 1, 3, 0, 2, 200);
+
+        cache.clear();
+        _assertStats(cache, 1, 3, 0, 0, 0);
+    }
+
+    @Test
+    public void leastRecentlyUsedEvictsTheOldestUse() {
+        final ClassCache cache = ClassCache.of(ClassCachePolicy.leastRecentlyUsed(250));
+        this.get(cache, "A.class");
+        this.get(cache, "B.class");
+        this.get(cache, "A.class");
+        this.get(cache, "C.class");
+        _assertStats(cache, 1, 3, 1, 2, 200);
+
+        // B was used least recently, so was evicted
+        this.loaded.clear();
+        this.get(cache, "A.class");
+        this.get(cache, "C.class");
+        this.get(cache, "B.class");
+        assertEquals(Arrays.asList("B.class"), this.loaded);
+    }
+
+    @Test
+    public void leastFrequentlyUsedEvictsTheFewestUses() {
+        final ClassCache cache = ClassCache.of(ClassCachePolicy.leastFrequentlyUsed(250));
+        this.get(cache, "A.class");
+        this.get(cache, "B.class");
+        this.get(cache, "B.class");
+        this.get(cache, "B.class");
+        this.get(cache, "A.class");
+        this.get(cache, "C.class");
+        _assertStats(cache, 3, 3, 1, 2, 200);
+
+        // A was used less than B, however recently
+        this.loaded.clear();
+        this.get(cache, "B.class");
+        this.get(cache, "C.class");
+        this.get(cache, "A.class");
+        assertEquals(Arrays.asList("A.class"), this.loaded);
+    }
+
+    @Test
+    public void classesLargerThanTheCacheAreNotCached() {
+        final ClassCache cache = ClassCache.of(ClassCachePolicy.leastRecentlyUsed(250));
+        this.get(cache, "A.class");
+        assertNotNull(this.get(cache, "Large.class"));
+        this.get(cache, "Large.class");
+
+        assertEquals(Arrays.asList("A.class", "Large.class", "Large.class"), this.loaded);
+        _assertStats(cache, 0, 3, 0, 1, 100);
+    }
+
+    @Test
+    public void offHeapClassesAreCopiedOnEachUse() {
+        final ClassCache cache = ClassCache.of(ClassCachePolicy.leastRecentlyUsed(250).offHeap());
+        final JarClassEntry first = this.get(cache, "A.class");
+        final JarClassEntry second = this.get(cache, "A.class");
+
+        assertNotSame(first, second);
+        assertEquals(first.getName(), second.getName());
+        assertEquals(first.getTime(), second.getTime());
+        assertArrayEquals(first.getContents(), second.getContents());
+        assertEquals(Arrays.asList("A.class"), this.loaded);
+    }
+
+    @Test
+    public void budgetedCacheEvictsToMakeRoom() {
+        final MemoryBudget budget = new MemoryBudget(250);
+        final ClassCache cache = ClassCache.of(ClassCachePolicy.unbounded().withBudget(budget));
+        this.get(cache, "A.class");
+        this.get(cache, "B.class");
+        this.get(cache, "C.class");
+        _assertStats(cache, 0, 3, 1, 2, 200);
+        assertEquals(200, budget.getUsedBytes());
+
+        cache.clear();
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void budgetedCacheDoesNotEvictForOthers() {
+        final MemoryBudget budget = new MemoryBudget(250);
+        final ClassCache cache = ClassCache.of(ClassCachePolicy.unbounded().withBudget(budget));
+        this.get(cache, "A.class");
+
+        // The budget is taken by someone else, the cache only gives up as much
+        // as the class it would cache
+        budget.reserve(200);
+        this.get(cache, "B.class");
+        this.get(cache, "C.class");
+        _assertStats(cache, 0, 3, 1, 0, 0);
+        assertEquals(200, budget.getUsedBytes());
+    }
+
+    @Test
+    public void jarsCacheTheirClassesByPolicy() throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (final String name : Arrays.asList("A", "B", "C")) {
+            entries.put(name + ".class", TestJars.klass(name, "java/lang/Object"));
+        }
+        final long weight = entries.get("A.class").length;
+
+        try (final JarFile jar = new JarFile("test.jar", ByteBuffer.wrap(TestJars.jar(entries)),
+                ClassCachePolicy.leastRecentlyUsed(weight * 2))) {
+            for (final String name : Arrays.asList("A", "B", "A", "C", "B")) {
+                assertNotNull(jar.getClass(name + ".class"));
+            }
+
+            final ClassCacheStats stats = jar.getCacheStats();
+            assertEquals(1, stats.getHits());
+            assertEquals(4, stats.getMisses());
+            assertEquals(2, stats.getEvictions());
+            assertEquals(2, stats.getSize());
+        }
+    }
+
+    private JarClassEntry get(final ClassCache cache, final String name) {
+        return cache.get(new JarPath(name), this.loader);
+    }
+
+    private static void _assertStats(final ClassCache cache, final long hits, final long misses, final long evictions,
+                                     final long size, final long bytes) {
+        final ClassCacheStats stats = cache.stats();
+        assertEquals(hits, stats.getHits());
+        assertEquals(misses, stats.getMisses());
+        assertEquals(evictions, stats.getEvictions());
+        assertEquals(size, stats.getSize());
+        assertEquals(bytes, stats.getBytes());
+    }
+
+}
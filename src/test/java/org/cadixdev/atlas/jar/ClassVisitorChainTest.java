@@ -0,0 +1,225 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that chained {@link ClassVisitorTransformer}s transform a class as
+ * they would one after another.
+ */
+public final class ClassVisitorChainTest {
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        this.executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void findsTheRunOfClassVisitors() {
+        final JarEntryTransformer[] transformers = {
+                _addField("a"), _addField("b"), new JarEntryTransformer() {}, _addField("c")
+        };
+        assertEquals(2, ClassVisitorChain.end(transformers, 0));
+        assertEquals(2, ClassVisitorChain.end(transformers, 1));
+        assertEquals(2, ClassVisitorChain.end(transformers, 2));
+        assertEquals(4, ClassVisitorChain.end(transformers, 3));
+    }
+
+    @Test
+    public void visitorsSeeTheClassInOrder() {
+        final JarEntryTransformer[] transformers = { _addField("a"), _addField("b"), _addField("c") };
+        final JarClassEntry entry = ClassVisitorChain.transform(_entry("A.class", "A"), transformers, 0, 3);
+
+        // Each visitor adds its field ahead of those it was given
+        assertEquals(Arrays.asList("c", "b", "a"), _fields(entry.getContents()));
+    }
+
+    @Test
+    public void renamesTheClassKeepingItsPrefix() {
+        final JarEntryTransformer[] transformers = {
+                _addField("a"), _rename(Collections.singletonMap("com/foo/A", "org/bar/B"))
+        };
+        final JarClassEntry entry = ClassVisitorChain.transform(
+                _entry("META-INF/versions/9/com/foo/A.class", "com/foo/A"), transformers, 0, 2);
+
+        assertEquals("META-INF/versions/9/org/bar/B.class", entry.getName());
+        assertEquals(TestJars.TIME, entry.getTime());
+        assertEquals("org/bar/B", new ClassReader(entry.getContents()).getClassName());
+
+        // An unrenamed class keeps its name
+        final JarClassEntry unrenamed = ClassVisitorChain.transform(_entry("Other.class", "Other"), transformers, 0, 2);
+        assertEquals("Other.class", unrenamed.getName());
+    }
+
+    @Test
+    public void mergesTheFlagsOfEachTransformer() {
+        // One transformer skips debug information, the other computes the
+        // maximum stack size - which the class gets wrong
+        final JarEntryTransformer[] transformers = {
+                _flags(ClassReader.SKIP_DEBUG, 0), _flags(0, ClassWriter.COMPUTE_MAXS)
+        };
+        final JarClassEntry entry = ClassVisitorChain.transform(_entry("A.class", "A"), transformers, 0, 2);
+
+        final ClassNode node = _node(entry.getContents());
+        assertNull(node.sourceFile);
+        assertEquals(1, node.methods.get(0).maxStack);
+
+        // Transformed alone, each only applies its own flags
+        final ClassNode skipped = _node(((ClassVisitorTransformer) transformers[0])
+                .transform(_entry("A.class", "A")).getContents());
+        assertNull(skipped.sourceFile);
+        assertEquals(0, skipped.methods.get(0).maxStack);
+        final ClassNode computed = _node(((ClassVisitorTransformer) transformers[1])
+                .transform(_entry("A.class", "A")).getContents());
+        assertEquals("A.java", computed.sourceFile);
+        assertEquals(1, computed.methods.get(0).maxStack);
+    }
+
+    @Test
+    public void fusedTransformationMatchesUnfused() throws IOException {
+        final JarEntryTransformer[] transformers = {
+                _addField("a"), _rename(Collections.singletonMap("com/foo/A", "org/bar/B")), _addField("b")
+        };
+        final byte[] jar = TestJars.jar(Collections.singletonMap("com/foo/A.class", _klass("com/foo/A")));
+
+        final byte[] fused = this.transform(jar, new TransformOptions().setFuseClassVisitors(true), transformers);
+        final byte[] unfused = this.transform(jar, new TransformOptions().setFuseClassVisitors(false), transformers);
+        try (final JarFile a = new JarFile("fused.jar", fused);
+             final JarFile b = new JarFile("unfused.jar", unfused)) {
+            // The constant pools of the classes may differ, as the unfused
+            // class was written twice - but not what they declare
+            final ClassNode expected = _node(b.getClass("org/bar/B.class").getContents());
+            final ClassNode actual = _node(a.getClass("org/bar/B.class").getContents());
+            assertEquals("org/bar/B", actual.name);
+            assertEquals(Arrays.asList("b", "a"), _fields(actual));
+            assertEquals(_fields(expected), _fields(actual));
+            assertEquals(expected.methods.size(), actual.methods.size());
+            assertEquals(expected.sourceFile, actual.sourceFile);
+        }
+    }
+
+    private byte[] transform(final byte[] contents, final TransformOptions options,
+                             final JarEntryTransformer... transformers) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarFile jar = new JarFile("test.jar", contents)) {
+            jar.transform(out, this.executorService, options, transformers);
+        }
+        return out.toByteArray();
+    }
+
+    private static ClassVisitorTransformer _addField(final String name) {
+        return parent -> new ClassVisitor(Opcodes.ASM7, parent) {
+            @Override
+            public void visit(final int version, final int access, final String className, final String signature,
+                              final String superName, final String[] interfaces) {
+                super.visit(version, access, className, signature, superName, interfaces);
+                super.visitField(Opcodes.ACC_PUBLIC, name, "I", null, null).visitEnd();
+            }
+        };
+    }
+
+    private static ClassVisitorTransformer _rename(final Map<String, String> mappings) {
+        return parent -> new ClassRemapper(parent, new SimpleRemapper(mappings));
+    }
+
+    private static ClassVisitorTransformer _flags(final int readerFlags, final int writerFlags) {
+        return new ClassVisitorTransformer() {
+            @Override
+            public ClassVisitor visitor(final ClassVisitor parent) {
+                // Methods are visited, rather than copied as they were read
+                return new ClassVisitor(Opcodes.ASM7, parent) {
+                    @Override
+                    public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
+                                                     final String signature, final String[] exceptions) {
+                        return new MethodVisitor(Opcodes.ASM7, super.visitMethod(access, name, descriptor, signature,
+                                exceptions)) {};
+                    }
+                };
+            }
+
+            @Override
+            public int readerFlags() {
+                return readerFlags;
+            }
+
+            @Override
+            public int writerFlags() {
+                return writerFlags;
+            }
+        };
+    }
+
+    private static JarClassEntry _entry(final String path, final String name) {
+        return new JarClassEntry(path, TestJars.TIME, _klass(name));
+    }
+
+    /**
+     * Writes a class with a source file, and a method whose maximum stack
+     * size is wrong.
+     */
+    private static byte[] _klass(final String name) {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        writer.visitSource("A.java", null);
+        final MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "zero", "()I", null, null);
+        method.visitCode();
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static ClassNode _node(final byte[] klass) {
+        final ClassNode node = new ClassNode();
+        new ClassReader(klass).accept(node, 0);
+        return node;
+    }
+
+    private static List<String> _fields(final byte[] klass) {
+        return _fields(_node(klass));
+    }
+
+    private static List<String> _fields(final ClassNode node) {
+        return node.fields.stream().map(field -> field.name).collect(Collectors.toList());
+    }
+
+}
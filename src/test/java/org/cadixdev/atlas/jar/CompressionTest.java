@@ -0,0 +1,155 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Checks that transformed entries are compressed as the {@link TransformOptions}
+ * dictate.
+ */
+public final class CompressionTest {
+
+    private static final byte[] TEXT = _text();
+
+    private ExecutorService executorService;
+    private JarFile jar;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executorService = Executors.newFixedThreadPool(2);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(out)) {
+            writer.write(JarWriter.encode("deflated.txt", TestJars.TIME, TEXT));
+            writer.write(JarWriter.store("stored.txt", TestJars.TIME, TEXT));
+        }
+        this.jar = new JarFile("test.jar", out.toByteArray());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.jar.close();
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void deflatesTransformedEntriesByDefault() throws IOException {
+        try (final JarFile result = this.transform(new TransformOptions())) {
+            assertEquals(ZipEntry.DEFLATED, _method(result, "deflated.txt"));
+            assertEquals(ZipEntry.DEFLATED, _method(result, "stored.txt"));
+            _assertContents(result);
+        }
+    }
+
+    @Test
+    public void keepsCompressionMethod() throws IOException {
+        try (final JarFile result = this.transform(new TransformOptions().setKeepCompressionMethod(true))) {
+            assertEquals(ZipEntry.DEFLATED, _method(result, "deflated.txt"));
+            assertEquals(ZipEntry.STORED, _method(result, "stored.txt"));
+            _assertContents(result);
+        }
+    }
+
+    @Test
+    public void storesMatchingEntries() throws IOException {
+        try (final JarFile result = this.transform(new TransformOptions().setStoredEntries(JarPathFilter.all()))) {
+            assertEquals(ZipEntry.STORED, _method(result, "deflated.txt"));
+            assertEquals(ZipEntry.STORED, _method(result, "stored.txt"));
+            _assertContents(result);
+        }
+    }
+
+    @Test
+    public void deflatesAtCompressionLevel() throws IOException {
+        try (final JarFile fast = this.transform(new TransformOptions().setCompressionLevel(Deflater.NO_COMPRESSION));
+             final JarFile best = this.transform(new TransformOptions().setCompressionLevel(Deflater.BEST_COMPRESSION))) {
+            final CentralDirectory fastDirectory = fast.getDirectory();
+            final CentralDirectory bestDirectory = best.getDirectory();
+            assertTrue(fastDirectory.getCompressedSize(fastDirectory.indexOf("deflated.txt"))
+                    > bestDirectory.getCompressedSize(bestDirectory.indexOf("deflated.txt")));
+            _assertContents(fast);
+            _assertContents(best);
+        }
+    }
+
+    @Test
+    public void readsCompressionMethodWithoutReadingEntry() throws IOException {
+        // Without a transform cache, nothing needs the entry as it is stored
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(out)) {
+            final Transformation transformation = new Transformation(writer, null,
+                    new TransformOptions().setKeepCompressionMethod(true), new JarEntryTransformer[] { new JarEntryTransformer() {} });
+            transformation.transform(new JarPath("stored.txt"), new Transformation.Source() {
+                @Override
+                public EncodedEntry raw() {
+                    throw new AssertionError("read as stored");
+                }
+
+                @Override
+                public int method() {
+                    return ZipEntry.STORED;
+                }
+
+                @Override
+                public AbstractJarEntry read() {
+                    return new JarResourceEntry("stored.txt", TestJars.TIME, TEXT);
+                }
+
+                @Override
+                public long size() {
+                    return TEXT.length;
+                }
+            });
+        }
+
+        try (final JarFile result = new JarFile("result.jar", out.toByteArray())) {
+            assertEquals(ZipEntry.STORED, _method(result, "stored.txt"));
+        }
+    }
+
+    private JarFile transform(final TransformOptions options) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.jar.transform(out, this.executorService, options, new JarEntryTransformer() {});
+        return new JarFile("result.jar", out.toByteArray());
+    }
+
+    private static int _method(final JarFile jar, final String name) {
+        return jar.getDirectory().getMethod(jar.getDirectory().indexOf(name));
+    }
+
+    private static void _assertContents(final JarFile jar) throws IOException {
+        assertArrayEquals(TEXT, jar.get(new JarPath("deflated.txt")).getContents());
+        assertArrayEquals(TEXT, jar.get(new JarPath("stored.txt")).getContents());
+    }
+
+    private static byte[] _text() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 512; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
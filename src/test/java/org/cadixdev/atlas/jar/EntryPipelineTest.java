@@ -0,0 +1,158 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Checks that an {@link EntryPipeline} draws its entries lazily, in batches,
+ * with a bounded number in flight.
+ */
+public final class EntryPipelineTest {
+
+    private ExecutorService executorService;
+
+    private final AtomicInteger drawn = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        this.executorService = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void runsEveryEntryOnce() {
+        final Map<Integer, AtomicInteger> handled = new ConcurrentHashMap<>();
+        final TransformOptions options = new TransformOptions().setMaxInFlight(4).setBatchSize(16);
+        this.start(1000, 1, options, entry -> handled.computeIfAbsent(entry, k -> new AtomicInteger()).incrementAndGet())
+                .join();
+
+        assertEquals(1000, handled.size());
+        assertTrue(handled.values().stream().allMatch(count -> count.get() == 1));
+    }
+
+    @Test
+    public void boundsTheBatchesInFlight() {
+        final TransformOptions options = new TransformOptions().setMaxInFlight(2).setBatchSize(1);
+        this.start(200, 1, options, entry -> {
+            // Batches are drawn as they're submitted, only as many as may be
+            // in flight
+            assertTrue(this.drawn.get() - entry <= 2);
+            this.sleep();
+        }).join();
+
+        assertTrue(this.maxRunning.get() <= 2, () -> this.maxRunning.get() + " batches ran at once");
+    }
+
+    @Test
+    public void batchesEntriesByCountAndSize() {
+        // With one batch in flight, each batch is drawn as the last completes
+        final List<Integer> drawnAt = new ArrayList<>();
+        this.start(10, 1, new TransformOptions().setMaxInFlight(1).setBatchSize(4), entry -> drawnAt.add(this.drawn.get()))
+                .join();
+        assertEquals(Arrays.asList(4, 4, 4, 4, 8, 8, 8, 8, 10, 10), drawnAt);
+
+        // Batches are closed once they reach the batch bytes
+        this.drawn.set(0);
+        drawnAt.clear();
+        this.start(7, 40, new TransformOptions().setMaxInFlight(1).setBatchSize(4).setBatchBytes(100),
+                entry -> drawnAt.add(this.drawn.get())).join();
+        assertEquals(Arrays.asList(3, 3, 3, 6, 6, 6, 7), drawnAt);
+    }
+
+    @Test
+    public void failureStopsDrawingEntries() {
+        final IOException failure = new IOException("entry 10");
+        final TransformOptions options = new TransformOptions().setMaxInFlight(2).setBatchSize(1);
+        final CompletionException ex = assertThrows(CompletionException.class, () -> this.start(10_000, 1, options,
+                entry -> {
+                    if (entry == 10) throw failure;
+                }).join());
+
+        assertSame(failure, ex.getCause());
+        assertTrue(this.drawn.get() < 100, () -> this.drawn.get() + " entries were drawn");
+    }
+
+    @Test
+    public void memoryBudgetBoundsTheBatchesInFlight() {
+        final MemoryBudget budget = new MemoryBudget(100);
+        final TransformOptions options = new TransformOptions().setMaxInFlight(8).setBatchSize(1)
+                .setMemoryBudget(budget);
+
+        // Two entries of 60 bytes overdraw the budget, so no more are drawn
+        this.start(100, 60, options, entry -> this.sleep()).join();
+        assertTrue(this.maxRunning.get() <= 2, () -> this.maxRunning.get() + " batches ran at once");
+        assertEquals(0, budget.getUsedBytes());
+
+        // An entry larger than the whole budget is still run
+        this.start(2, 1000, options, entry -> {}).join();
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    private CompletableFuture<Void> start(final int count, final long size, final TransformOptions options,
+                                          final EntryPipeline.EntryTask<Integer> task) {
+        final Iterator<Integer> entries = IntStream.range(0, count).iterator();
+        final Iterator<Integer> counted = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                EntryPipelineTest.this.drawn.incrementAndGet();
+                return entries.next();
+            }
+        };
+        return new EntryPipeline<>(counted, entry -> size, this.executorService, options, entry -> {
+            this.maxRunning.accumulateAndGet(this.running.incrementAndGet(), Math::max);
+            try {
+                task.run(entry);
+            }
+            finally {
+                this.running.decrementAndGet();
+            }
+        }, new TransformRun(options)).start();
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(1);
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.atlas.Atlas;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+/**
+ * Checks that a {@link JarFile jar} held in memory is read, and transformed,
+ * as one on disk would be.
+ */
+public final class InMemoryJarTest {
+
+    private static final byte[] TEXT = "resource".getBytes(StandardCharsets.UTF_8);
+
+    private ExecutorService executorService;
+    private byte[] contents;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executorService = Executors.newFixedThreadPool(4);
+
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/A.class", TestJars.klass("a/A", "lib/Base"));
+        entries.put("a/resource.txt", TEXT);
+        this.contents = TestJars.jar(entries);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void readsHeapAndDirectBuffers() throws IOException {
+        // The jar is read from the buffer's position to its limit
+        final ByteBuffer padded = ByteBuffer.allocate(this.contents.length + 32);
+        padded.position(16);
+        padded.put(this.contents);
+        padded.position(16).limit(16 + this.contents.length);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(this.contents.length);
+        direct.put(this.contents).flip();
+
+        for (final ByteBuffer buffer : Arrays.asList(ByteBuffer.wrap(this.contents), padded, direct)) {
+            try (final JarFile jar = new JarFile("test.jar", buffer)) {
+                assertEquals("test.jar", jar.getName());
+                assertEquals(Arrays.asList("a/A.class", "a/resource.txt"), _walk(jar));
+                assertNotNull(jar.getClass("a/A.class"));
+                assertArrayEquals(TEXT, jar.get(new JarPath("a/resource.txt")).getContents());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsMalformedContents() {
+        assertThrows(ZipException.class, () -> new JarFile("test.jar", Arrays.copyOf(this.contents, 40)));
+    }
+
+    @Test
+    public void transformsToAStream() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarFile jar = new JarFile("test.jar", this.contents)) {
+            jar.transform(out, this.executorService, new TransformOptions(), new JarEntryTransformer() {
+                @Override
+                public JarResourceEntry transform(final JarResourceEntry entry) {
+                    final String text = new String(entry.getContents(), StandardCharsets.UTF_8);
+                    return new JarResourceEntry(entry.getName(), entry.getTime(),
+                            text.toUpperCase().getBytes(StandardCharsets.UTF_8));
+                }
+            });
+        }
+
+        try (final JarFile result = new JarFile("result.jar", out.toByteArray())) {
+            assertEquals(Arrays.asList("a/A.class", "a/resource.txt"), _walk(result));
+            assertArrayEquals("RESOURCE".getBytes(StandardCharsets.UTF_8),
+                    result.get(new JarPath("a/resource.txt")).getContents());
+        }
+    }
+
+    @Test
+    public void atlasRunsWithJarsHeldInMemory() throws IOException {
+        final byte[] library = TestJars.jar(Collections.singletonMap("lib/Base.class",
+                TestJars.klass("lib/Base", "java/lang/Object")));
+        final Set<String> parents = ConcurrentHashMap.newKeySet();
+
+        try (final Atlas atlas = new Atlas(this.executorService);
+             final JarFile lib = new JarFile("lib.jar", library);
+             final JarFile jar = new JarFile("test.jar", this.contents)) {
+            atlas.getClasspathJars().add(lib);
+            atlas.install(context -> new JarEntryTransformer() {
+                @Override
+                public JarClassEntry transform(final JarClassEntry entry) {
+                    // The class's parents are known, from the classpath held
+                    // in memory
+                    final InheritanceProvider provider = context.inheritanceProvider();
+                    provider.provide("a/A").ifPresent(info -> info.provideParents(provider)
+                            .forEach(parent -> parents.add(parent.getName())));
+                    return entry;
+                }
+            });
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            atlas.run(jar, out);
+            try (final JarFile result = new JarFile("result.jar", out.toByteArray())) {
+                assertEquals(Arrays.asList("a/A.class", "a/resource.txt"), _walk(result));
+            }
+        }
+        assertTrue(parents.contains("lib/Base"), () -> "parents: " + parents);
+    }
+
+    private static List<String> _walk(final JarFile jar) throws IOException {
+        try (final Stream<JarPath> stream = jar.walk()) {
+            return stream.map(JarPath::getName).sorted().collect(Collectors.toList());
+        }
+    }
+
+}
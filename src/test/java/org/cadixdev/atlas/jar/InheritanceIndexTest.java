@@ -0,0 +1,200 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider.ClassInfo;
+import org.cadixdev.bombe.analysis.InheritanceType;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks that an {@link InheritanceIndex} records the hierarchy of its jar,
+ * and is saved, reopened, and rebuilt as need be.
+ */
+public final class InheritanceIndexTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    public void recordsTheHierarchyOfEachClass() throws IOException {
+        final Map<String, byte[]> entries = _entries();
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(entries))) {
+            final InheritanceIndex index = InheritanceIndex.build(jar);
+            // Unreadable classes, and module descriptors, are left out
+            assertEquals(3, index.size());
+
+            final ClassInfo bar = index.provide("com/foo/Bar").orElseThrow(AssertionError::new);
+            assertEquals("com/foo/Bar", bar.getName());
+            assertFalse(bar.isInterface());
+            assertEquals("com/foo/Base", bar.getSuperName());
+            assertEquals(Collections.singletonList("com/foo/Named"), bar.getInterfaces());
+            assertEquals(InheritanceType.NONE, bar.getFields().get(FieldSignature.of("name", "Ljava/lang/String;")));
+            assertEquals(InheritanceType.PROTECTED, bar.getFieldsByName().get("count"));
+            assertEquals(InheritanceType.PUBLIC, bar.getMethods().get(MethodSignature.of("getName", "()Ljava/lang/String;")));
+            assertEquals(InheritanceType.PACKAGE_PRIVATE, bar.getMethods().get(MethodSignature.of("reset", "()V")));
+
+            assertTrue(index.provide("com/foo/Named").orElseThrow(AssertionError::new).isInterface());
+            assertFalse(index.provide("com/foo/Broken").isPresent());
+            assertFalse(index.provide("java/lang/Object").isPresent());
+
+            // The index answers as reading the class itself would
+            for (final String name : Arrays.asList("com/foo/Bar", "com/foo/Base", "com/foo/Named")) {
+                _assertSame(InheritanceIndex.info(name, entries.get(name + ".class")), index.provide(name).get());
+            }
+        }
+    }
+
+    @Test
+    public void savedIndexIsReopened() throws IOException {
+        final Path directory = this.temp.resolve("indexes");
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(_entries()))) {
+            final InheritanceIndex built = InheritanceIndex.open(jar, directory);
+            final Path saved = _single(directory);
+            final FileTime written = FileTime.fromMillis(Files.getLastModifiedTime(saved).toMillis() - 60_000);
+            Files.setLastModifiedTime(saved, written);
+
+            final InheritanceIndex reopened = InheritanceIndex.open(jar, directory);
+            assertEquals(written, Files.getLastModifiedTime(saved));
+            assertEquals(built.size(), reopened.size());
+            assertEquals(built.fingerprint(), reopened.fingerprint());
+            assertEquals(InheritanceIndex.build(jar).fingerprint(), reopened.fingerprint());
+            _assertSame(built.provide("com/foo/Bar").get(), reopened.provide("com/foo/Bar").get());
+        }
+    }
+
+    @Test
+    public void corruptIndexIsRebuilt() throws IOException {
+        final Path directory = this.temp.resolve("indexes");
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(_entries()))) {
+            final String fingerprint = InheritanceIndex.open(jar, directory).fingerprint();
+            Files.write(_single(directory), new byte[] { 1, 2, 3, 4 });
+
+            final InheritanceIndex rebuilt = InheritanceIndex.open(jar, directory);
+            assertEquals(fingerprint, rebuilt.fingerprint());
+            assertEquals("com/foo/Base", rebuilt.provide("com/foo/Bar").get().getSuperName());
+            assertEquals(1, _list(directory).size());
+        }
+    }
+
+    @Test
+    public void indexesAreKeyedByTheContentsOfTheirJar() throws IOException {
+        final Path directory = this.temp.resolve("indexes");
+        final Map<String, byte[]> entries = _entries();
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(entries))) {
+            InheritanceIndex.open(jar, directory);
+        }
+        // The same contents, in another jar, share the index
+        try (final JarFile jar = new JarFile("copy.jar", TestJars.jar(entries))) {
+            InheritanceIndex.open(jar, directory);
+        }
+        assertEquals(1, _list(directory).size());
+
+        entries.put("com/foo/Base.class", TestJars.klass("com/foo/Base", "java/lang/Number"));
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(entries))) {
+            final InheritanceIndex index = InheritanceIndex.open(jar, directory);
+            assertEquals("java/lang/Number", index.provide("com/foo/Base").get().getSuperName());
+        }
+        assertEquals(2, _list(directory).size());
+    }
+
+    @Test
+    public void fingerprintIgnoresTheOrderOfEntries() throws IOException {
+        final Map<String, byte[]> entries = _entries();
+        final Map<String, byte[]> reversed = new LinkedHashMap<>();
+        final List<String> names = new ArrayList<>(entries.keySet());
+        Collections.reverse(names);
+        names.forEach(name -> reversed.put(name, entries.get(name)));
+
+        try (final JarFile a = new JarFile("a.jar", TestJars.jar(entries));
+             final JarFile b = new JarFile("b.jar", TestJars.jar(reversed))) {
+            assertEquals(InheritanceIndex.build(a).fingerprint(), InheritanceIndex.build(b).fingerprint());
+
+            entries.put("com/foo/Base.class", TestJars.klass("com/foo/Base", "java/lang/Number"));
+            try (final JarFile c = new JarFile("c.jar", TestJars.jar(entries))) {
+                assertNotEquals(InheritanceIndex.build(a).fingerprint(), InheritanceIndex.build(c).fingerprint());
+            }
+        }
+    }
+
+    private static Map<String, byte[]> _entries() {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("com/foo/Bar.class", _bar());
+        entries.put("com/foo/Base.class", TestJars.klass("com/foo/Base", "java/lang/Object"));
+        entries.put("com/foo/Named.class", _named());
+        entries.put("com/foo/Broken.class", new byte[] { (byte) 0xCA, (byte) 0xFE });
+        entries.put("module-info.class", TestJars.klass("module-info", null));
+        return entries;
+    }
+
+    private static byte[] _bar() {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "com/foo/Bar", null, "com/foo/Base",
+                new String[] { "com/foo/Named" });
+        writer.visitField(Opcodes.ACC_PRIVATE, "name", "Ljava/lang/String;", null, null).visitEnd();
+        writer.visitField(Opcodes.ACC_PROTECTED, "count", "I", null, null).visitEnd();
+        writer.visitMethod(Opcodes.ACC_PUBLIC, "getName", "()Ljava/lang/String;", null, null).visitEnd();
+        writer.visitMethod(0, "reset", "()V", null, null).visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] _named() {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "com/foo/Named",
+                null, "java/lang/Object", null);
+        writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "getName", "()Ljava/lang/String;", null, null)
+                .visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void _assertSame(final ClassInfo expected, final ClassInfo actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.isInterface(), actual.isInterface());
+        assertEquals(expected.getSuperName(), actual.getSuperName());
+        assertEquals(expected.getInterfaces(), actual.getInterfaces());
+        assertEquals(expected.getFields(), actual.getFields());
+        assertEquals(expected.getFieldsByName(), actual.getFieldsByName());
+        assertEquals(expected.getMethods(), actual.getMethods());
+    }
+
+    private static Path _single(final Path directory) throws IOException {
+        final List<Path> indexes = _list(directory);
+        assertEquals(1, indexes.size());
+        return indexes.get(0);
+    }
+
+    private static List<Path> _list(final Path directory) throws IOException {
+        try (final Stream<Path> stream = Files.list(directory)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks the entries matched by {@link JarPathFilter}s, and the prefixes they
+ * narrow a walk to.
+ */
+public final class JarPathFilterTest {
+
+    @Test
+    public void singleStarMatchesWithinADirectory() {
+        final JarPathFilter filter = JarPathFilter.glob("com/foo/*.class");
+        assertTrue(_matches(filter, "com/foo/Bar.class"));
+        assertTrue(_matches(filter, "com/foo/.class"));
+        assertFalse(_matches(filter, "com/foo/bar/Baz.class"));
+        assertFalse(_matches(filter, "com/foo/Bar.txt"));
+        assertEquals("com/foo/", filter.getPrefix());
+    }
+
+    @Test
+    public void doubleStarMatchesAcrossDirectories() {
+        final JarPathFilter filter = JarPathFilter.glob("com/foo/**.class");
+        assertTrue(_matches(filter, "com/foo/Bar.class"));
+        assertTrue(_matches(filter, "com/foo/bar/baz/Qux.class"));
+        assertFalse(_matches(filter, "com/Foo.class"));
+    }
+
+    @Test
+    public void doubleStarDirectoryMatchesNoDirectories() {
+        final JarPathFilter filter = JarPathFilter.glob("com/**/*.class");
+        assertTrue(_matches(filter, "com/Foo.class"));
+        assertTrue(_matches(filter, "com/foo/Bar.class"));
+        assertTrue(_matches(filter, "com/foo/bar/Baz.class"));
+        assertFalse(_matches(filter, "comFoo.class"));
+        assertFalse(_matches(filter, "org/Foo.class"));
+        assertEquals("com/", filter.getPrefix());
+    }
+
+    @Test
+    public void questionMarkMatchesASingleCharacter() {
+        final JarPathFilter filter = JarPathFilter.glob("a?c.txt");
+        assertTrue(_matches(filter, "abc.txt"));
+        assertFalse(_matches(filter, "ac.txt"));
+        assertFalse(_matches(filter, "abbc.txt"));
+        assertFalse(_matches(filter, "a/c.txt"));
+        assertEquals("a", filter.getPrefix());
+    }
+
+    @Test
+    public void globsQuoteRegexCharacters() {
+        final JarPathFilter filter = JarPathFilter.glob("META-INF/(a)+[b].txt");
+        assertTrue(_matches(filter, "META-INF/(a)+[b].txt"));
+        assertFalse(_matches(filter, "META-INF/aa[b].txt"));
+        assertFalse(_matches(JarPathFilter.glob("*.txt"), "a.txts"));
+        assertFalse(_matches(JarPathFilter.glob("a.txt"), "abtxt"));
+    }
+
+    @Test
+    public void packagesMatchTheirSubPackagesOnly() {
+        final JarPathFilter filter = JarPathFilter.inPackage("com.foo");
+        assertEquals("com/foo/", filter.getPrefix());
+        assertTrue(_matches(filter, "com/foo/Bar.class"));
+        assertTrue(_matches(filter, "com/foo/bar/Baz.class"));
+        assertFalse(_matches(filter, "com/foobar/Baz.class"));
+        assertEquals("com/foo/", JarPathFilter.inPackage("com/foo/").getPrefix());
+        assertEquals("", JarPathFilter.inPackage("").getPrefix());
+    }
+
+    @Test
+    public void combinedFiltersKeepTheLongerPrefix() {
+        final JarPathFilter filter = JarPathFilter.inPackage("com")
+                .and(JarPathFilter.glob("com/foo/*.class"))
+                .and(JarPathFilter.matching(path -> !path.getName().contains("Internal")));
+        assertEquals("com/foo/", filter.getPrefix());
+        assertTrue(_matches(filter, "com/foo/Bar.class"));
+        assertFalse(_matches(filter, "com/foo/Internal.class"));
+
+        // The prefixes are disjoint, so nothing matches
+        final JarPathFilter disjoint = JarPathFilter.inPackage("com").and(JarPathFilter.inPackage("org"));
+        assertFalse(_matches(disjoint, "com/Foo.class"));
+        assertFalse(_matches(disjoint, "org/Foo.class"));
+    }
+
+    @Test
+    public void walksOnlyTheMatchedEntries() throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("com/Foo.class", TestJars.klass("com/Foo", "java/lang/Object"));
+        entries.put("com/foo/Bar.class", TestJars.klass("com/foo/Bar", "com/Foo"));
+        entries.put("com/foo/bar.txt", "bar".getBytes(StandardCharsets.UTF_8));
+        entries.put("com/foobar/Baz.class", TestJars.klass("com/foobar/Baz", "com/Foo"));
+        entries.put("org/Foo.class", TestJars.klass("org/Foo", "java/lang/Object"));
+
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(entries))) {
+            assertEquals(Arrays.asList("com/foo/Bar.class", "com/foo/bar.txt"), _walk(jar, JarPathFilter.inPackage("com.foo")));
+            assertEquals(Arrays.asList("com/Foo.class", "com/foo/Bar.class", "com/foobar/Baz.class"),
+                    _walk(jar, JarPathFilter.glob("com/**/*.class")));
+            assertEquals(Arrays.asList("com/foo/bar.txt"),
+                    _walk(jar, JarPathFilter.glob("com/**"), JarVisitOption.IGNORE_CLASSES));
+            assertEquals(entries.size(), _walk(jar, JarPathFilter.all()).size());
+        }
+    }
+
+    private static boolean _matches(final JarPathFilter filter, final String name) {
+        return filter.matches(new JarPath(name));
+    }
+
+    private static List<String> _walk(final JarFile jar, final JarPathFilter filter, final JarVisitOption... options)
+            throws IOException {
+        try (final Stream<JarPath> stream = jar.walk(filter, options)) {
+            return stream.map(JarPath::getName).sorted().collect(Collectors.toList());
+        }
+    }
+
+}
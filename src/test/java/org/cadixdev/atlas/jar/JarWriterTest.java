@@ -0,0 +1,182 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Round-trips jars written by {@link JarWriter} through {@link ZipFile}.
+ */
+public final class JarWriterTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    public void writesDeflatedAndStoredEntries() throws IOException {
+        final byte[] text = _text(4096);
+        final Path jar = this.write(writer -> {
+            assertTrue(writer.write(JarWriter.encode("a/b/deflated.txt", TestJars.TIME, text)));
+            assertTrue(writer.write(JarWriter.store("stored.txt", TestJars.TIME, text)));
+        });
+
+        try (final ZipFile zip = new ZipFile(jar.toFile())) {
+            final ZipEntry deflated = zip.getEntry("a/b/deflated.txt");
+            assertNotNull(deflated);
+            assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+            assertEquals(TestJars.TIME, deflated.getTime());
+            assertArrayEquals(text, _read(zip, deflated));
+
+            final ZipEntry stored = zip.getEntry("stored.txt");
+            assertNotNull(stored);
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertEquals(text.length, stored.getCompressedSize());
+            assertArrayEquals(text, _read(zip, stored));
+
+            // Parent directories are written ahead of their entries
+            assertNotNull(zip.getEntry("a/"));
+            assertNotNull(zip.getEntry("a/b/"));
+            assertEquals(4, zip.size());
+        }
+    }
+
+    @Test
+    public void writesZip64ForManyEntries() throws IOException {
+        final int count = 0xFFFF + 100;
+        final Path jar = this.write(writer -> {
+            for (int i = 0; i < count; i++) {
+                writer.write(JarWriter.store("entry" + i, TestJars.TIME, _text(i % 8)));
+            }
+        });
+
+        try (final ZipFile zip = new ZipFile(jar.toFile())) {
+            assertEquals(count, zip.size());
+            assertArrayEquals(_text((count - 1) % 8), _read(zip, zip.getEntry("entry" + (count - 1))));
+        }
+        try (final JarFile read = new JarFile(jar);
+             final Stream<JarPath> paths = read.walk()) {
+            assertEquals(count, paths.count());
+        }
+    }
+
+    @Test
+    public void writesZip64ForLargeEntries() throws IOException {
+        // Only the headers are checked, so the entry claims a size its data
+        // doesn't have
+        final long size = 5L << 30;
+        final EncodedEntry encoded = JarWriter.encode("small.txt", TestJars.TIME, _text(4));
+        final Path jar = this.write(writer -> {
+            writer.write(new EncodedEntry("large.txt", TestJars.TIME, ZipEntry.DEFLATED, encoded.crc, size, encoded.data()));
+            writer.write(encoded);
+        });
+
+        try (final ZipFile zip = new ZipFile(jar.toFile())) {
+            final ZipEntry large = zip.getEntry("large.txt");
+            assertEquals(size, large.getSize());
+            assertEquals(encoded.data.remaining(), large.getCompressedSize());
+            assertArrayEquals(_text(4), _read(zip, zip.getEntry("small.txt")));
+        }
+        try (final ZipInputStream in = new ZipInputStream(Files.newInputStream(jar))) {
+            final ZipEntry large = in.getNextEntry();
+            assertEquals("large.txt", large.getName());
+            assertEquals(size, large.getSize());
+            assertEquals(encoded.data.remaining(), large.getCompressedSize());
+        }
+        try (final JarFile read = new JarFile(jar)) {
+            final CentralDirectory directory = read.getDirectory();
+            assertEquals(size, directory.getSize(directory.indexOf("large.txt")));
+            assertEquals(_text(4).length, directory.getSize(directory.indexOf("small.txt")));
+        }
+    }
+
+    @Test
+    public void skipsDuplicateEntries() throws IOException {
+        final Path jar = this.write(writer -> {
+            assertTrue(writer.write(JarWriter.encode("entry.txt", TestJars.TIME, _bytes("first"))));
+            assertFalse(writer.write(JarWriter.encode("entry.txt", TestJars.TIME, _bytes("second"))));
+        });
+
+        try (final ZipFile zip = new ZipFile(jar.toFile())) {
+            assertEquals(1, zip.size());
+            assertArrayEquals(_bytes("first"), _read(zip, zip.getEntry("entry.txt")));
+        }
+    }
+
+    @Test
+    public void replacesEarlierEntries() throws IOException {
+        final Path jar = this.write(writer -> {
+            writer.write(JarWriter.encode("entry.txt", TestJars.TIME, _bytes("first")));
+            writer.write(JarWriter.encode("other.txt", TestJars.TIME, _bytes("other")));
+            writer.replace(JarWriter.store("entry.txt", TestJars.TIME, _bytes("second")));
+        });
+
+        try (final ZipFile zip = new ZipFile(jar.toFile())) {
+            // The replaced entry is no longer in the central directory
+            assertEquals(2, zip.size());
+            assertArrayEquals(_bytes("second"), _read(zip, zip.getEntry("entry.txt")));
+            assertArrayEquals(_bytes("other"), _read(zip, zip.getEntry("other.txt")));
+        }
+    }
+
+    private Path write(final WriterTask task) throws IOException {
+        final Path jar = this.temp.resolve("test.jar");
+        try (final JarWriter writer = new JarWriter(Files.newOutputStream(jar))) {
+            task.run(writer);
+        }
+        return jar;
+    }
+
+    private static byte[] _text(final int lines) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        return _bytes(text.toString());
+    }
+
+    private static byte[] _bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] _read(final ZipFile zip, final ZipEntry entry) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final InputStream in = zip.getInputStream(entry)) {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface WriterTask {
+
+        void run(final JarWriter writer) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+
+/**
+ * Checks that the jars nested within a jar are transformed, and repacked as
+ * they were stored.
+ */
+public final class NestedJarTest {
+
+    private static final JarEntryTransformer UPPER_CASE = new JarEntryTransformer() {
+        @Override
+        public JarResourceEntry transform(final JarResourceEntry entry) {
+            final String contents = new String(entry.getContents(), StandardCharsets.UTF_8);
+            return new JarResourceEntry(entry.getName(), entry.getTime(),
+                    contents.toUpperCase().getBytes(StandardCharsets.UTF_8));
+        }
+    };
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        this.executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void transformsNestedJarsKeepingTheirCompression() throws IOException {
+        final byte[] stored = _jar("stored", Collections.emptyMap());
+        final byte[] deflated = _jar("deflated", Collections.singletonMap("lib/deeper.jar", _jar("deeper", Collections.emptyMap())));
+        final ByteArrayOutputStream outer = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(outer)) {
+            writer.write(JarWriter.encode("outer.txt", TestJars.TIME, _bytes("outer")));
+            writer.write(JarWriter.store("lib/stored.jar", TestJars.TIME, stored));
+            writer.write(JarWriter.encode("lib/deflated.jar", TestJars.TIME, deflated));
+        }
+
+        final byte[] result = this.transform(outer.toByteArray());
+        try (final JarFile jar = new JarFile("result.jar", result)) {
+            assertArrayEquals(_bytes("OUTER"), jar.get(new JarPath("outer.txt")).getContents());
+
+            final CentralDirectory directory = jar.getDirectory();
+            assertEquals(ZipEntry.STORED, directory.getMethod(directory.indexOf("lib/stored.jar")));
+            assertEquals(ZipEntry.DEFLATED, directory.getMethod(directory.indexOf("lib/deflated.jar")));
+
+            // Nested jars are transformed however deep they are
+            _assertTransformed(jar.getNestedJar(new JarPath("lib/stored.jar")), "STORED");
+            final JarFile nested = jar.getNestedJar(new JarPath("lib/deflated.jar"));
+            _assertTransformed(nested, "DEFLATED");
+            _assertTransformed(nested.getNestedJar(new JarPath("lib/deeper.jar")), "DEEPER");
+        }
+    }
+
+    @Test
+    public void keepsNestedJarsThatWereGotOpen() throws IOException {
+        final ByteArrayOutputStream outer = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(outer)) {
+            writer.write(JarWriter.encode("lib/nested.jar", TestJars.TIME, _jar("nested", Collections.emptyMap())));
+        }
+
+        try (final JarFile jar = new JarFile("test.jar", outer.toByteArray())) {
+            final JarPath path = new JarPath("lib/nested.jar");
+            final JarFile nested = jar.getNestedJar(path);
+
+            // The nested jar was got ahead of the transformation - say, to put
+            // it on the classpath - so is left open for as long as the jar is
+            this.transform(jar);
+            assertSame(nested, jar.getNestedJar(path));
+            assertNotNull(nested.getClass("Nested.class"));
+        }
+    }
+
+    private byte[] transform(final byte[] contents) throws IOException {
+        try (final JarFile jar = new JarFile("test.jar", contents)) {
+            return this.transform(jar);
+        }
+    }
+
+    private byte[] transform(final JarFile jar) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jar.transform(out, this.executorService, new TransformOptions().setNestedJars(JarPathFilter.glob("**.jar")),
+                UPPER_CASE);
+        return out.toByteArray();
+    }
+
+    private static void _assertTransformed(final JarFile jar, final String text) throws IOException {
+        assertNotNull(jar);
+        assertArrayEquals(_bytes(text), jar.get(new JarPath("text.txt")).getContents());
+        assertNotNull(jar.getClass("Nested.class"));
+    }
+
+    private static byte[] _jar(final String text, final Map<String, byte[]> nested) throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("Nested.class", TestJars.klass("Nested", "java/lang/Object"));
+        entries.put("text.txt", _bytes(text));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(out)) {
+            for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                writer.write(JarWriter.encode(entry.getKey(), TestJars.TIME, entry.getValue()));
+            }
+            for (final Map.Entry<String, byte[]> entry : nested.entrySet()) {
+                writer.write(JarWriter.store(entry.getKey(), TestJars.TIME, entry.getValue()));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] _bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
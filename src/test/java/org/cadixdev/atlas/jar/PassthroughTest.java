@@ -0,0 +1,203 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+/**
+ * Checks that the entries no transformer applies to are copied as they were
+ * compressed, without being read.
+ */
+public final class PassthroughTest {
+
+    private static final byte[] TEXT = String.join("\n", Collections.nCopies(64, "resource"))
+            .getBytes(StandardCharsets.UTF_8);
+
+    private ExecutorService executorService;
+    private byte[] jar;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executorService = Executors.newFixedThreadPool(4);
+
+        // The resource is compressed as no writer would recompress it, so a
+        // copy is told apart from a recompressed entry
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(out)) {
+            writer.write(JarWriter.encode("A.class", TestJars.TIME, TestJars.klass("A", "java/lang/Object")));
+            writer.write(JarWriter.encode("a/resource.txt", TestJars.TIME, TEXT, Deflater.BEST_SPEED));
+            writer.write(JarWriter.store("a/stored.txt", TestJars.TIME, TEXT));
+        }
+        this.jar = out.toByteArray();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void copiesEntriesNoTransformerAppliesTo() throws IOException {
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        final Set<String> copied = ConcurrentHashMap.newKeySet();
+        final TransformOptions options = new TransformOptions().setListener(new TransformListener() {
+            @Override
+            public void entryCopied(final JarPath path, final long nanos, final long bytes) {
+                copied.add(path.getName());
+            }
+        });
+
+        try (final JarFile input = new JarFile("test.jar", this.jar);
+             final JarFile result = this.transform(input, options, _classes(seen))) {
+            assertEquals(Collections.singleton("A.class"), seen);
+            assertEquals(new HashSet<>(Arrays.asList("a/resource.txt", "a/stored.txt")), copied);
+
+            for (final String name : Arrays.asList("a/resource.txt", "a/stored.txt")) {
+                assertArrayEquals(_raw(input, name), _raw(result, name));
+                assertEquals(_method(input, name), _method(result, name));
+                assertArrayEquals(TEXT, result.get(new JarPath(name)).getContents());
+            }
+            assertNotNull(result.getClass("A.class"));
+        }
+    }
+
+    @Test
+    public void plainTransformersApplyToEveryEntry() throws IOException {
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        try (final JarFile input = new JarFile("test.jar", this.jar);
+             final JarFile result = this.transform(input, new TransformOptions(), _classes(seen), new JarEntryTransformer() {
+                 @Override
+                 public JarResourceEntry transform(final JarResourceEntry entry) {
+                     seen.add(entry.getName());
+                     return entry;
+                 }
+             })) {
+            assertEquals(new HashSet<>(Arrays.asList("A.class", "a/resource.txt", "a/stored.txt")), seen);
+
+            // The resource was read, and so recompressed
+            assertFalse(Arrays.equals(_raw(input, "a/resource.txt"), _raw(result, "a/resource.txt")));
+            assertArrayEquals(TEXT, result.get(new JarPath("a/resource.txt")).getContents());
+        }
+    }
+
+    @Test
+    public void copiedEntriesAreNeverRead() throws IOException {
+        final EncodedEntry raw = JarWriter.encode("a/resource.txt", TestJars.TIME, TEXT, Deflater.BEST_SPEED);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(out)) {
+            final Transformation transformation = new Transformation(writer, null, new TransformOptions(),
+                    new JarEntryTransformer[] { _classes(ConcurrentHashMap.newKeySet()) });
+            transformation.transform(new JarPath("a/resource.txt"), new Transformation.Source() {
+                @Override
+                public EncodedEntry raw() {
+                    return raw;
+                }
+
+                @Override
+                public int method() {
+                    return raw.method;
+                }
+
+                @Override
+                public AbstractJarEntry read() {
+                    throw new AssertionError("read");
+                }
+
+                @Override
+                public long size() {
+                    return raw.size;
+                }
+            });
+        }
+
+        try (final JarFile result = new JarFile("result.jar", out.toByteArray())) {
+            assertArrayEquals(_bytes(raw.data()), _raw(result, "a/resource.txt"));
+        }
+    }
+
+    @Test
+    public void streamsCopyEntriesNoTransformerAppliesTo() throws IOException {
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JarStream(new ByteArrayInputStream(this.jar)).transform(out, this.executorService, new TransformOptions(),
+                _classes(seen));
+
+        assertEquals(Collections.singleton("A.class"), seen);
+        try (final JarFile input = new JarFile("test.jar", this.jar);
+             final JarFile result = new JarFile("result.jar", out.toByteArray())) {
+            assertArrayEquals(_raw(input, "a/resource.txt"), _raw(result, "a/resource.txt"));
+            assertArrayEquals(TEXT, result.get(new JarPath("a/stored.txt")).getContents());
+        }
+    }
+
+    private JarFile transform(final JarFile jar, final TransformOptions options,
+                              final JarEntryTransformer... transformers) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jar.transform(out, this.executorService, options, transformers);
+        return new JarFile("result.jar", out.toByteArray());
+    }
+
+    /**
+     * Creates a transformer that only applies to classes, recording those it
+     * sees.
+     */
+    private static ScopedJarEntryTransformer _classes(final Set<String> seen) {
+        return new ScopedJarEntryTransformer() {
+            @Override
+            public boolean appliesTo(final JarPath path) {
+                return path.getType() == JarEntryType.CLASS;
+            }
+
+            @Override
+            public JarClassEntry transform(final JarClassEntry entry) {
+                seen.add(entry.getName());
+                return entry;
+            }
+        };
+    }
+
+    private static byte[] _raw(final JarFile jar, final String name) throws IOException {
+        final CentralDirectory directory = jar.getDirectory();
+        return _bytes(directory.getEncoded(directory.indexOf(name)).data());
+    }
+
+    private static int _method(final JarFile jar, final String name) {
+        return jar.getDirectory().getMethod(jar.getDirectory().indexOf(name));
+    }
+
+    private static byte[] _bytes(final ByteBuffer data) {
+        final byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the table of paths held by a jar's {@link CentralDirectory}
+ * finds each entry, and hands out the same paths on every walk.
+ */
+public final class PathTableTest {
+
+    @Test
+    public void pathsAreClassifiedAndCompared() {
+        assertEquals(JarEntryType.CLASS, new JarPath("a/A.class").getType());
+        assertEquals(JarEntryType.MANIFEST, new JarPath("META-INF/MANIFEST.MF").getType());
+        assertEquals(JarEntryType.SERVICE_PROVIDER_CONFIGURATION, new JarPath("META-INF/services/a.B").getType());
+        assertEquals(JarEntryType.RESOURCE, new JarPath("a/resource.txt").getType());
+
+        assertEquals(new JarPath("a/A.class"), new JarPath("a/A.class"));
+        assertEquals("a/A.class".hashCode(), new JarPath("a/A.class").hashCode());
+        // The same hash, but another name
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(new JarPath("Aa"), new JarPath("BB"));
+    }
+
+    @Test
+    public void walksHandOutTheSamePaths() throws IOException {
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(_entries(100)))) {
+            final List<JarPath> first = _walk(jar);
+            final List<JarPath> second = _walk(jar);
+            assertEquals(100, first.size());
+            for (int i = 0; i < first.size(); i++) {
+                final JarPath path = first.get(i);
+                assertSame(path, second.get(i));
+                assertSame(path.getName().intern(), path.getName());
+                assertEquals(JarEntryType.of(path.getName()), path.getType());
+            }
+        }
+    }
+
+    @Test
+    public void findsEveryEntryByPathOrName() throws IOException {
+        // Names of colliding hashes share their probe sequence
+        final Map<String, byte[]> entries = _entries(1000);
+        entries.put("Aa.txt", _bytes("Aa"));
+        entries.put("BB.txt", _bytes("BB"));
+
+        try (final JarFile jar = new JarFile("test.jar", TestJars.jar(entries))) {
+            final CentralDirectory directory = jar.getDirectory();
+            final Map<String, JarPath> walked = _walk(jar).stream()
+                    .collect(Collectors.toMap(JarPath::getName, Function.identity()));
+            for (final String name : entries.keySet()) {
+                final int entry = directory.indexOf(name);
+                assertEquals(name, directory.getName(entry));
+                assertEquals(entry, directory.indexOf(new JarPath(name)));
+                assertSame(directory.getPath(entry), walked.get(name));
+            }
+            assertArrayEquals(_bytes("BB"), jar.get(new JarPath("BB.txt")).getContents());
+            assertEquals(-1, directory.indexOf("missing.txt"));
+            assertEquals(-1, directory.indexOf(new JarPath("Ab.txt")));
+        }
+    }
+
+    @Test
+    public void laterEntriesOfTheSameNameAreShadowed() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(out)) {
+            writer.write(JarWriter.encode("a.txt", TestJars.TIME, _bytes("first")));
+            writer.write(JarWriter.encode("b.txt", TestJars.TIME, _bytes("b")));
+            writer.write(JarWriter.encode("x.txt", TestJars.TIME, _bytes("second")));
+        }
+
+        // Writers skip an entry of a name already written, so the last entry
+        // is renamed after the fact
+        final byte[] contents = out.toByteArray();
+        final byte[] from = _bytes("x.txt");
+        for (int i = 0; i + from.length <= contents.length; i++) {
+            if (Arrays.equals(from, Arrays.copyOfRange(contents, i, i + from.length))) contents[i] = 'a';
+        }
+
+        try (final JarFile jar = new JarFile("test.jar", contents)) {
+            final CentralDirectory directory = jar.getDirectory();
+            assertEquals(3, directory.size());
+            assertFalse(directory.isShadowed(0));
+            assertTrue(directory.isShadowed(2));
+            assertSame(directory.getPath(0), directory.getPath(2));
+
+            // The first entry is read, as with ZipFile
+            assertEquals(0, directory.indexOf("a.txt"));
+            assertArrayEquals(_bytes("first"), jar.get(new JarPath("a.txt")).getContents());
+            assertEquals(2, _walk(jar).size());
+        }
+    }
+
+    private static Map<String, byte[]> _entries(final int count) {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            final String name = "p" + (i % 10) + "/C" + i;
+            entries.put(name + ".class", TestJars.klass(name, "java/lang/Object"));
+        }
+        return entries;
+    }
+
+    private static List<JarPath> _walk(final JarFile jar) throws IOException {
+        try (final Stream<JarPath> stream = jar.walk()) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] _bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
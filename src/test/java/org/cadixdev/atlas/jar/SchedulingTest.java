@@ -0,0 +1,131 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that the costliest entries of a jar are scheduled first, should the
+ * {@link TransformOptions#setLargestFirst(boolean) option} be set.
+ */
+public final class SchedulingTest {
+
+    private static final JarEntryTransformer PLAIN = new JarEntryTransformer() {};
+    private static final ScopedJarEntryTransformer RESOURCES = path -> path.getType() == JarEntryType.RESOURCE;
+
+    private ExecutorService executorService;
+    private JarFile jar;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        // A single thread, drawing one entry at a time, runs the entries in
+        // the order they're scheduled
+        this.executorService = Executors.newSingleThreadExecutor();
+
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("A.class", TestJars.klass("A", "java/lang/Object"));
+        entries.put("small.txt", new byte[10]);
+        entries.put("large.txt", new byte[10_000]);
+        entries.put("medium.txt", new byte[1_000]);
+        this.jar = new JarFile("test.jar", TestJars.jar(entries));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.jar.close();
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void costsEachTransformerThatApplies() {
+        final CostedJarEntryTransformer halved = (path, size) -> size / 2;
+        final JarPath resource = new JarPath("a.txt");
+        final JarPath klass = new JarPath("A.class");
+
+        assertEquals(100, Transformation.cost(resource, 100, new JarEntryTransformer[] { PLAIN }));
+        assertEquals(150, Transformation.cost(resource, 100, new JarEntryTransformer[] { PLAIN, halved }));
+        assertEquals(100, Transformation.cost(resource, 100, new JarEntryTransformer[] { RESOURCES }));
+        assertEquals(0, Transformation.cost(klass, 100, new JarEntryTransformer[] { RESOURCES }));
+        assertEquals(0, Transformation.cost(klass, 100, new JarEntryTransformer[0]));
+    }
+
+    @Test
+    public void schedulesInStoredOrderByDefault() throws IOException {
+        assertEquals(Arrays.asList("A.class", "small.txt", "large.txt", "medium.txt"),
+                this.transform(new TransformOptions(), PLAIN));
+    }
+
+    @Test
+    public void schedulesTheLargestEntriesFirst() throws IOException {
+        assertEquals(Arrays.asList("large.txt", "medium.txt", "A.class", "small.txt"),
+                this.transform(new TransformOptions().setLargestFirst(true), PLAIN));
+    }
+
+    @Test
+    public void schedulesCopiedEntriesLast() throws IOException {
+        // The class isn't transformed, so costs nothing - however large
+        assertEquals(Arrays.asList("large.txt", "medium.txt", "small.txt", "A.class"),
+                this.transform(new TransformOptions().setLargestFirst(true), RESOURCES));
+    }
+
+    @Test
+    public void schedulesByTheCostTransformersGive() throws IOException {
+        // The transformer finds smaller entries costlier
+        final CostedJarEntryTransformer inverse = new CostedJarEntryTransformer() {
+            @Override
+            public long cost(final JarPath path, final long size) {
+                return path.getType() == JarEntryType.RESOURCE ? 100_000 / Math.max(size, 1) : 0;
+            }
+
+            @Override
+            public JarResourceEntry transform(final JarResourceEntry entry) {
+                return entry;
+            }
+        };
+        assertEquals(Arrays.asList("small.txt", "medium.txt", "large.txt", "A.class"),
+                this.transform(new TransformOptions().setLargestFirst(true), inverse));
+    }
+
+    /**
+     * Transforms the jar, returning the order its entries were handled in.
+     */
+    private List<String> transform(final TransformOptions options, final JarEntryTransformer... transformers)
+            throws IOException {
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        options.setMaxInFlight(1).setBatchSize(1).setListener(new TransformListener() {
+            @Override
+            public void entryRead(final JarPath path, final long nanos, final long bytes) {
+                order.add(path.getName());
+            }
+
+            @Override
+            public void entryCopied(final JarPath path, final long nanos, final long bytes) {
+                order.add(path.getName());
+            }
+        });
+        this.jar.transform(new ByteArrayOutputStream(), this.executorService, options, transformers);
+        return order;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+
+/**
+ * Builds the jars, and classes, used by the tests.
+ *
+ * @author Jamie Mansfield
+ * @since 0.3.0
+ */
+public final class TestJars {
+
+    /**
+     * The last modified time of the entries written, which is exactly
+     * representable as an MS-DOS time.
+     */
+    public static final long TIME = LocalDateTime.of(2019, 5, 1, 12, 30, 10)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    /**
+     * Creates an empty class of the given name, extending the given class.
+     *
+     * @param name The internal name of the class
+     * @param superName The internal name of its super class
+     * @return The class file
+     */
+    public static byte[] klass(final String name, final String superName) {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes a jar of the given entries, in order - each compressed.
+     *
+     * @param entries The entries, by name
+     * @return The jar
+     * @throws IOException Should an issue occur writing the jar
+     */
+    public static byte[] jar(final Map<String, byte[]> entries) throws IOException {
+        return jar(entries, TIME);
+    }
+
+    /**
+     * Writes a jar of the given entries, in order - each compressed, and last
+     * modified at the given time.
+     *
+     * @param entries The entries, by name
+     * @param time The last modified time of the entries
+     * @return The jar
+     * @throws IOException Should an issue occur writing the jar
+     */
+    public static byte[] jar(final Map<String, byte[]> entries, final long time) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JarWriter writer = new JarWriter(out)) {
+            for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                writer.write(JarWriter.encode(entry.getKey(), time, entry.getValue()));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private TestJars() {
+    }
+
+}
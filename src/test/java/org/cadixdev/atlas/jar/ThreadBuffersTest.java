@@ -0,0 +1,144 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Checks that the {@link ThreadBuffers} of a thread are reused, and that the
+ * entries encoded through them are read back as they were written.
+ */
+public final class ThreadBuffersTest {
+
+    private static final byte[] TEXT = String.join("\n", Collections.nCopies(512, "text"))
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void eachThreadKeepsItsOwnBuffers() {
+        final ThreadBuffers buffers = ThreadBuffers.get();
+        assertSame(buffers, ThreadBuffers.get());
+        assertNotSame(buffers, CompletableFuture.supplyAsync(ThreadBuffers::get).join());
+
+        assertSame(buffers.chunk(), buffers.chunk());
+        assertEquals(ThreadBuffers.CHUNK_SIZE, buffers.chunk().length);
+        assertSame(buffers.inflater(), buffers.inflater());
+        assertSame(buffers.deflater(Deflater.BEST_SPEED), buffers.deflater(Deflater.BEST_SPEED));
+        assertNotSame(buffers.deflater(Deflater.BEST_SPEED), buffers.deflater(Deflater.BEST_COMPRESSION));
+    }
+
+    @Test
+    public void borrowedObjectsAreReset() {
+        final ThreadBuffers buffers = ThreadBuffers.get();
+        buffers.crc().update(TEXT);
+        assertEquals(0, buffers.crc().getValue());
+
+        final Deflater deflater = buffers.deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater.setInput(TEXT);
+        deflater.finish();
+        deflater.deflate(new byte[16]);
+        assertEquals(0, buffers.deflater(Deflater.DEFAULT_COMPRESSION).getTotalIn());
+    }
+
+    @Test
+    public void onlySmallOutputBuffersAreRetained() throws Throwable {
+        // A new thread, so the buffers haven't grown yet
+        _onNewThread(() -> {
+            final ThreadBuffers buffers = ThreadBuffers.get();
+            final byte[] small = buffers.output(64 * 1024);
+            assertEquals(64 * 1024, small.length);
+            assertSame(small, buffers.output(16));
+
+            // A buffer larger than is retained is handed out once
+            final byte[] huge = buffers.output(4 << 20);
+            assertEquals(4 << 20, huge.length);
+            assertSame(small, buffers.output(16));
+
+            Arrays.fill(small, (byte) 7);
+            final byte[] grown = buffers.grow(small);
+            assertEquals(small.length * 2, grown.length);
+            assertEquals(7, grown[small.length - 1]);
+            assertSame(grown, buffers.output(16));
+        });
+    }
+
+    @Test
+    public void encodedEntriesAreReadBackAtEveryLevel() throws IOException {
+        for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+            final EncodedEntry entry = JarWriter.encode("text.txt", TestJars.TIME, TEXT, level);
+            _assertEncoded(entry, TEXT);
+        }
+    }
+
+    @Test
+    public void encodesIncompressibleAndLargeContents() throws IOException {
+        final Random random = new Random(0);
+        for (final int size : new int[] { 0, 1, ThreadBuffers.CHUNK_SIZE + 1, 3 << 20 }) {
+            final byte[] contents = new byte[size];
+            random.nextBytes(contents);
+            _assertEncoded(JarWriter.encode("random.bin", TestJars.TIME, contents), contents);
+        }
+    }
+
+    @Test
+    public void borrowedEntriesAreOnlyValidUntilTheNextEncode() throws IOException {
+        final byte[] other = "other".getBytes(StandardCharsets.UTF_8);
+        final EncodedEntry copied = JarWriter.encode("text.txt", TestJars.TIME, TEXT);
+        final EncodedEntry borrowed = JarWriter.encodeBorrowed("text.txt", TestJars.TIME, TEXT,
+                Deflater.DEFAULT_COMPRESSION);
+        _assertEncoded(borrowed, TEXT);
+
+        // The borrowed data is overwritten by the thread's next entry, while
+        // the copied data is kept
+        final EncodedEntry next = JarWriter.encodeBorrowed("other.txt", TestJars.TIME, other,
+                Deflater.DEFAULT_COMPRESSION);
+        assertSame(borrowed.data().array(), next.data().array());
+        assertNotSame(borrowed.data().array(), copied.data().array());
+        _assertEncoded(copied, TEXT);
+        _assertEncoded(next, other);
+    }
+
+    private static void _assertEncoded(final EncodedEntry entry, final byte[] contents) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(contents);
+        assertEquals((int) crc.getValue(), entry.crc);
+        assertEquals(contents.length, entry.size);
+
+        final ByteBuffer data = entry.data();
+        assertArrayEquals(contents, CentralDirectory.inflate(entry.name, entry.method, entry.size, data));
+    }
+
+    private static void _onNewThread(final Runnable task) throws Throwable {
+        final Throwable[] failure = new Throwable[1];
+        final Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            }
+            catch (final Throwable ex) {
+                failure[0] = ex;
+            }
+        });
+        thread.start();
+        thread.join();
+        if (failure[0] != null) throw failure[0];
+    }
+
+}
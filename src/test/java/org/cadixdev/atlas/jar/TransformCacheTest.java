@@ -0,0 +1,156 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that results cached by a {@link TransformCache} are only reused for
+ * the transformation they were made by.
+ */
+public final class TransformCacheTest {
+
+    @TempDir
+    Path temp;
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        this.executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executorService.shutdown();
+    }
+
+    @Test
+    public void changedSupertypeMissesEveryEntry() throws IOException {
+        final TransformCache cache = new TransformCache(this.temp);
+        final JarEntryTransformer transformer = new IdentityTransformer(true);
+
+        this.transform(_jar("java/lang/Object"), cache, transformer);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        this.transform(_jar("java/lang/Object"), cache, transformer);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // Only B's supertype changes, but A's result may have depended on
+        // the jar's hierarchy - say, through the inheritance provider
+        this.transform(_jar("A"), cache, transformer);
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void rebuiltJarHitsEveryEntry() throws IOException {
+        final TransformCache cache = new TransformCache(this.temp);
+        final JarEntryTransformer transformer = new IdentityTransformer(true);
+
+        this.transform(_jar("java/lang/Object"), cache, transformer);
+
+        // The same classes, written again later and in another order
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("B.class", TestJars.klass("B", "java/lang/Object"));
+        entries.put("A.class", TestJars.klass("A", "java/lang/Object"));
+        final JarFile rebuilt = new JarFile("test.jar", TestJars.jar(entries, TestJars.TIME + 60_000));
+        this.transform(rebuilt, cache, transformer);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void changedJarReusesEntriesOfJarIndependentTransformers() throws IOException {
+        final TransformCache cache = new TransformCache(this.temp);
+        final JarEntryTransformer transformer = new IdentityTransformer(false);
+
+        this.transform(_jar("java/lang/Object"), cache, transformer);
+        this.transform(_jar("A"), cache, transformer);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void changedClasspathMissesEveryEntry() throws IOException {
+        final JarEntryTransformer[] transformers = { new IdentityTransformer(false) };
+        try (final JarFile jar = _jar("java/lang/Object")) {
+            assertTrue(Arrays.equals(TransformCache.key(transformers, "a", jar), TransformCache.key(transformers, "a", jar)));
+            assertFalse(Arrays.equals(TransformCache.key(transformers, "a", jar), TransformCache.key(transformers, "b", jar)));
+        }
+    }
+
+    @Test
+    public void unknownJarIsNotCached() {
+        assertNull(TransformCache.key(new JarEntryTransformer[] { new IdentityTransformer(true) }, "", null));
+        assertNotNull(TransformCache.key(new JarEntryTransformer[] { new IdentityTransformer(false) }, "", null));
+        assertNull(TransformCache.key(new JarEntryTransformer[] { new JarEntryTransformer() {} }, "", null));
+    }
+
+    private void transform(final JarFile jar, final TransformCache cache, final JarEntryTransformer transformer)
+            throws IOException {
+        try {
+            jar.transform(new ByteArrayOutputStream(), this.executorService,
+                    new TransformOptions().setTransformCache(cache), transformer);
+        }
+        finally {
+            jar.close();
+        }
+    }
+
+    private static JarFile _jar(final String superOfB) throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("A.class", TestJars.klass("A", "java/lang/Object"));
+        entries.put("B.class", TestJars.klass("B", superOfB));
+        return new JarFile("test.jar", TestJars.jar(entries));
+    }
+
+    /**
+     * A transformer that leaves every entry as it is.
+     */
+    private static final class IdentityTransformer implements FingerprintedJarEntryTransformer {
+
+        private final boolean dependsOnJar;
+
+        IdentityTransformer(final boolean dependsOnJar) {
+            this.dependsOnJar = dependsOnJar;
+        }
+
+        @Override
+        public String fingerprint() {
+            return "identity";
+        }
+
+        @Override
+        public boolean dependsOnJar() {
+            return this.dependsOnJar;
+        }
+
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Checks that a {@link ZipStreamReader} finds the end of each entry, however
+ * its sizes are given.
+ */
+public final class ZipStreamReaderTest {
+
+    private static final byte[] FIRST = _text("first", 256);
+    private static final byte[] SECOND = _text("second", 64);
+
+    @Test
+    public void readsDataDescriptorsWithSignature() throws IOException {
+        // ZipOutputStream writes a signed descriptor after each deflated entry
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("dir/"));
+            zip.putNextEntry(new ZipEntry("dir/first.txt"));
+            zip.write(FIRST);
+            zip.putNextEntry(new ZipEntry("second.txt"));
+            zip.write(SECOND);
+        }
+
+        final Map<String, EncodedEntry> entries = _read(out.toByteArray());
+        assertEquals(Arrays.asList("dir/first.txt", "second.txt"), new ArrayList<>(entries.keySet()));
+        _assertEntry(entries.get("dir/first.txt"), ZipEntry.DEFLATED, FIRST);
+        _assertEntry(entries.get("second.txt"), ZipEntry.DEFLATED, SECOND);
+    }
+
+    @Test
+    public void readsDataDescriptorsWithoutSignature() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _writeDescribed(out, "first.txt", FIRST, false, false);
+        _writeDescribed(out, "second.txt", SECOND, false, false);
+
+        final Map<String, EncodedEntry> entries = _read(out.toByteArray());
+        _assertEntry(entries.get("first.txt"), ZipEntry.DEFLATED, FIRST);
+        _assertEntry(entries.get("second.txt"), ZipEntry.DEFLATED, SECOND);
+    }
+
+    @Test
+    public void readsZip64DataDescriptors() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _writeDescribed(out, "first.txt", FIRST, true, true);
+        _writeDescribed(out, "second.txt", SECOND, false, true);
+
+        final Map<String, EncodedEntry> entries = _read(out.toByteArray());
+        _assertEntry(entries.get("first.txt"), ZipEntry.DEFLATED, FIRST);
+        _assertEntry(entries.get("second.txt"), ZipEntry.DEFLATED, SECOND);
+    }
+
+    @Test
+    public void readsStoredEntries() throws IOException {
+        // Stored entries give their sizes up front, so are read as they are
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (final Map.Entry<String, byte[]> entry : _entries().entrySet()) {
+                final ZipEntry stored = new ZipEntry(entry.getKey());
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(entry.getValue().length);
+                stored.setCrc(_crc(entry.getValue()));
+                stored.setTime(TestJars.TIME);
+                zip.putNextEntry(stored);
+                zip.write(entry.getValue());
+            }
+        }
+
+        final Map<String, EncodedEntry> entries = _read(out.toByteArray());
+        _assertEntry(entries.get("first.txt"), ZipEntry.STORED, FIRST);
+        _assertEntry(entries.get("second.txt"), ZipEntry.STORED, SECOND);
+        assertEquals(TestJars.TIME, entries.get("first.txt").time);
+    }
+
+    @Test
+    public void readsJarsWrittenByJarWriter() throws IOException {
+        final Map<String, EncodedEntry> entries = _read(TestJars.jar(_entries()));
+        _assertEntry(entries.get("first.txt"), ZipEntry.DEFLATED, FIRST);
+        _assertEntry(entries.get("second.txt"), ZipEntry.DEFLATED, SECOND);
+    }
+
+    @Test
+    public void rejectsTruncatedStreams() throws IOException {
+        final byte[] jar = TestJars.jar(_entries());
+        final ZipStreamReader reader = new ZipStreamReader(new ByteArrayInputStream(Arrays.copyOf(jar, 40)));
+        final CompletionException ex = assertThrows(CompletionException.class, reader::hasNext);
+        assertTrue(ex.getCause() instanceof EOFException);
+    }
+
+    @Test
+    public void rejectsMismatchedDataDescriptors() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _writeDescribed(out, "first.txt", FIRST, true, false);
+        final byte[] zip = out.toByteArray();
+        // Corrupt the descriptor's uncompressed size
+        zip[zip.length - 1] ^= 0x01;
+
+        final ZipStreamReader reader = new ZipStreamReader(new ByteArrayInputStream(zip));
+        final CompletionException ex = assertThrows(CompletionException.class, reader::hasNext);
+        assertTrue(ex.getCause() instanceof ZipException);
+    }
+
+    private static Map<String, EncodedEntry> _read(final byte[] zip) {
+        final Map<String, EncodedEntry> entries = new LinkedHashMap<>();
+        final ZipStreamReader reader = new ZipStreamReader(new ByteArrayInputStream(zip));
+        while (reader.hasNext()) {
+            final EncodedEntry entry = reader.next();
+            entries.put(entry.name, entry);
+        }
+        assertFalse(reader.hasNext());
+        return entries;
+    }
+
+    private static void _assertEntry(final EncodedEntry entry, final int method, final byte[] contents)
+            throws IOException {
+        assertEquals(method, entry.method);
+        assertEquals(contents.length, entry.size);
+        assertEquals((int) _crc(contents), entry.crc);
+        assertArrayEquals(contents, CentralDirectory.inflate(entry.name, entry.method, entry.size, entry.data()));
+    }
+
+    /**
+     * Writes a deflated entry whose sizes are only given by a data descriptor,
+     * after its data.
+     */
+    private static void _writeDescribed(final ByteArrayOutputStream out, final String name, final byte[] contents,
+                                        final boolean signed, final boolean zip64) {
+        final byte[] rawName = name.getBytes(StandardCharsets.UTF_8);
+        final byte[] data = _deflate(contents);
+
+        final ByteBuffer header = ByteBuffer.allocate(30 + rawName.length + (zip64 ? 20 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x04034b50).putShort((short) (zip64 ? 45 : 20)).putShort((short) 0x0008)
+                .putShort((short) ZipEntry.DEFLATED).putInt(0).putInt(0)
+                .putInt(zip64 ? -1 : 0).putInt(zip64 ? -1 : 0)
+                .putShort((short) rawName.length).putShort((short) (zip64 ? 20 : 0))
+                .put(rawName);
+        if (zip64) {
+            header.putShort((short) 0x0001).putShort((short) 16).putLong(0).putLong(0);
+        }
+        out.write(header.array(), 0, header.position());
+        out.write(data, 0, data.length);
+
+        final ByteBuffer descriptor = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        if (signed) descriptor.putInt(0x08074b50);
+        descriptor.putInt((int) _crc(contents));
+        if (zip64) {
+            descriptor.putLong(data.length).putLong(contents.length);
+        }
+        else {
+            descriptor.putInt(data.length).putInt(contents.length);
+        }
+        out.write(descriptor.array(), 0, descriptor.position());
+    }
+
+    private static byte[] _deflate(final byte[] contents) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(contents);
+        deflater.finish();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static long _crc(final byte[] contents) {
+        final CRC32 crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+
+    private static Map<String, byte[]> _entries() {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("first.txt", FIRST);
+        entries.put("second.txt", SECOND);
+        return entries;
+    }
+
+    private static byte[] _text(final String word, final int lines) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append(word).append(' ').append(i).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
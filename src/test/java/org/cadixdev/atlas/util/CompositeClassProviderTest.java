@@ -0,0 +1,91 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.atlas.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.cadixdev.atlas.jar.JarFile;
+import org.cadixdev.atlas.jar.TestJars;
+import org.cadixdev.bombe.provider.ClassProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a {@link CompositeClassProvider} finds each class in the first
+ * provider that has it.
+ */
+public final class CompositeClassProviderTest {
+
+    private static final byte[] FIRST_A = TestJars.klass("A", "java/lang/Object");
+    private static final byte[] SECOND_A = TestJars.klass("A", "java/lang/Number");
+    private static final byte[] B = TestJars.klass("B", "A");
+
+    private JarFile first;
+    private JarFile second;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.first = new JarFile("first.jar", TestJars.jar(Collections.singletonMap("A.class", FIRST_A)));
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("A.class", SECOND_A);
+        entries.put("B.class", B);
+        this.second = new JarFile("second.jar", TestJars.jar(entries));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.first.close();
+        this.second.close();
+    }
+
+    @Test
+    public void firstJarOwnsClass() {
+        final CompositeClassProvider provider = new CompositeClassProvider(Arrays.asList(this.first, this.second));
+        assertArrayEquals(FIRST_A, provider.get("A"));
+        assertArrayEquals(B, provider.get("B"));
+        assertNull(provider.get("C"));
+    }
+
+    @Test
+    public void dynamicProvidersAreAlwaysAsked() {
+        final AtomicInteger asked = new AtomicInteger();
+        final ClassProvider dynamic = klass -> {
+            asked.incrementAndGet();
+            return klass.equals("B") ? FIRST_A : null;
+        };
+        final CompositeClassProvider provider = new CompositeClassProvider(Arrays.asList(dynamic, this.first, this.second));
+
+        // Providers that can't be indexed come ahead of the owner, so are
+        // asked first - and again, as what they have may change
+        assertArrayEquals(FIRST_A, provider.get("B"));
+        assertNull(provider.get("C"));
+        assertNull(provider.get("C"));
+        assertEquals(3, asked.get());
+    }
+
+    @Test
+    public void dynamicProvidersAfterOwnerAreNotAsked() {
+        final AtomicInteger asked = new AtomicInteger();
+        final CompositeClassProvider provider = new CompositeClassProvider(Arrays.asList(this.first, klass -> {
+            asked.incrementAndGet();
+            return null;
+        }));
+        assertArrayEquals(FIRST_A, provider.get("A"));
+        assertEquals(0, asked.get());
+    }
+
+}